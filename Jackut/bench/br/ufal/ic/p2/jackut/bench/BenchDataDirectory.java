@@ -0,0 +1,50 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.utils.Serealization;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Diretório de dados temporário usado pelas medições, para que elas nunca leiam nem alterem o diretório de
+ * dados do sistema.
+ */
+
+final class BenchDataDirectory {
+    private BenchDataDirectory() {
+    }
+
+    /**
+     * Cria um diretório temporário e o define como diretório de dados por meio da propriedade
+     * {@value Serealization#DATA_DIRECTORY_PROPERTY}. Deve ser chamado antes de criar o sistema.
+     *
+     * @return O diretório criado.
+     * @throws IOException Se o diretório não puder ser criado.
+     */
+
+    static Path use() throws IOException {
+        Path directory = Files.createTempDirectory("jackut-bench");
+        System.setProperty(Serealization.DATA_DIRECTORY_PROPERTY, directory.toString());
+        return directory;
+    }
+
+    /**
+     * Espera as compactações em andamento e apaga o diretório informado e tudo o que houver dentro dele.
+     *
+     * @param directory O diretório retornado por {@link #use()}.
+     * @throws IOException          Se algum arquivo não puder ser apagado.
+     * @throws InterruptedException Se a thread for interrompida enquanto espera as compactações.
+     */
+
+    static void delete(Path directory) throws IOException, InterruptedException {
+        Serealization.awaitCompaction();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
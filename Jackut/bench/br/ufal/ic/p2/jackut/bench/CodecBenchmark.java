@@ -0,0 +1,199 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.models.Note;
+import br.ufal.ic.p2.jackut.models.UserAccount;
+import br.ufal.ic.p2.jackut.utils.BinaryObjectInput;
+import br.ufal.ic.p2.jackut.utils.BinaryObjectOutput;
+import br.ufal.ic.p2.jackut.utils.UserDirectory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Compara o tamanho e o tempo de gravação e leitura das contas na codificação binária dos modelos
+ * ({@link UserAccount#writeExternal} e {@link UserAccount#readExternal}) com a serialização padrão do Java
+ * usada antes dela.
+ *
+ * <p>Cada conta tem 3 amigos, um recado, um fã e um atributo de perfil. A serialização padrão é medida sobre
+ * {@link LegacyAccount}, uma cópia dos campos que a conta tinha antes da codificação binária, com os amigos
+ * e pedidos de amizade como contas aninhadas. Como ela percorre o grafo recursivamente, é executada em uma
+ * thread com pilha de 1 GB.</p>
+ *
+ * <p>Uso: {@code CodecBenchmark [contas]} (padrão: 100000).</p>
+ */
+
+public class CodecBenchmark {
+
+    /**
+     * Executa a comparação e imprime o resultado.
+     *
+     * @param args A quantidade de contas, opcional.
+     * @throws Exception Se a gravação ou a leitura falharem.
+     */
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        Result binary = measureBinary(count);
+        Result[] legacy = new Result[1];
+        Thread thread = new Thread(null, () -> legacy[0] = measureLegacy(count), "legacy", 1L << 30);
+        thread.start();
+        thread.join();
+
+        System.out.printf("contas=%d%n", count);
+        System.out.println(legacy[0].format("serialização padrão"));
+        System.out.println(binary.format("codificação binária"));
+    }
+
+    private static Result measureBinary(int count) throws IOException {
+        UserDirectory directory = new UserDirectory();
+        UserAccount[] accounts = new UserAccount[count];
+        for (int i = 0; i < count; i++) {
+            accounts[i] = new UserAccount("user" + i, "senha" + i, "Usuario " + i, directory);
+        }
+        for (int i = 0; i < count; i++) {
+            UserAccount account = accounts[i];
+            for (int k = 1; k <= 3; k++) {
+                account.setFriendList(accounts[(i + k) % count]);
+            }
+            account.setNotesQueue(new Note(accounts[(i + 1) % count].getLogin(), account.getLogin(), "recado " + i));
+            account.setFansList(accounts[(i + 7) % count].getId());
+            account.setProfileAttribute("cidade", "Maceio");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        try (BinaryObjectOutput out = new BinaryObjectOutput(new BufferedOutputStream(bytes, 1 << 16))) {
+            for (UserAccount account : accounts) {
+                account.writeExternal(out);
+            }
+        }
+        long written = System.nanoTime();
+
+        byte[] data = bytes.toByteArray();
+        UserAccount[] loaded = new UserAccount[count];
+        long readStart = System.nanoTime();
+        try (BinaryObjectInput in = new BinaryObjectInput(new ByteArrayInputStream(data), new UserDirectory())) {
+            for (int i = 0; i < count; i++) {
+                loaded[i] = new UserAccount();
+                loaded[i].readExternal(in);
+            }
+        }
+        long read = System.nanoTime();
+
+        check(loaded[count - 1].getLogin().equals(accounts[count - 1].getLogin()), "conta lida difere da gravada");
+        return new Result(data.length, written - start, read - readStart);
+    }
+
+    private static Result measureLegacy(int count) {
+        try {
+            HashMap<String, LegacyAccount> accounts = new HashMap<>();
+            LegacyAccount[] byIndex = new LegacyAccount[count];
+            for (int i = 0; i < count; i++) {
+                byIndex[i] = new LegacyAccount("user" + i, "senha" + i, "Usuario " + i);
+                accounts.put(byIndex[i].login, byIndex[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                LegacyAccount account = byIndex[i];
+                for (int k = 1; k <= 3; k++) {
+                    account.friendList.add(byIndex[(i + k) % count]);
+                }
+                account.notesQueue.add(new LegacyNote(byIndex[(i + 1) % count].login, account.login, "recado " + i));
+                account.fansList.add(byIndex[(i + 7) % count].login);
+                account.profile.put("cidade", "Maceio");
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            long start = System.nanoTime();
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(bytes, 1 << 16))) {
+                out.writeObject(accounts);
+            }
+            long written = System.nanoTime();
+
+            byte[] data = bytes.toByteArray();
+            long readStart = System.nanoTime();
+            Object loaded;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                loaded = in.readObject();
+            }
+            long read = System.nanoTime();
+
+            check(((HashMap<?, ?>) loaded).size() == count, "quantidade de contas lidas difere da gravada");
+            return new Result(data.length, written - start, read - readStart);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * Tamanho e tempos de uma medição.
+     */
+
+    private static final class Result {
+        private final long bytes;
+        private final long writeNanos;
+        private final long readNanos;
+
+        private Result(long bytes, long writeNanos, long readNanos) {
+            this.bytes = bytes;
+            this.writeNanos = writeNanos;
+            this.readNanos = readNanos;
+        }
+
+        private String format(String name) {
+            return String.format("%-20s %8.1f MB  gravação %7.2f s  leitura %7.2f s", name + ":",
+                    bytes / 1e6, writeNanos / 1e9, readNanos / 1e9);
+        }
+    }
+
+    /**
+     * Os campos de uma conta antes da codificação binária.
+     */
+
+    private static final class LegacyAccount implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String login;
+        private final String password;
+        private final String userName;
+        private final HashMap<String, String> profile = new HashMap<>();
+        private final ArrayList<LegacyAccount> friendList = new ArrayList<>();
+        private final ArrayList<LegacyAccount> friendsRequestsSent = new ArrayList<>();
+        private final ArrayList<LegacyAccount> friendsRequestsReceived = new ArrayList<>();
+        private final LinkedList<LegacyNote> notesQueue = new LinkedList<>();
+        private final ArrayList<String> communityList = new ArrayList<>();
+        private final ArrayList<String> fansList = new ArrayList<>();
+
+        private LegacyAccount(String login, String password, String userName) {
+            this.login = login;
+            this.password = password;
+            this.userName = userName;
+        }
+    }
+
+    /**
+     * Os campos de um recado antes da codificação binária.
+     */
+
+    private static final class LegacyNote implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String sender;
+        private final String receiver;
+        private final String message;
+
+        private LegacyNote(String sender, String receiver, String message) {
+            this.sender = sender;
+            this.receiver = receiver;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.JackutSystem;
+import br.ufal.ic.p2.jackut.models.UserAccount;
+import br.ufal.ic.p2.jackut.utils.LazyUsersMap;
+import br.ufal.ic.p2.jackut.utils.OrderedIntSet;
+import br.ufal.ic.p2.jackut.utils.ShardedSnapshot;
+import br.ufal.ic.p2.jackut.utils.SymbolTable;
+import br.ufal.ic.p2.jackut.utils.UserDirectory;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Teste de estresse do {@link JackutSystem} com várias threads operando sobre as mesmas contas e
+ * comunidades.
+ *
+ * <p>Primeiro, as threads atribuem identificadores aos mesmos símbolos de uma {@link SymbolTable} ao mesmo
+ * tempo e em ordens diferentes, e cada símbolo deve receber um único identificador e uma única instância.
+ * Em seguida, parte das threads remove e recria contas de um {@link LazyUsersMap} enquanto as outras as
+ * leem, e nenhuma leitura iniciada depois de uma remoção pode devolver a versão do snapshot. Depois, executam uma mistura aleatória de operações (amizades, recados, fãs, paqueras, inimigos,
+ * comunidades, consultas, remoções e checkpoints). Ao final, verifica que:</p>
+ * <ul>
+ *     <li>nenhuma operação terminou com uma exceção que não seja de domínio, nem ficou bloqueada;</li>
+ *     <li>toda relação entre duas contas está gravada nos dois sentidos (amigos, pedidos de amizade,
+ *     fã e ídolo, paquera e inimigo);</li>
+ *     <li>um sistema novo, carregado do disco a partir do log, tem exatamente o mesmo estado.</li>
+ * </ul>
+ *
+ * <p>Usa um diretório de dados temporário, apagado no final. Termina com código 1 se alguma verificação
+ * falhar.</p>
+ *
+ * <p>Uso: {@code ConcurrencyStress [threads] [operações] [usuários]} (padrão: 8, 200000, 400).</p>
+ */
+
+public class ConcurrencyStress {
+    private static final int COMMUNITIES = 20;
+    private static final int SYMBOLS = 100_000;
+    private static final int LAZY_MAP_ACCOUNTS = 64;
+    private static final long LAZY_MAP_MILLIS = 2000;
+
+    /**
+     * Executa o teste e imprime o resultado.
+     *
+     * @param args A quantidade de threads, de operações e de usuários, opcionais.
+     * @throws Exception Se a preparação ou a verificação falharem.
+     */
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+
+        int symbolErrors = stressSymbols(threads);
+        System.out.printf("tabela de símbolos: threads=%d símbolos=%d erros=%d%n", threads, SYMBOLS, symbolErrors);
+
+        Path dataDirectory = BenchDataDirectory.use();
+        int lazyMapErrors = stressLazyMap(threads, dataDirectory.toFile());
+        System.out.printf("mapa de usuários: threads=%d contas=%d erros=%d%n", threads, LAZY_MAP_ACCOUNTS, lazyMapErrors);
+
+        JackutSystem system = new JackutSystem();
+        String[] sessions = new String[users];
+        for (int i = 0; i < users; i++) {
+            system.createUser("u" + i, "p", "U" + i);
+            sessions[i] = system.openSession("u" + i, "p");
+        }
+        for (int c = 0; c < COMMUNITIES; c++) {
+            system.createCommunity(sessions[c], "c" + c, "d");
+        }
+
+        AtomicLong completed = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong unexpected = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            int share = operations / threads;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < share; i++) {
+                    try {
+                        runRandomOperation(system, sessions, random, i);
+                        completed.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        if (unexpected.incrementAndGet() <= 5) {
+                            e.printStackTrace();
+                        }
+                    } catch (Exception e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        if (!pool.awaitTermination(5, TimeUnit.MINUTES)) {
+            System.out.println("as operações não terminaram em 5 minutos; possível impasse:");
+            Thread.getAllStackTraces().forEach((thread, stack) -> {
+                System.out.println(thread);
+                for (StackTraceElement element : stack) {
+                    System.out.println("    " + element);
+                }
+            });
+            System.exit(1);
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long millis = (System.nanoTime() - begin) / 1_000_000;
+        System.out.printf("operações: threads=%d total=%d tempo=%d ms concluídas=%d recusadas=%d inesperadas=%d%n",
+                threads, operations, millis, completed.get(), rejected.get(), unexpected.get());
+
+        system.awaitBroadcasts();
+        int violations = checkRelations(system);
+        Map<String, String> before = dump(system);
+        JackutSystem replayed = new JackutSystem();
+        Map<String, String> after = dump(replayed);
+        int replayedViolations = checkRelations(replayed);
+        boolean equal = before.equals(after);
+        System.out.printf("relações quebradas=%d após recarga=%d estado recarregado igual=%b contas=%d%n",
+                violations, replayedViolations, equal, before.size());
+        if (!equal) {
+            int shown = 0;
+            for (String login : before.keySet()) {
+                if (!Objects.equals(before.get(login), after.get(login)) && shown++ < 3) {
+                    System.out.println(login + "\n    antes:  " + before.get(login) + "\n    depois: " + after.get(login));
+                }
+            }
+        }
+
+        BenchDataDirectory.delete(dataDirectory);
+        boolean failed = symbolErrors > 0 || lazyMapErrors > 0 || unexpected.get() > 0 || violations > 0 || replayedViolations > 0 || !equal;
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * Faz todas as threads atribuírem identificadores aos mesmos símbolos, em ordens diferentes, e retorna
+     * quantos símbolos receberam mais de um identificador ou mais de uma instância.
+     */
+
+    private static int stressSymbols(int threads) throws Exception {
+        SymbolTable table = new SymbolTable();
+        int[][] ids = new int[threads][SYMBOLS];
+        String[][] instances = new String[threads][SYMBOLS];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int offset = thread * (SYMBOLS / threads);
+                for (int i = 0; i < SYMBOLS; i++) {
+                    int symbol = (thread % 2 == 0 ? offset + i : offset + SYMBOLS - 1 - i) % SYMBOLS;
+                    ids[thread][symbol] = table.idOf("s" + symbol);
+                    instances[thread][symbol] = table.intern("s" + symbol);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        int errors = table.size() == SYMBOLS ? 0 : 1;
+        for (int symbol = 0; symbol < SYMBOLS; symbol++) {
+            int id = ids[0][symbol];
+            String instance = table.symbolOf(id);
+            for (int t = 0; t < threads; t++) {
+                if (ids[t][symbol] != id || instances[t][symbol] != instance || table.find("s" + symbol) != id) {
+                    errors++;
+                    break;
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Grava um snapshot com algumas contas e, sobre ele, faz metade das threads remover e recriar as contas
+     * enquanto a outra metade as lê. Retorna quantas leituras, iniciadas depois de a conta ter sido removida
+     * pela primeira vez, devolveram a versão do snapshot.
+     */
+
+    private static int stressLazyMap(int threads, File directory) throws Exception {
+        UserDirectory users = new UserDirectory();
+        LazyUsersMap initial = new LazyUsersMap(ShardedSnapshot.empty());
+        for (int i = 0; i < LAZY_MAP_ACCOUNTS; i++) {
+            initial.put("lazy" + i, new UserAccount("lazy" + i, "p", "snapshot", users));
+        }
+        ShardedSnapshot.write(shard -> new File(directory, "lazy-" + shard + ".ser"), 0, 0, initial, Map.of(),
+                ForkJoinPool.commonPool());
+        LazyUsersMap map = new LazyUsersMap(ShardedSnapshot.open(shard -> new File(directory, "lazy-" + shard + ".ser"),
+                ForkJoinPool.commonPool(), users));
+
+        int writers = Math.max(1, threads / 2);
+        AtomicIntegerArray removedOnce = new AtomicIntegerArray(LAZY_MAP_ACCOUNTS);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong errors = new AtomicLong();
+        Thread[] workers = new Thread[Math.max(2, threads)];
+        for (int t = 0; t < workers.length; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(thread);
+                while (!stop.get()) {
+                    if (thread < writers) {
+                        int account = thread + writers * random.nextInt(LAZY_MAP_ACCOUNTS / writers);
+                        String login = "lazy" + account;
+                        map.remove(login);
+                        removedOnce.set(account, 1);
+                        UserAccount recreated = new UserAccount(login, "p", "recriada", users);
+                        map.put(login, recreated);
+                        if (map.get(login) != recreated) {
+                            errors.incrementAndGet();
+                        }
+                    } else {
+                        int account = random.nextInt(LAZY_MAP_ACCOUNTS);
+                        boolean wasRemoved = removedOnce.get(account) == 1;
+                        UserAccount read = map.get("lazy" + account);
+                        if (wasRemoved && read != null && read.getUserName().equals("snapshot")) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        Thread.sleep(LAZY_MAP_MILLIS);
+        stop.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (int) errors.get();
+    }
+
+    private static void runRandomOperation(JackutSystem system, String[] sessions, Random random, int i)
+            throws Exception {
+        String session = sessions[random.nextInt(sessions.length)];
+        String other = "u" + random.nextInt(sessions.length);
+        String community = "c" + random.nextInt(COMMUNITIES);
+        switch (random.nextInt(16)) {
+            case 0, 1 -> system.addFriend(session, other);
+            case 2 -> system.sendNote(session, other, "n" + i);
+            case 3 -> system.readNote(session);
+            case 4 -> system.addIdol(session, other);
+            case 5 -> system.addCrush(session, other);
+            case 6 -> {
+                if (random.nextInt(8) == 0) {
+                    system.addEnemy(session, other);
+                }
+            }
+            case 7 -> queryLogin(() -> system.getFriends(other));
+            case 8 -> system.addComunity(session, community);
+            case 9 -> system.sendMessage(session, community, "m" + i);
+            case 10 -> system.readMessage(session);
+            case 11 -> system.getCrushs(session);
+            case 12 -> system.isFriend(other, "u" + random.nextInt(sessions.length));
+            case 13 -> system.getMembersCommunity(community);
+            case 14 -> {
+                if (random.nextInt(200) == 0) {
+                    system.removeUser(session);
+                }
+            }
+            default -> {
+                if (random.nextInt(500) == 0) {
+                    system.saveData();
+                } else {
+                    queryLogin(() -> system.getFans(other));
+                }
+            }
+        }
+    }
+
+    /**
+     * Executa uma consulta por login. Essas consultas não validam o login e falham com
+     * {@link NullPointerException} quando a conta foi removida por outra thread, o que aqui conta como
+     * operação recusada.
+     */
+
+    private static void queryLogin(Runnable query) throws Exception {
+        try {
+            query.run();
+        } catch (NullPointerException e) {
+            throw new Exception("Conta removida durante a consulta", e);
+        }
+    }
+
+    /**
+     * Retorna quantas relações entre duas contas estão gravadas em apenas um dos sentidos.
+     */
+
+    private static int checkRelations(JackutSystem system) {
+        Map<String, UserAccount> accounts = new HashMap<>(system.getUsersMap());
+        int violations = 0;
+        for (UserAccount account : accounts.values()) {
+            violations += checkRelation(accounts, account, UserAccount::getFriendList, UserAccount::getFriendList);
+            violations += checkRelation(accounts, account, UserAccount::getFriendsRequestsSent,
+                    UserAccount::getFriendsRequestsReceived);
+            violations += checkRelation(accounts, account, UserAccount::getIdolsList, UserAccount::getFansList);
+            violations += checkRelation(accounts, account, UserAccount::getCrushsList, UserAccount::getCrushedByList);
+            violations += checkRelation(accounts, account, UserAccount::getEnemysList, UserAccount::getEnemyOfList);
+        }
+        return violations;
+    }
+
+    private static int checkRelation(Map<String, UserAccount> accounts, UserAccount account,
+                                     Function<UserAccount, OrderedIntSet> relation,
+                                     Function<UserAccount, OrderedIntSet> inverse) {
+        int violations = 0;
+        for (int id : relation.apply(account).toArray()) {
+            UserAccount other = accounts.get(account.getDirectory().loginOf(id));
+            if (other == null || !inverse.apply(other).contains(account.getId())) {
+                violations++;
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Retorna, para cada conta, uma descrição das relações, recados e mensagens, para comparar dois sistemas.
+     */
+
+    private static Map<String, String> dump(JackutSystem system) {
+        TreeMap<String, String> state = new TreeMap<>();
+        for (UserAccount account : new ArrayList<>(system.getUsersMap().values())) {
+            state.put(account.getLogin(), account.getFriendsString() + account.getFansString()
+                    + account.getCrushsString() + account.getEnemysString() + account.getCommunitiesString()
+                    + account.getNotesQueue().stream().map(note -> note.getSender() + ":" + note.getMessage()).toList()
+                    + account.getMessageCursors() + account.getMessagesQueue().size());
+        }
+        return state;
+    }
+}
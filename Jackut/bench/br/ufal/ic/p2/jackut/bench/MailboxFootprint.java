@@ -0,0 +1,93 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.models.Mailbox;
+import br.ufal.ic.p2.jackut.models.Note;
+import br.ufal.ic.p2.jackut.models.RingBuffer;
+
+import java.lang.ref.Reference;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.function.Supplier;
+
+/**
+ * Mede a memória ocupada por recado enfileirado em uma {@link LinkedList}, em um {@link RingBuffer} e em
+ * uma {@link Mailbox}, e a memória de uma fila vazia, que é o caso da maioria das contas.
+ *
+ * <p>A ocupação "só estrutura" enfileira sempre o mesmo recado, medindo apenas o custo da fila; a ocupação
+ * "com recados" enfileira recados distintos. A {@link Mailbox} despeja os recados que não cabem na cabeça e
+ * na cauda nos arquivos de despejo de um diretório de dados temporário, apagado no final.</p>
+ *
+ * <p>Uso: {@code MailboxFootprint [recados]} (padrão: 1000000).</p>
+ */
+
+public class MailboxFootprint {
+    private static final int EMPTY_QUEUES = 200_000;
+
+    /**
+     * Executa as medições e imprime o resultado.
+     *
+     * @param args A quantidade de recados, opcional.
+     * @throws Exception Se o diretório de dados temporário não puder ser criado ou apagado.
+     */
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path dataDirectory = BenchDataDirectory.use();
+
+        System.out.printf("recados=%d (bytes por recado enfileirado)%n", count);
+        System.out.printf("%-12s %14s %14s %16s%n", "fila", "só estrutura", "com recados", "fila vazia");
+        report("LinkedList", LinkedList::new, count);
+        report("RingBuffer", RingBuffer::new, count);
+        report("Mailbox", () -> new Mailbox<>("bench", Note::new), count);
+
+        BenchDataDirectory.delete(dataDirectory);
+    }
+
+    private static void report(String name, Supplier<Queue<Note>> factory, int count) {
+        Note shared = new Note("remetente", "bench", "recado");
+        double structure = perItem(count, () -> {
+            Queue<Note> queue = factory.get();
+            for (int i = 0; i < count; i++) {
+                queue.add(shared);
+            }
+            return queue;
+        });
+        double full = perItem(count, () -> {
+            Queue<Note> queue = factory.get();
+            for (int i = 0; i < count; i++) {
+                queue.add(new Note("remetente", "bench", "recado " + i));
+            }
+            return queue;
+        });
+        double empty = perItem(EMPTY_QUEUES, () -> {
+            Object[] queues = new Object[EMPTY_QUEUES];
+            for (int i = 0; i < EMPTY_QUEUES; i++) {
+                queues[i] = factory.get();
+            }
+            return queues;
+        });
+
+        System.out.printf("%-12s %14.1f %14.1f %16.1f%n", name, structure, full, empty);
+    }
+
+    /**
+     * Retorna a memória retida pelo objeto criado, dividida pela quantidade de itens.
+     */
+
+    private static double perItem(int items, Supplier<Object> build) {
+        long before = usedMemory();
+        Object built = build.get();
+        long after = usedMemory();
+        Reference.reachabilityFence(built);
+        return (after - before) / (double) items;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
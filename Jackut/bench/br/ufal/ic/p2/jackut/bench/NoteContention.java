@@ -0,0 +1,176 @@
+package br.ufal.ic.p2.jackut.bench;
+
+import br.ufal.ic.p2.jackut.Facade;
+import br.ufal.ic.p2.jackut.exceptions.note.ThereAreNoNotesException;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mede e verifica o envio de recados de muitos usuários para a mesma conta ao mesmo tempo.
+ *
+ * <p>Na medição, de 1 a 64 threads, cada uma com a sua sessão, enviam recados para a mesma conta durante um
+ * intervalo fixo, e é impressa a quantidade de envios por segundo.</p>
+ *
+ * <p>Na verificação, cada remetente envia uma sequência numerada de recados para a mesma conta enquanto
+ * outra thread lê os recados dessa conta. Depois que os envios terminam, um sistema novo é carregado do
+ * disco a partir do log e os recados ainda não lidos são lidos nele. Juntando as leituras dos dois
+ * sistemas, cada remetente deve aparecer com todos os seus recados, uma única vez e na ordem de envio: os
+ * recados lidos antes da recarga não voltam, e os não lidos não se perdem.</p>
+ *
+ * <p>Usa um diretório de dados temporário, apagado no final. Termina com código 1 se a verificação
+ * falhar.</p>
+ *
+ * <p>Uso: {@code NoteContention [milissegundos por medição] [recados por remetente]} (padrão: 2000, 5000).</p>
+ */
+
+public class NoteContention {
+    private static final int[] PRODUCERS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int CHECK_SENDERS = 16;
+
+    /**
+     * Executa a medição e a verificação e imprime o resultado.
+     *
+     * @param args A duração de cada medição e a quantidade de recados por remetente na verificação, opcionais.
+     * @throws Exception Se a preparação ou a verificação falharem.
+     */
+
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        int notesPerSender = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        Path dataDirectory = BenchDataDirectory.use();
+        Facade facade = new Facade();
+        int senders = Math.max(PRODUCERS[PRODUCERS.length - 1], CHECK_SENDERS);
+        for (int i = 0; i <= senders; i++) {
+            facade.criarUsuario("s" + i, "p", "S" + i);
+        }
+
+        System.out.printf("%-10s %14s%n", "remetentes", "envios/s");
+        for (int producers : PRODUCERS) {
+            System.out.printf("%-10d %14.0f%n", producers, measure(facade, producers, millis));
+        }
+
+        facade.criarUsuario("destino", "p", "Destino");
+        boolean ok = check(facade, notesPerSender);
+
+        facade.encerrarSistema();
+        BenchDataDirectory.delete(dataDirectory);
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static double measure(Facade facade, int producers, long millis) throws Exception {
+        String[] sessions = new String[producers];
+        for (int i = 0; i < producers; i++) {
+            sessions[i] = facade.abrirSessao("s" + (i + 1), "p");
+        }
+
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder sent = new LongAdder();
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            String session = sessions[i];
+            threads[i] = new Thread(() -> {
+                int k = 0;
+                while (!stop.get()) {
+                    try {
+                        facade.enviarRecado(session, "s0", "recado " + k++);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    sent.increment();
+                }
+            });
+            threads[i].start();
+        }
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return sent.sum() / (millis / 1e3);
+    }
+
+    /**
+     * Envia e lê recados da mesma conta em paralelo, recarrega o sistema e verifica que cada remetente
+     * aparece com todos os seus recados, uma única vez e em ordem.
+     */
+
+    private static boolean check(Facade facade, int notesPerSender) throws Exception {
+        String receiver = facade.abrirSessao("destino", "p");
+        List<String> read = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean sending = new AtomicBoolean(true);
+
+        Thread reader = new Thread(() -> {
+            while (sending.get()) {
+                try {
+                    read.add(facade.lerRecado(receiver));
+                } catch (ThereAreNoNotesException e) {
+                    Thread.onSpinWait();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        Thread[] threads = new Thread[CHECK_SENDERS];
+        for (int i = 0; i < CHECK_SENDERS; i++) {
+            int sender = i + 1;
+            String session = facade.abrirSessao("s" + sender, "p");
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int k = 0; k < notesPerSender; k++) {
+                        facade.enviarRecado(session, "destino", sender + ":" + k);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            threads[i].start();
+        }
+        reader.start();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        sending.set(false);
+        reader.join();
+        int readBefore = read.size();
+
+        Facade reloaded = new Facade();
+        String reloadedReceiver = reloaded.abrirSessao("destino", "p");
+        while (true) {
+            try {
+                read.add(reloaded.lerRecado(reloadedReceiver));
+            } catch (ThereAreNoNotesException e) {
+                break;
+            }
+        }
+
+        int[] next = new int[CHECK_SENDERS + 1];
+        int errors = 0;
+        for (String note : read) {
+            String[] parts = note.split(":");
+            int sender = Integer.parseInt(parts[0]);
+            int sequence = Integer.parseInt(parts[1]);
+            if (sequence != next[sender]) {
+                errors++;
+            }
+            next[sender] = sequence + 1;
+        }
+        for (int sender = 1; sender <= CHECK_SENDERS; sender++) {
+            if (next[sender] != notesPerSender) {
+                errors++;
+            }
+        }
+
+        System.out.printf("verificação: remetentes=%d recados=%d lidos antes da recarga=%d lidos depois=%d erros=%d%n",
+                CHECK_SENDERS, CHECK_SENDERS * notesPerSender, readBefore, read.size() - readBefore, errors);
+        return errors == 0 && read.size() == CHECK_SENDERS * notesPerSender;
+    }
+}
@@ -20,6 +20,9 @@ public class Main {
                 "tests/us7_2.txt",
                 "tests/us8_1.txt",
                 "tests/us8_2.txt",
+                "tests/us8_3.txt",
+                "tests/us8_4.txt",
+                "tests/us8_5.txt",
                 "tests/us9_1.txt",
                 "tests/us9_2.txt",
         };
@@ -6,6 +6,17 @@ import br.ufal.ic.p2.jackut.exceptions.note.ThereAreNoNotesException;
 import br.ufal.ic.p2.jackut.exceptions.note.UserCannotSendNoteToHimselfException;
 import br.ufal.ic.p2.jackut.exceptions.profile.InvalidAttributeProvidedException;
 import br.ufal.ic.p2.jackut.exceptions.user.*;
+import br.ufal.ic.p2.jackut.utils.BroadcastStats;
+import br.ufal.ic.p2.jackut.utils.Command;
+import br.ufal.ic.p2.jackut.utils.CommandResult;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * <p> Classe fachada que implementa a interface do sistema Jackut. </p>
@@ -15,7 +26,23 @@ public class Facade {
     JackutSystem jackutSystem = new JackutSystem();
 
     /**
-     * Reseta o sistema Jackut, removendo todos os dados de usurios, amigos e recados.
+     * Métodos públicos da fachada que recebem apenas textos, indexados pelo nome, usados para executar
+     * {@link Command}s.
+     */
+
+    private static final HashMap<String, Method> COMMANDS = new HashMap<>();
+
+    static {
+        for (Method method : Facade.class.getDeclaredMethods()) {
+            if (Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers())
+                    && Arrays.stream(method.getParameterTypes()).allMatch(type -> type == String.class)) {
+                COMMANDS.put(method.getName(), method);
+            }
+        }
+    }
+
+    /**
+     * Reseta o sistema Jackut, removendo todos os dados de usuários, amigos e recados.
      */
 
     public void zerarSistema() {
@@ -23,14 +50,14 @@ public class Facade {
     }
 
     /**
-     * Cria um novo usurio no sistema.
+     * Cria um novo usuário no sistema.
      *
-     * @param login O login do novo usurio, que deve ser nico.
-     * @param senha A senha do novo usurio.
-     * @param nome  O nome do novo usurio.
-     * @throws UserAlreadyExistsException Se o login j estiver sendo utilizado por outro usurio.
-     * @throws LoginInvalidException      Se o login fornecido no for vlido.
-     * @throws PasswordInvalidException   Se a senha fornecida no atender aos critrios definidos.
+     * @param login O login do novo usuário, que deve ser único.
+     * @param senha A senha do novo usuário.
+     * @param nome  O nome do novo usuário.
+     * @throws UserAlreadyExistsException Se o login já estiver sendo utilizado por outro usuário.
+     * @throws LoginInvalidException      Se o login fornecido não for válido.
+     * @throws PasswordInvalidException   Se a senha fornecida não atender aos critérios definidos.
      */
 
     public void criarUsuario(String login, String senha, String nome) throws UserAlreadyExistsException, LoginInvalidException, PasswordInvalidException {
@@ -38,13 +65,13 @@ public class Facade {
     }
 
     /**
-     * Retorna o valor de um atributo especfico de um usurio.
+     * Retorna o valor de um atributo específico de um usuário.
      *
-     * @param login    O login do usurio.
+     * @param login    O login do usuário.
      * @param atributo O atributo desejado (por exemplo, "nome", "senha", etc.).
      * @return O valor do atributo solicitado.
-     * @throws InvalidAttributeProvidedException Se o atributo solicitado for invlido.
-     * @throws UnregisteredUserException         Se o usurio no estiver registrado no sistema.
+     * @throws InvalidAttributeProvidedException Se o atributo solicitado for inválido.
+     * @throws UnregisteredUserException         Se o usuário não estiver registrado no sistema.
      */
 
     public String getAtributoUsuario(String login, String atributo) throws InvalidAttributeProvidedException, UnregisteredUserException {
@@ -52,12 +79,12 @@ public class Facade {
     }
 
     /**
-     * Abre uma sesso para um usurio com login e senha vlidos.
+     * Abre uma sessão para um usuário com login e senha válidos.
      *
-     * @param login O login do usurio.
-     * @param senha A senha do usurio.
-     * @return O identificador nico da sesso aberta.
-     * @throws InvalidLoginOrPasswordException Se o login ou a senha forem invlidos.
+     * @param login O login do usuário.
+     * @param senha A senha do usuário.
+     * @return O identificador único da sessão aberta.
+     * @throws InvalidLoginOrPasswordException Se o login ou a senha forem inválidos.
      */
 
 
@@ -66,12 +93,12 @@ public class Facade {
     }
 
     /**
-     * Edita um atributo do perfil de um usurio.
+     * Edita um atributo do perfil de um usuário.
      *
-     * @param id       O identificador do usurio.
+     * @param id       O identificador do usuário.
      * @param atributo O atributo a ser editado.
      * @param valor    O novo valor do atributo.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado no sistema.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado no sistema.
      */
 
     public void editarPerfil(String id, String atributo, String valor) throws UnregisteredUserException {
@@ -79,12 +106,12 @@ public class Facade {
     }
 
     /**
-     * Verifica se dois usurios so amigos.
+     * Verifica se dois usuários são amigos.
      *
-     * @param login      O login do usurio.
-     * @param loginAmigo O login do possvel amigo.
-     * @return {@code true} se os dois usurios forem amigos; {@code false} caso contrrio.
-     * @throws UnregisteredUserException Se algum dos dois usurios no estiver registrado no sistema.
+     * @param login      O login do usuário.
+     * @param loginAmigo O login do possível amigo.
+     * @return {@code true} se os dois usuários forem amigos; {@code false} caso contrário.
+     * @throws UnregisteredUserException Se algum dos dois usuários não estiver registrado no sistema.
      */
 
     public boolean ehAmigo(String login, String loginAmigo) throws UnregisteredUserException {
@@ -92,14 +119,14 @@ public class Facade {
     }
 
     /**
-     * Envia uma solicitao de amizade para outro usurio.
+     * Envia uma solicitação de amizade para outro usuário.
      *
-     * @param id    O identificador do usurio que est enviando a solicitao.
-     * @param amigo O login do usurio que receber a solicitao de amizade.
-     * @throws UnregisteredUserException     Se algum dos usurios no estiver registrado.
-     * @throws RequestAlreadySendedException Se a solicitao j tiver sido enviada anteriormente.
-     * @throws UserAlreadyIsFriendException  Se os usurios j forem amigos.
-     * @throws UserCannotAddHimselfException Se o usurio tentar enviar amizade para si mesmo.
+     * @param id    O identificador do usuário que está enviando a solicitação.
+     * @param amigo O login do usuário que receberá a solicitação de amizade.
+     * @throws UnregisteredUserException     Se algum dos usuários não estiver registrado.
+     * @throws RequestAlreadySendedException Se a solicitação já tiver sido enviada anteriormente.
+     * @throws UserAlreadyIsFriendException  Se os usuários já forem amigos.
+     * @throws UserCannotAddHimselfException Se o usuário tentar enviar amizade para si mesmo.
      */
 
     public void adicionarAmigo(String id, String amigo) throws UnregisteredUserException, RequestAlreadySendedException, UserAlreadyIsFriendException, UserCannotAddHimselfException, InvalidFunctionDueEnemyException {
@@ -107,13 +134,13 @@ public class Facade {
     }
 
     /**
-     * Envia um recado de um usurio para outro.
+     * Envia um recado de um usuário para outro.
      *
      * @param id           O identificador do remetente.
-     * @param destinatario O login do destinatrio do recado.
-     * @param recado       O contedo do recado.
-     * @throws UnregisteredUserException            Se algum dos usurios no estiver registrado.
-     * @throws UserCannotSendNoteToHimselfException Se o usurio tentar enviar um recado para si mesmo.
+     * @param destinatario O login do destinatário do recado.
+     * @param recado       O conteúdo do recado.
+     * @throws UnregisteredUserException            Se algum dos usuários não estiver registrado.
+     * @throws UserCannotSendNoteToHimselfException Se o usuário tentar enviar um recado para si mesmo.
      */
 
     public void enviarRecado(String id, String destinatario, String recado) throws UnregisteredUserException, UserCannotSendNoteToHimselfException, InvalidFunctionDueEnemyException {
@@ -121,12 +148,12 @@ public class Facade {
     }
 
     /**
-     * L os recados recebidos por um usurio.
+     * Lê os recados recebidos por um usuário.
      *
-     * @param id O identificador do usurio.
-     * @return Uma string contendo os recados recebidos por este usurio.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado no sistema.
-     * @throws ThereAreNoNotesException  Se o usurio no tiver nenhum recado.
+     * @param id O identificador do usuário.
+     * @return Uma string contendo os recados recebidos por este usuário.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado no sistema.
+     * @throws ThereAreNoNotesException  Se o usuário não tiver nenhum recado.
      */
 
     public String lerRecado(String id) throws UnregisteredUserException, ThereAreNoNotesException {
@@ -134,10 +161,10 @@ public class Facade {
     }
 
     /**
-     * Retorna a lista de amigos de um usurio.
+     * Retorna a lista de amigos de um usuário.
      *
-     * @param login O login do usurio.
-     * @return Uma string representando os amigos do usurio.
+     * @param login O login do usuário.
+     * @return Uma string representando os amigos do usuário.
      */
 
     public String getAmigos(String login) {
@@ -147,11 +174,11 @@ public class Facade {
     /**
      * Cria uma nova comunidade no sistema.
      *
-     * @param id O ID do usurio que est criando a comunidade.
+     * @param id O ID do usuário que está criando a comunidade.
      * @param nome O nome da comunidade a ser criada.
-     * @param descricao A descrio da comunidade.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
-     * @throws CommunityAlreadyExistsException Se j existir uma comunidade com o mesmo nome.
+     * @param descricao A descrição da comunidade.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
+     * @throws CommunityAlreadyExistsException Se já existir uma comunidade com o mesmo nome.
      */
 
     public void criarComunidade(String id, String nome, String descricao) throws UnregisteredUserException, CommunityAlreadyExistsException {
@@ -159,11 +186,11 @@ public class Facade {
     }
 
     /**
-     * Obtm a descrio de uma comunidade.
+     * Obtém a descrição de uma comunidade.
      *
      * @param nome O nome da comunidade.
-     * @return A descrio da comunidade.
-     * @throws CommunityDoesNotExistsException Se a comunidade no existir.
+     * @return A descrição da comunidade.
+     * @throws CommunityDoesNotExistsException Se a comunidade não existir.
      */
 
     public String getDescricaoComunidade(String nome) throws CommunityDoesNotExistsException {
@@ -171,11 +198,11 @@ public class Facade {
     }
 
     /**
-     * Obtm o dono de uma comunidade.
+     * Obtém o dono de uma comunidade.
      *
      * @param nome O nome da comunidade.
      * @return O nome do dono da comunidade.
-     * @throws CommunityDoesNotExistsException Se a comunidade no existir.
+     * @throws CommunityDoesNotExistsException Se a comunidade não existir.
      */
 
     public String getDonoComunidade(String nome) throws CommunityDoesNotExistsException {
@@ -183,11 +210,11 @@ public class Facade {
     }
 
     /**
-     * Obtm os membros de uma comunidade.
+     * Obtém os membros de uma comunidade.
      *
      * @param nome O nome da comunidade.
      * @return Uma lista com os membros da comunidade.
-     * @throws CommunityDoesNotExistsException Se a comunidade no existir.
+     * @throws CommunityDoesNotExistsException Se a comunidade não existir.
      */
 
     public String getMembrosComunidade(String nome) throws CommunityDoesNotExistsException {
@@ -195,11 +222,11 @@ public class Facade {
     }
 
     /**
-     * Obtm as comunidades de um usurio.
+     * Obtém as comunidades de um usuário.
      *
-     * @param login O login do usurio.
-     * @return Uma lista de comunidades associadas ao usurio.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
+     * @param login O login do usuário.
+     * @return Uma lista de comunidades associadas ao usuário.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
      */
 
     public String getComunidades(String login) throws UnregisteredUserException {
@@ -207,13 +234,13 @@ public class Facade {
     }
 
     /**
-     * Adiciona um usurio a uma comunidade.
+     * Adiciona um usuário a uma comunidade.
      *
-     * @param id O ID do usurio a ser adicionado.
+     * @param id O ID do usuário a ser adicionado.
      * @param nome O nome da comunidade.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
-     * @throws CommunityDoesNotExistsException Se a comunidade no existir.
-     * @throws UserIsAlreadyInThisCommunityException Se o usurio j for membro da comunidade.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
+     * @throws CommunityDoesNotExistsException Se a comunidade não existir.
+     * @throws UserIsAlreadyInThisCommunityException Se o usuário já for membro da comunidade.
      */
 
     public void adicionarComunidade(String id, String nome) throws UnregisteredUserException, CommunityDoesNotExistsException, UserIsAlreadyInThisCommunityException {
@@ -223,11 +250,11 @@ public class Facade {
     /**
      * Envia uma mensagem para uma comunidade.
      *
-     * @param id O ID do usurio que est enviando a mensagem.
-     * @param comunidadeReceptora O nome da comunidade para a qual a mensagem ser enviada.
-     * @param mensagem O contedo da mensagem.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
-     * @throws CommunityDoesNotExistsException Se a comunidade no existir.
+     * @param id O ID do usuário que está enviando a mensagem.
+     * @param comunidadeReceptora O nome da comunidade para a qual a mensagem será enviada.
+     * @param mensagem O conteúdo da mensagem.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
+     * @throws CommunityDoesNotExistsException Se a comunidade não existir.
      */
 
     public void enviarMensagem(String id, String comunidadeReceptora, String mensagem) throws UnregisteredUserException, CommunityDoesNotExistsException {
@@ -235,12 +262,12 @@ public class Facade {
     }
 
     /**
-     * L a mensagem recebida por um usurio.
+     * Lê a mensagem recebida por um usuário.
      *
-     * @param id O ID do usurio que est lendo a mensagem.
-     * @return O contedo da mensagem recebida.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
-     * @throws ThereAreNoMessagesException Se no houver mensagens para o usurio.
+     * @param id O ID do usuário que está lendo a mensagem.
+     * @return O conteúdo da mensagem recebida.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
+     * @throws ThereAreNoMessagesException Se não houver mensagens para o usuário.
      */
 
     public String lerMensagem(String id) throws UnregisteredUserException, ThereAreNoMessagesException {
@@ -248,11 +275,11 @@ public class Facade {
     }
 
     /**
-     * Verifica se um usurio  f de outro usurio.
+     * Verifica se um usuário é fã de outro usuário.
      *
-     * @param login O login do usurio.
-     * @param idolo O login do dolo.
-     * @return Verdadeiro se o usurio for f do dolo, falso caso contrrio.
+     * @param login O login do usuário.
+     * @param idolo O login do ídolo.
+     * @return Verdadeiro se o usuário for fã do ídolo, falso caso contrário.
      */
 
     public Boolean ehFa(String login, String idolo) {
@@ -261,14 +288,14 @@ public class Facade {
 
 
     /**
-     * Adiciona um dolo a um usurio.
+     * Adiciona um ídolo a um usuário.
      *
-     * @param id O ID do usurio que est adicionando um dolo.
-     * @param nomeIdolo O nome do dolo a ser adicionado.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
-     * @throws UserAlreadyIsAnIdolException Se o usurio j for dolo de outra pessoa.
-     * @throws UserCannotBeAFanOfHimselfException Se o usurio tentar ser f de si mesmo.
-     * @throws InvalidFunctionDueEnemyException Se a funo no for vlida devido a um inimigo.
+     * @param id O ID do usuário que está adicionando um ídolo.
+     * @param nomeIdolo O nome do ídolo a ser adicionado.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
+     * @throws UserAlreadyIsAnIdolException Se o usuário já for ídolo de outra pessoa.
+     * @throws UserCannotBeAFanOfHimselfException Se o usuário tentar ser fã de si mesmo.
+     * @throws InvalidFunctionDueEnemyException Se a função não for válida devido a um inimigo.
      */
 
     public void adicionarIdolo(String id, String nomeIdolo) throws UnregisteredUserException, UserAlreadyIsAnIdolException, UserCannotBeAFanOfHimselfException, InvalidFunctionDueEnemyException {
@@ -277,10 +304,10 @@ public class Facade {
 
 
     /**
-     * Obtm os fs de um usurio.
+     * Obtém os fãs de um usuário.
      *
-     * @param login O login do usurio.
-     * @return Uma lista de fs do usurio.
+     * @param login O login do usuário.
+     * @return Uma lista de fãs do usuário.
      */
 
     public String getFas(String login) {
@@ -288,12 +315,12 @@ public class Facade {
     }
 
     /**
-     * Verifica se um usurio tem uma paquera com outro usurio.
+     * Verifica se um usuário tem uma paquera com outro usuário.
      *
-     * @param id O ID do usurio.
+     * @param id O ID do usuário.
      * @param paquera O ID da paquera.
-     * @return Verdadeiro se o usurio tem uma paquera com o outro usurio, falso caso contrrio.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
+     * @return Verdadeiro se o usuário tem uma paquera com o outro usuário, falso caso contrário.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
      */
 
     public Boolean ehPaquera(String id, String paquera) throws UnregisteredUserException {
@@ -301,14 +328,14 @@ public class Facade {
     }
 
     /**
-     * Adiciona uma paquera a um usurio.
+     * Adiciona uma paquera a um usuário.
      *
-     * @param id O ID do usurio que est adicionando uma paquera.
+     * @param id O ID do usuário que está adicionando uma paquera.
      * @param paquera O ID da pessoa a ser adicionada como paquera.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
-     * @throws UserIsAlreadyYourCrushException Se o usurio j tiver a pessoa como paquera.
-     * @throws UserCannotBeACrushOfHimselfException Se o usurio tentar ser paquera de si mesmo.
-     * @throws InvalidFunctionDueEnemyException Se a funo no for vlida devido a um inimigo.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
+     * @throws UserIsAlreadyYourCrushException Se o usuário já tiver a pessoa como paquera.
+     * @throws UserCannotBeACrushOfHimselfException Se o usuário tentar ser paquera de si mesmo.
+     * @throws InvalidFunctionDueEnemyException Se a função não for válida devido a um inimigo.
      */
 
     public void adicionarPaquera(String id, String paquera) throws UnregisteredUserException, UserIsAlreadyYourCrushException, UserCannotBeACrushOfHimselfException, InvalidFunctionDueEnemyException {
@@ -316,27 +343,25 @@ public class Facade {
     }
 
     /**
-     * Obtm as paqueras de um usurio.
+     * Obtém as paqueras de um usuário.
      *
-     * @param id O ID do usurio.
-     * @return Uma lista das paqueras do usurio.
-     * @throws UserCannotSendNoteToHimselfException Se o usurio tentar mandar uma mensagem para si mesmo.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
-     * @throws InvalidFunctionDueEnemyException Se a funo no for vlida devido a um inimigo.
+     * @param id O ID do usuário.
+     * @return Uma lista das paqueras do usuário.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
      */
 
-    public String getPaqueras(String id) throws UserCannotSendNoteToHimselfException, UnregisteredUserException, InvalidFunctionDueEnemyException {
+    public String getPaqueras(String id) throws UnregisteredUserException {
         return jackutSystem.getCrushs(id);
     }
 
     /**
-     * Adiciona um inimigo a um usurio.
+     * Adiciona um inimigo a um usuário.
      *
-     * @param id O ID do usurio que est adicionando um inimigo.
+     * @param id O ID do usuário que está adicionando um inimigo.
      * @param inimigoNome O nome do inimigo a ser adicionado.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
-     * @throws UserIsAlreadyYourEnemyException Se o usurio j tiver a pessoa como inimigo.
-     * @throws UserCannotBeAEnemyOfHimselfException Se o usurio tentar ser inimigo de si mesmo.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
+     * @throws UserIsAlreadyYourEnemyException Se o usuário já tiver a pessoa como inimigo.
+     * @throws UserCannotBeAEnemyOfHimselfException Se o usuário tentar ser inimigo de si mesmo.
      */
 
     public void adicionarInimigo(String id, String inimigoNome) throws UnregisteredUserException, UserIsAlreadyYourEnemyException, UserCannotBeAEnemyOfHimselfException {
@@ -344,10 +369,10 @@ public class Facade {
     }
 
     /**
-     * Remove um usurio do sistema.
+     * Remove um usuário do sistema.
      *
-     * @param id O ID do usurio a ser removido.
-     * @throws UnregisteredUserException Se o usurio no estiver registrado.
+     * @param id O ID do usuário a ser removido.
+     * @throws UnregisteredUserException Se o usuário não estiver registrado.
      */
 
     public void removerUsuario(String id) throws UnregisteredUserException {
@@ -362,6 +387,112 @@ public class Facade {
         jackutSystem.closeSystem();
     }
 
+    /**
+     * Ativa ou desativa a entrega assíncrona das mensagens de comunidades (ver
+     * {@link JackutSystem#setAsyncBroadcast(int, int)}).
+     *
+     * @param trabalhadores A quantidade de threads de entrega, ou "0" para entregar na thread de quem envia.
+     * @param capacidade    A quantidade máxima de mensagens pendentes por thread de entrega.
+     */
+
+    public void configurarEntregaAssincrona(String trabalhadores, String capacidade) {
+        jackutSystem.setAsyncBroadcast(Integer.parseInt(trabalhadores), Integer.parseInt(capacidade));
+    }
+
+    /**
+     * Espera a entrega de todas as mensagens de comunidades já enviadas.
+     */
+
+    public void aguardarEntregas() {
+        jackutSystem.awaitBroadcasts();
+    }
+
+    /**
+     * Retorna as métricas da entrega assíncrona das mensagens de comunidades.
+     *
+     * @return As mensagens pendentes, entregues e o atraso de entrega, ou "entrega síncrona" se a entrega
+     * assíncrona estiver desativada.
+     */
+
+    public String getEstatisticasEntrega() {
+        BroadcastStats stats = jackutSystem.getBroadcastStats();
+        return stats == null ? "entrega síncrona" : stats.toString();
+    }
+
+    /**
+     * Executa um comando, chamando o método da fachada com o seu nome.
+     *
+     * @param comando O comando.
+     * @return O valor retornado pelo método, ou a mensagem do erro lançado por ele.
+     */
+
+    public CommandResult executar(Command comando) {
+        Method method = COMMANDS.get(comando.getName());
+        if (method == null) {
+            return CommandResult.error("Comando desconhecido: " + comando.getName());
+        }
+        if (method.getParameterCount() != comando.getArgs().length) {
+            return CommandResult.error("Quantidade de argumentos inválida para " + comando.getName());
+        }
+
+        try {
+            Object result = method.invoke(this, (Object[]) comando.getArgs());
+            return CommandResult.ok(result == null ? null : String.valueOf(result));
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            return CommandResult.error(cause.getMessage() != null ? cause.getMessage() : cause.toString());
+        } catch (IllegalAccessException e) {
+            return CommandResult.error(e.getMessage());
+        }
+    }
+
+    /**
+     * Executa vários comandos em lote, na ordem da lista. Um comando que falha não interrompe os seguintes.
+     * Os comandos são confirmados juntos: o lote só retorna depois que todas as alterações estão gravadas em
+     * disco, e cada sessão usada é consultada uma única vez (ver {@link JackutSystem#runBatch}).
+     *
+     * @param comandos Os comandos.
+     * @return O resultado de cada comando, na mesma ordem.
+     */
+
+    public List<CommandResult> executarLote(List<Command> comandos) {
+        return jackutSystem.runBatch(() -> {
+            ArrayList<CommandResult> resultados = new ArrayList<>(comandos.size());
+            for (Command comando : comandos) {
+                resultados.add(executar(comando));
+            }
+            return resultados;
+        });
+    }
+
+    /**
+     * Executa em lote comandos escritos na sintaxe do EasyAccept, por exemplo
+     * {@code adicionarAmigo id=1234 amigo=jpsauve}. Linhas vazias e comentários ({@code #}) são ignorados e
+     * não têm resultado; uma linha malformada tem como resultado um erro.
+     *
+     * @param linhas As linhas com os comandos.
+     * @return O resultado de cada comando, na ordem das linhas.
+     */
+
+    public List<CommandResult> executarScript(List<String> linhas) {
+        return jackutSystem.runBatch(() -> {
+            ArrayList<CommandResult> resultados = new ArrayList<>(linhas.size());
+            for (String linha : linhas) {
+                Command comando;
+                try {
+                    comando = Command.parse(linha);
+                } catch (IllegalArgumentException e) {
+                    resultados.add(CommandResult.error(e.getMessage()));
+                    continue;
+                }
+                if (comando != null) {
+                    resultados.add(executar(comando));
+                }
+            }
+            return resultados;
+        });
+    }
+
     ;
 
 }
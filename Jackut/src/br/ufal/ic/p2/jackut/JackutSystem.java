@@ -6,36 +6,138 @@ import br.ufal.ic.p2.jackut.exceptions.note.UserCannotSendNoteToHimselfException
 import br.ufal.ic.p2.jackut.exceptions.profile.InvalidAttributeProvidedException;
 import br.ufal.ic.p2.jackut.exceptions.user.*;
 import br.ufal.ic.p2.jackut.exceptions.community.ThereAreNoMessagesException;
+import br.ufal.ic.p2.jackut.exceptions.serealization.CorruptedFileException;
 import br.ufal.ic.p2.jackut.models.*;
+import br.ufal.ic.p2.jackut.utils.BroadcastQueue;
+import br.ufal.ic.p2.jackut.utils.BroadcastStats;
+import br.ufal.ic.p2.jackut.utils.Delta;
+import br.ufal.ic.p2.jackut.utils.IntSetView;
+import br.ufal.ic.p2.jackut.utils.LazyUsersMap;
+import br.ufal.ic.p2.jackut.utils.OperationLog;
+import br.ufal.ic.p2.jackut.utils.OrderedIntSet;
 import br.ufal.ic.p2.jackut.utils.Serealization;
-import br.ufal.ic.p2.jackut.utils.UtilsString;
-
+import br.ufal.ic.p2.jackut.utils.SessionManager;
+import br.ufal.ic.p2.jackut.utils.SpillFile;
+import br.ufal.ic.p2.jackut.utils.ShardedSnapshot;
+import br.ufal.ic.p2.jackut.utils.StripedLocks;
+import br.ufal.ic.p2.jackut.utils.UserDirectory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
- * Classe principal do sistema Jackut, responsvel por gerenciar usurios, sesses, amizades e recados.
+ * Classe principal do sistema Jackut, responsável por gerenciar usuários, sessões, amizades e recados.
+ *
+ * <p>Cada login recebe um identificador inteiro denso ({@link UserDirectory}) e as relações entre usuários
+ * são verificadas e guardadas por esses identificadores; os logins só são reconstruídos ao formatar as
+ * respostas devolvidas à {@link br.ufal.ic.p2.jackut.Facade}. Logins e nomes de comunidades são
+ * canonicalizados em tabelas de símbolos ({@link br.ufal.ic.p2.jackut.utils.SymbolTable}) ao serem criados
+ * ou lidos, de modo que cada um existe em memória uma única vez. O diretório e as tabelas pertencem a esta
+ * instância e são descartados junto com os dados; um nome só entra na tabela depois que a operação que o
+ * cadastra é validada.</p>
+ *
+ * <p>Os métodos podem ser chamados por várias threads ao mesmo tempo. Cada operação adquire apenas as travas
+ * das contas e comunidades que lê ou altera ({@link StripedLocks}, indexadas pelos seus identificadores), de
+ * modo que operações sobre usuários diferentes rodam em paralelo; as operações entre dois usuários, como
+ * {@link #addFriend} e {@link #sendNote}, adquirem as duas travas sempre na mesma ordem. As travas das
+ * comunidades são adquiridas antes das travas das contas. A remoção de usuários, a limpeza do sistema e os
+ * checkpoints alteram estruturas de muitos usuários e adquirem todas as travas. Como cada operação é
+ * registrada no log enquanto as travas estão adquiridas, duas operações que dependem uma da outra ficam no
+ * log na mesma ordem em que foram aplicadas em memória.</p>
  */
 
-public class JackutSystem {
-    private HashMap<String, UserAccount> usersMap;
-    private HashMap<String, Community> communityMap;
-    private Map<String, UserAccount> activeSessions = new HashMap<>();
+public final class JackutSystem {
+    private volatile LazyUsersMap usersMap;
+    private volatile Map<String, Community> communityMap;
+
+    /**
+     * As tabelas de símbolos dos logins e dos nomes das comunidades das contas e comunidades em memória.
+     * Substituído por um diretório novo quando todos os dados são descartados ({@link #clearMemory()} e
+     * {@link #readData()}), de modo que os símbolos de dados apagados não ficam retidos.
+     */
+    private volatile UserDirectory directory = new UserDirectory();
+    private final SessionManager activeSessions = new SessionManager();
     private final Serealization serealization = new Serealization();
+    private final OperationLog operationLog;
+
+    /**
+     * Quantidade de travas de cada conjunto; contas ou comunidades cujos identificadores caem na mesma
+     * listra são serializadas entre si.
+     */
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final StripedLocks userLocks = new StripedLocks(LOCK_STRIPES);
+    private final StripedLocks communityLocks = new StripedLocks(LOCK_STRIPES);
+
+    /**
+     * Quantidade de deltas pendentes a partir da qual eles são compactados no snapshot.
+     */
+
+    private static final int MAX_PENDING_DELTAS = 4;
+
+    /**
+     * Marcador retornado por {@link #nextMessageSource(UserAccount)} quando a próxima mensagem está na
+     * fila de mensagens do usuário, e não no log de uma comunidade.
+     */
+
+    private static final Community MESSAGES_QUEUE = new Community();
+
+    /**
+     * Logins das contas e nomes das comunidades alterados (ou removidos) desde o último checkpoint.
+     */
+
+    private final Set<String> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirtyCommunities = ConcurrentHashMap.newKeySet();
+    private boolean resetSinceCheckpoint = false;
+    private long deltaSequence = 0;
+    private int pendingDeltas = 0;
 
     /**
-     * Construtor da classe JackutSystem. Inicializa o mapa de usurios e carrega os dados do sistema.
+     * Lote em execução na thread atual (ver {@link #runBatch(Supplier)}), ou {@code null}.
+     */
+
+    private final ThreadLocal<Batch> currentBatch = new ThreadLocal<>();
+
+    /**
+     * Quantidade de registros que um lote acumula no log antes de esperar que eles fiquem duráveis.
+     */
+
+    private static final int BATCH_SYNC_INTERVAL = 4096;
+
+    /**
+     * Fila de entrega assíncrona das mensagens enviadas às comunidades, ou {@code null} quando as mensagens
+     * são entregues na thread de quem as envia (o padrão). Ver {@link #setAsyncBroadcast(int, int)}.
+     */
+
+    private volatile BroadcastQueue<PendingMessage> broadcasts;
+
+    /**
+     * Quantidade máxima de mensagens entregues juntas, em um mesmo lote, por um trabalhador da fila.
+     */
+
+    private static final int BROADCAST_BATCH_SIZE = 256;
+
+    /**
+     * Construtor da classe JackutSystem. Inicializa o mapa de usuários e carrega os dados do sistema,
+     * reaplicando as operações registradas no log após o último snapshot.
      */
 
     public JackutSystem() {
-        this.usersMap = new HashMap<>();
-        this.communityMap = new HashMap<>();
+        this.usersMap = new LazyUsersMap(ShardedSnapshot.empty());
+        this.communityMap = new ConcurrentHashMap<>();
+        this.operationLog = new OperationLog(Serealization.getDatabaseFile("operations.log"));
         readData();
     }
 
     /**
-     * Obtm o mapa de usurios cadastrados no sistema.
+     * Obtém o mapa de usuários cadastrados no sistema.
      *
-     * @return Um mapa contendo os usurios cadastrados.
+     * @return Um mapa contendo os usuários cadastrados.
      */
 
     public Map<String, UserAccount> getUsersMap() {
@@ -43,10 +145,10 @@ public class JackutSystem {
     }
 
     /**
-     * Adiciona um usurio ao mapa de usurios.
+     * Adiciona um usuário ao mapa de usuários.
      *
-     * @param login       O login do usurio.
-     * @param userAccount O objeto UserAccount do usurio.
+     * @param login       O login do usuário.
+     * @param userAccount O objeto UserAccount do usuário.
      */
 
     public void setUsersMap(String login, UserAccount userAccount) {
@@ -54,59 +156,61 @@ public class JackutSystem {
     }
 
     /**
-     * Cria um novo usurio no sistema.
+     * Cria um novo usuário no sistema.
      *
-     * @param login    O login do usurio.
-     * @param password A senha do usurio.
-     * @param userName O nome do usurio.
-     * @return true se o usurio for criado com sucesso.
-     * @throws UserAlreadyExistsException Se o login j estiver cadastrado.
-     * @throws LoginInvalidException      Se o login for invlido.
-     * @throws PasswordInvalidException   Se a senha for invlida.
+     * @param login    O login do usuário.
+     * @param password A senha do usuário.
+     * @param userName O nome do usuário.
+     * @return true se o usuário for criado com sucesso.
+     * @throws UserAlreadyExistsException Se o login já estiver cadastrado.
+     * @throws LoginInvalidException      Se o login for inválido.
+     * @throws PasswordInvalidException   Se a senha for inválida.
      */
 
     public boolean createUser(String login, String password, String userName) throws UserAlreadyExistsException, LoginInvalidException, PasswordInvalidException {
         if (login == null) throw new LoginInvalidException();
         if (password == null) throw new PasswordInvalidException();
 
-        if (getUsersMap().containsKey(login)) {
-            throw new UserAlreadyExistsException();
-        } else {
-            UserAccount newUser = new UserAccount(login, password, userName);
+        StripedLocks.Guard guard = userLocks.lock(directory.idOf(login));
+        try (guard) {
+            if (getUsersMap().containsKey(login)) {
+                throw new UserAlreadyExistsException();
+            } else {
+                log(OperationLog.Type.CREATE_USER, login, password, userName);
+                applyCreateUser(login, password, userName);
 
-            setUsersMap(login, newUser);
-
-            return true;
+                return true;
+            }
         }
     }
 
     /**
-     * Obtm um atributo especfico de um usurio.
+     * Obtém um atributo específico de um usuário.
      *
-     * @param login     O login do usurio.
+     * @param login     O login do usuário.
      * @param attribute O atributo a ser consultado.
      * @return O valor do atributo solicitado.
-     * @throws InvalidAttributeProvidedException Se o atributo no for encontrado.
-     * @throws UnregisteredUserException         Se o usurio no estiver cadastrado.
+     * @throws InvalidAttributeProvidedException Se o atributo não for encontrado.
+     * @throws UnregisteredUserException         Se o usuário não estiver cadastrado.
      */
 
     public String getUserAttribute(String login, String attribute) throws InvalidAttributeProvidedException, UnregisteredUserException {
-
-        if (!getUsersMap().containsKey(login)) {
+        UserAccount user = usersMap.get(login);
+        if (user == null) {
             throw new UnregisteredUserException();
         }
 
-        UserAccount user = getUsersMap().get(login);
+        UserAccount.View view = user.getView();
 
         switch (attribute) {
             case "login":
                 return user.getLogin();
             case "senha":
-                return user.getPassword();
+                return view.getPassword();
             case "nome":
-                return user.getUserName();
+                return view.getUserName();
             default:
-                String profileAttribute = user.getProfile().getAttributesMap().get(attribute);
+                String profileAttribute = view.getProfileAttribute(attribute);
                 if (profileAttribute == null) {
                     throw new InvalidAttributeProvidedException();
                 }
@@ -115,125 +219,271 @@ public class JackutSystem {
     }
 
     /**
-     * Abre uma sesso para um usurio autenticado.
+     * Abre uma sessão para um usuário autenticado. As sessões expiram depois de um tempo sem uso ou de
+     * abertas (ver {@link SessionManager}).
      *
-     * @param login    O login do usurio.
-     * @param password A senha do usurio.
-     * @return O identificador nico da sesso aberta.
+     * @param login    O login do usuário.
+     * @param password A senha do usuário.
+     * @return O identificador único da sessão aberta.
      * @throws InvalidLoginOrPasswordException Se o login ou senha estiverem incorretos.
      */
 
     public String openSession(String login, String password) throws InvalidLoginOrPasswordException {
-        if (!usersMap.containsKey(login) || !Objects.equals(usersMap.get(login).getPassword(), password)) {
-            throw new InvalidLoginOrPasswordException();
-        }
+        StripedLocks.Guard guard = userLocks.lock(directory.find(login));
+        try (guard) {
+            if (!usersMap.containsKey(login) || !Objects.equals(usersMap.get(login).getPassword(), password)) {
+                throw new InvalidLoginOrPasswordException();
+            }
 
-        String sessionId = UUID.randomUUID().toString();
-        activeSessions.put(sessionId, usersMap.get(login));
-        return sessionId;
+            return activeSessions.open(usersMap.get(login));
+        }
     }
 
     /**
-     * Obtm um usurio a partir de uma sesso ativa.
+     * Obtém um usuário a partir de uma sessão ativa.
      *
-     * @param sessionId O identificador da sesso.
-     * @return O objeto UserAccount correspondente  sesso.
-     * @throws UnregisteredUserException Se a sesso no estiver registrada.
+     * @param sessionId O identificador da sessão.
+     * @return O objeto UserAccount correspondente à sessão.
+     * @throws UnregisteredUserException Se a sessão não estiver registrada ou tiver expirado.
      */
 
     public UserAccount getUserFromSession(String sessionId) throws UnregisteredUserException {
-        if (!activeSessions.containsKey(sessionId)) {
+        UserAccount userAccount = resolveSession(sessionId);
+        if (userAccount == null) {
             throw new UnregisteredUserException();
         }
-        return activeSessions.get(sessionId);
+        return userAccount;
+    }
+
+    /**
+     * Verifica, com a trava da conta já adquirida, se a sessão continua aberta. Ela pode ter sido encerrada
+     * pela remoção do usuário enquanto a trava era aguardada.
+     *
+     * @param sessionId   O identificador da sessão.
+     * @param userAccount A conta obtida por {@link #getUserFromSession(String)} antes de adquirir a trava.
+     * @throws UnregisteredUserException Se a sessão não estiver mais aberta.
+     */
+
+    private void checkSession(String sessionId, UserAccount userAccount) throws UnregisteredUserException {
+        if (activeSessions.get(sessionId) != userAccount) {
+            throw new UnregisteredUserException();
+        }
+    }
+
+    /**
+     * Retorna a conta da sessão, ou {@code null} se ela não estiver aberta. Dentro de um lote, cada sessão é
+     * consultada uma única vez, enquanto nenhuma sessão for encerrada antes do prazo.
+     */
+
+    private UserAccount resolveSession(String sessionId) {
+        Batch batch = currentBatch.get();
+        if (batch == null || sessionId == null) {
+            return activeSessions.get(sessionId);
+        }
+
+        long closings = activeSessions.getClosings();
+        if (closings != batch.closings) {
+            batch.sessions.clear();
+            batch.closings = closings;
+        }
+
+        UserAccount userAccount = batch.sessions.get(sessionId);
+        if (userAccount == null) {
+            userAccount = activeSessions.get(sessionId);
+            if (userAccount != null) {
+                batch.sessions.put(sessionId, userAccount);
+            }
+        }
+        return userAccount;
+    }
+
+    /**
+     * Registra uma operação no log. Fora de um lote, espera até que o registro esteja durável; dentro de um
+     * lote, a espera é feita uma vez no final do lote (ou a cada {@link #BATCH_SYNC_INTERVAL} registros).
+     */
+
+    private long log(OperationLog.Type type, String... args) {
+        Batch batch = currentBatch.get();
+        if (batch == null) {
+            return operationLog.append(type, args);
+        }
+
+        long lsn = operationLog.appendDeferred(type, args);
+        batch.lastLsn = lsn;
+        if (++batch.unsynced >= BATCH_SYNC_INTERVAL) {
+            operationLog.sync(lsn);
+            batch.unsynced = 0;
+        }
+        return lsn;
+    }
+
+    /**
+     * Registra uma operação no log sem esperar que ela fique durável, para que a espera seja feita por
+     * {@link #awaitDurable(long)} depois de liberar as travas (<i>early lock release</i>). Assim, as operações
+     * sobre a mesma conta não esperam o fsync umas das outras com a trava adquirida, e os seus registros podem
+     * ser gravados no mesmo lote do log.
+     *
+     * <p>Outra thread pode ver a alteração antes de ela ficar durável, mas só confirma o que fez depois que o
+     * seu próprio registro, posterior no log, também estiver durável; como o log é reaplicado em ordem e
+     * descarta apenas um sufixo, nenhuma resposta depende de uma operação perdida.</p>
+     */
+
+    private long logBeforeRelease(OperationLog.Type type, String... args) {
+        if (currentBatch.get() != null) {
+            return log(type, args);
+        }
+        return operationLog.appendDeferred(type, args);
     }
 
     /**
-     * Edita o perfil de um usurio autenticado.
+     * Espera que o registro de {@link #logBeforeRelease} esteja durável. Dentro de um lote, a espera é feita
+     * no final do lote.
+     */
+
+    private void awaitDurable(long lsn) {
+        if (currentBatch.get() == null) {
+            operationLog.sync(lsn);
+        }
+    }
+
+    /**
+     * Executa várias operações como um lote na thread atual. As operações continuam sendo validadas,
+     * travadas e aplicadas uma a uma, na ordem em que são chamadas, mas:
+     * <ul>
+     *   <li>os registros do log são gravados juntos, e o lote espera uma única vez que eles fiquem duráveis,
+     *   antes de retornar;</li>
+     *   <li>cada sessão usada pelo lote é consultada uma única vez.</li>
+     * </ul>
      *
-     * @param id        O identificador da sesso do usurio.
+     * <p>Outras threads podem ver as alterações do lote antes de ele terminar; se o sistema parar antes disso,
+     * as alterações que ainda não estavam duráveis são perdidas, e nenhuma delas foi confirmada a quem
+     * chamou o lote. Um lote chamado dentro de outro faz parte do lote externo.</p>
+     *
+     * @param body As operações do lote.
+     * @param <T>  O tipo do resultado do lote.
+     * @return O resultado de {@code body}.
+     */
+
+    public <T> T runBatch(Supplier<T> body) {
+        if (currentBatch.get() != null) {
+            return body.get();
+        }
+
+        Batch batch = new Batch(activeSessions.getClosings());
+        currentBatch.set(batch);
+        try {
+            return body.get();
+        } finally {
+            currentBatch.remove();
+            if (batch.lastLsn > 0) {
+                operationLog.sync(batch.lastLsn);
+            }
+        }
+    }
+
+    /**
+     * Retorna a comunidade com o nome informado, ou {@code null} se ela não existir.
+     */
+
+    private Community findCommunity(String name) {
+        return name == null ? null : communityMap.get(name);
+    }
+
+    /**
+     * Edita o perfil de um usuário autenticado.
+     *
+     * @param id        O identificador da sessão do usuário.
      * @param attribute O atributo do perfil a ser editado.
      * @param value     O novo valor do atributo.
-     * @throws UnregisteredUserException Se o usurio no estiver cadastrado.
+     * @throws UnregisteredUserException Se o usuário não estiver cadastrado.
      */
 
     public void editProfile(String id, String attribute, String value) throws UnregisteredUserException {
         UserAccount userAccount = getUserFromSession(id);
 
-        if (!getUsersMap().containsKey(userAccount.getLogin())) {
-            throw new UnregisteredUserException();
-        }
+        StripedLocks.Guard guard = userLocks.lock(userAccount.getId());
+        try (guard) {
+            checkSession(id, userAccount);
 
-        UserAccount user = getUsersMap().get(userAccount.getLogin());
-        Profile profile = user.getProfile();
+            if (!getUsersMap().containsKey(userAccount.getLogin())) {
+                throw new UnregisteredUserException();
+            }
+
+            UserAccount user = getUsersMap().get(userAccount.getLogin());
 
-        profile.setAttributesMap(attribute, value);
+            log(OperationLog.Type.EDIT_PROFILE, user.getLogin(), attribute, value);
+            applyEditProfile(user, attribute, value);
+        }
     }
 
     /**
-     * Verifica se dois usurios so amigos.
+     * Verifica se dois usuários são amigos.
      *
-     * @param login      O login do usurio.
-     * @param loginAmigo O login do possvel amigo.
-     * @return true se os usurios forem amigos, false caso contrrio.
-     * @throws UnregisteredUserException Se algum dos usurios no estiver cadastrado.
+     * @param login      O login do usuário.
+     * @param loginAmigo O login do possível amigo.
+     * @return true se os usuários forem amigos, false caso contrário.
+     * @throws UnregisteredUserException Se algum dos usuários não estiver cadastrado.
      */
 
     public boolean isFriend(String login, String loginAmigo) throws UnregisteredUserException {
-        if (!(getUsersMap().containsKey(login) && getUsersMap().containsKey(loginAmigo))) {
-            throw new UnregisteredUserException();
-        }
-
         UserAccount userAccount = usersMap.get(login);
         UserAccount friendUserAcount = usersMap.get(loginAmigo);
+        if (userAccount == null || friendUserAcount == null) {
+            throw new UnregisteredUserException();
+        }
 
-        return userAccount.getFriendList().contains(friendUserAcount) && friendUserAcount.getFriendList().contains(userAccount);
+        return userAccount.getView().getFriends().contains(friendUserAcount.getId()) && friendUserAcount.getView().getFriends().contains(userAccount.getId());
     }
 
     /**
-     * Adiciona um amigo  lista de amigos de um usurio autenticado.
+     * Adiciona um amigo à lista de amigos de um usuário autenticado.
      *
-     * @param id    O identificador da sesso do usurio.
-     * @param amigo O login do usurio a ser adicionado como amigo.
-     * @throws UnregisteredUserException     Se o usurio ou o amigo no estiver cadastrado.
-     * @throws RequestAlreadySendedException Se o pedido de amizade j foi enviado.
-     * @throws UserAlreadyIsFriendException  Se os usurios j forem amigos.
-     * @throws UserCannotAddHimselfException Se o usurio tentar adicionar a si mesmo.
+     * @param id    O identificador da sessão do usuário.
+     * @param amigo O login do usuário a ser adicionado como amigo.
+     * @throws UnregisteredUserException     Se o usuário ou o amigo não estiver cadastrado.
+     * @throws RequestAlreadySendedException Se o pedido de amizade já foi enviado.
+     * @throws UserAlreadyIsFriendException  Se os usuários já forem amigos.
+     * @throws UserCannotAddHimselfException Se o usuário tentar adicionar a si mesmo.
      */
 
     public void addFriend(String id, String amigo) throws UnregisteredUserException, RequestAlreadySendedException, UserAlreadyIsFriendException, UserCannotAddHimselfException, InvalidFunctionDueEnemyException {
-        if (!(activeSessions.containsKey(id) && usersMap.containsKey(amigo))) {
-            throw new UnregisteredUserException();
-        }
+        UserAccount userAccount = getUserFromSession(id);
 
-        UserAccount userAccount = activeSessions.get(id);
-        UserAccount friendUserAccount = usersMap.get(amigo);
+        StripedLocks.Guard guard = userLocks.lock(userAccount.getId(), directory.find(amigo));
+        try (guard) {
+            checkSession(id, userAccount);
 
-        if (userAccount.getLogin().equals(friendUserAccount.getLogin())) {
-            throw new UserCannotAddHimselfException();
-        }
+            if (!usersMap.containsKey(amigo)) {
+                throw new UnregisteredUserException();
+            }
 
-        if (userAccount.getFriendList().contains(friendUserAccount) && friendUserAccount.getFriendList().contains(userAccount)) {
-            throw new UserAlreadyIsFriendException();
-        }
+            UserAccount friendUserAccount = usersMap.get(amigo);
 
-        if (friendUserAccount.getEnemysList().contains(userAccount.getLogin())) {
-            throw new InvalidFunctionDueEnemyException(friendUserAccount.getUserName());
-        }
+            if (userAccount.getLogin().equals(friendUserAccount.getLogin())) {
+                throw new UserCannotAddHimselfException();
+            }
 
-        if (userAccount.getFriendsRequestsSent().contains(friendUserAccount)) {
-            throw new RequestAlreadySendedException();
-        } else if (userAccount.getFriendsRequestsReceived().contains(friendUserAccount)) {
-            userAccount.acceptRequest(friendUserAccount);
-        } else {
-            userAccount.sendRequest(friendUserAccount);
+            if (userAccount.getFriendList().contains(friendUserAccount.getId()) && friendUserAccount.getFriendList().contains(userAccount.getId())) {
+                throw new UserAlreadyIsFriendException();
+            }
+
+            if (friendUserAccount.getEnemysList().contains(userAccount.getId())) {
+                throw new InvalidFunctionDueEnemyException(friendUserAccount.getUserName());
+            }
+
+            if (userAccount.getFriendsRequestsSent().contains(friendUserAccount.getId())) {
+                throw new RequestAlreadySendedException();
+            }
+
+            log(OperationLog.Type.ADD_FRIEND, userAccount.getLogin(), friendUserAccount.getLogin());
+            applyAddFriend(userAccount, friendUserAccount);
         }
     }
 
     /**
-     * Obtm a lista de amigos de um usurio.
+     * Obtém a lista de amigos de um usuário.
      *
-     * @param login O login do usurio.
+     * @param login O login do usuário.
      * @return Uma string contendo a lista de amigos.
      */
 
@@ -244,154 +494,173 @@ public class JackutSystem {
     }
 
     /**
-     * Envia uma nota de um usurio para outro, verificando restries de envio.
+     * Envia uma nota de um usuário para outro, verificando restrições de envio.
      * <p>
-     * Este mtodo verifica se o usurio remetente est registrado na sesso ativa e se o destinatrio
-     * tambm est registrado. Alm disso, o mtodo garante que o usurio no tente enviar uma nota para si mesmo
-     * e que no envie uma nota para um inimigo. Caso todas as verificaes passem, a nota  enviada para o destinatrio.
+     * Este método verifica se o usuário remetente está registrado na sessão ativa e se o destinatário
+     * também está registrado. Além disso, o método garante que o usuário não tente enviar uma nota para si mesmo
+     * e que não envie uma nota para um inimigo. Caso todas as verificações passem, a nota é enviada para o destinatário.
      *
-     * @param id       o identificador do usurio remetente.
-     * @param receiver o identificador do usurio destinatrio.
-     * @param note     o contedo da nota a ser enviada.
-     * @throws UnregisteredUserException            se o remetente ou o destinatrio no estiverem registrados.
-     * @throws UserCannotSendNoteToHimselfException se o usurio tentar enviar uma nota para si mesmo.
-     * @throws InvalidFunctionDueEnemyException     se o destinatrio for um inimigo do remetente.
+     * @param id       o identificador do usuário remetente.
+     * @param receiver o identificador do usuário destinatário.
+     * @param note     o conteúdo da nota a ser enviada.
+     * @throws UnregisteredUserException            se o remetente ou o destinatário não estiverem registrados.
+     * @throws UserCannotSendNoteToHimselfException se o usuário tentar enviar uma nota para si mesmo.
+     * @throws InvalidFunctionDueEnemyException     se o destinatário for um inimigo do remetente.
      */
 
     public void sendNote(String id, String receiver, String note) throws UnregisteredUserException, UserCannotSendNoteToHimselfException, InvalidFunctionDueEnemyException {
-        if (!(activeSessions.containsKey(id) && usersMap.containsKey(receiver))) {
-            throw new UnregisteredUserException();
-        }
+        UserAccount sender = getUserFromSession(id);
+        long lsn;
 
-        if (activeSessions.get(id).getLogin().equals(receiver)) {
-            throw new UserCannotSendNoteToHimselfException();
-        }
+        StripedLocks.Guard guard = userLocks.lock(sender.getId(), directory.find(receiver));
+        try (guard) {
+            checkSession(id, sender);
 
-        if (usersMap.get(receiver).getEnemysList().contains(activeSessions.get(id).getLogin())) {
-            throw new InvalidFunctionDueEnemyException(usersMap.get(receiver).getUserName());
-        }
+            if (!usersMap.containsKey(receiver)) {
+                throw new UnregisteredUserException();
+            }
 
-        Note newNote = new Note(id, receiver, note);
+            if (sender.getLogin().equals(receiver)) {
+                throw new UserCannotSendNoteToHimselfException();
+            }
 
-        activeSessions.get(id).getPeopleISentNotesTo().add(receiver);
+            if (usersMap.get(receiver).getEnemysList().contains(sender.getId())) {
+                throw new InvalidFunctionDueEnemyException(usersMap.get(receiver).getUserName());
+            }
 
-        usersMap.get(receiver).setNotesQueue(newNote);
+            lsn = logBeforeRelease(OperationLog.Type.SEND_NOTE, sender.getLogin(), receiver, note);
+            applySendNote(sender, usersMap.get(receiver), note);
+        }
+        awaitDurable(lsn);
     }
 
     /**
-     * L a prxima nota de um usurio registrado.
+     * Lê a próxima nota de um usuário registrado.
      * <p>
-     * Este mtodo verifica se o usurio est registrado na sesso ativa e se o usurio tem notas em sua fila.
-     * Caso haja uma nota, ela  removida da fila e o contedo da nota  retornado. Se o usurio no estiver registrado
-     * ou se no houver notas, excees apropriadas sero lanadas.
+     * Este método verifica se o usuário está registrado na sessão ativa e se o usuário tem notas em sua fila.
+     * Caso haja uma nota, ela é removida da fila e o conteúdo da nota é retornado. Se o usuário não estiver registrado
+     * ou se não houver notas, exceções apropriadas serão lançadas.
      *
-     * @param id o identificador do usurio que deseja ler a nota.
-     * @return o contedo da prxima nota na fila de notas do usurio.
-     * @throws UnregisteredUserException se o usurio no estiver registrado na sesso ativa.
-     * @throws ThereAreNoNotesException  se no houver notas na fila do usurio.
+     * @param id o identificador do usuário que deseja ler a nota.
+     * @return o conteúdo da próxima nota na fila de notas do usuário.
+     * @throws UnregisteredUserException se o usuário não estiver registrado na sessão ativa.
+     * @throws ThereAreNoNotesException  se não houver notas na fila do usuário.
      */
 
     public String readNote(String id) throws UnregisteredUserException, ThereAreNoNotesException {
-        if (!activeSessions.containsKey(id)) {
-            throw new UnregisteredUserException();
-        }
+        UserAccount userAccount = getUserFromSession(id);
+        long lsn;
+        Note note;
 
-        if (activeSessions.get(id).getNotesQueue().isEmpty()) {
-            throw new ThereAreNoNotesException();
-        }
+        StripedLocks.Guard guard = userLocks.lock(userAccount.getId());
+        try (guard) {
+            checkSession(id, userAccount);
 
-        Note note = activeSessions.get(id).getNotesQueue().poll();
+            if (!userAccount.hasNotes()) {
+                throw new ThereAreNoNotesException();
+            }
+
+            lsn = logBeforeRelease(OperationLog.Type.READ_NOTE, userAccount.getLogin());
+            note = applyReadNote(userAccount);
+        }
+        awaitDurable(lsn);
 
         assert note != null;
         return note.getMessage();
     }
 
     /**
-     * Cria uma nova comunidade e a associa a um usurio.
+     * Cria uma nova comunidade e a associa a um usuário.
      * <p>
-     * Este mtodo verifica se o usurio est registrado na sesso ativa e se a comunidade com o nome fornecido
-     * j existe. Caso no exista uma comunidade com o nome especificado, a nova comunidade  criada e o usurio
-     *  associado como proprietrio. A comunidade  ento adicionada ao mapa de comunidades.
+     * Este método verifica se o usuário está registrado na sessão ativa e se a comunidade com o nome fornecido
+     * já existe. Caso não exista uma comunidade com o nome especificado, a nova comunidade é criada e o usuário
+     * é associado como proprietário. A comunidade é então adicionada ao mapa de comunidades.
      *
-     * @param id          o identificador do usurio que est criando a comunidade.
+     * @param id          o identificador do usuário que está criando a comunidade.
      * @param name        o nome da comunidade a ser criada.
-     * @param description a descrio da comunidade a ser criada.
-     * @throws UnregisteredUserException       se o usurio no estiver registrado na sesso ativa.
-     * @throws CommunityAlreadyExistsException se j existir uma comunidade com o nome especificado.
+     * @param description a descrição da comunidade a ser criada.
+     * @throws UnregisteredUserException       se o usuário não estiver registrado na sessão ativa.
+     * @throws CommunityAlreadyExistsException se já existir uma comunidade com o nome especificado.
      */
 
     public void createCommunity(String id, String name, String description) throws UnregisteredUserException, CommunityAlreadyExistsException {
-        if (!activeSessions.containsKey(id)) {
-            throw new UnregisteredUserException();
-        }
-
+        UserAccount owner = getUserFromSession(id);
         if (communityMap.containsKey(name)) {
             throw new CommunityAlreadyExistsException();
         }
 
-        UserAccount owner = activeSessions.get(id);
-        owner.setCommunityList(name);
+        StripedLocks.Guard communityGuard = communityLocks.lock(directory.getCommunityNames().idOf(name));
+        StripedLocks.Guard guard = userLocks.lock(owner.getId());
+        try (communityGuard; guard) {
+            checkSession(id, owner);
 
-        Community community = new Community(name, description, owner);
-        communityMap.put(name, community);
+            if (communityMap.containsKey(name)) {
+                throw new CommunityAlreadyExistsException();
+            }
+
+            log(OperationLog.Type.CREATE_COMMUNITY, owner.getLogin(), name, description);
+            applyCreateCommunity(owner, name, description);
+        }
     }
 
     /**
-     * Retorna a descrio de uma comunidade especfica.
+     * Retorna a descrição de uma comunidade específica.
      * <p>
-     * Este mtodo verifica se a comunidade especificada existe no sistema. Caso a comunidade seja encontrada,
-     * a descrio da comunidade  retornada. Se a comunidade no existir, uma exceo ser lanada.
+     * Este método verifica se a comunidade especificada existe no sistema. Caso a comunidade seja encontrada,
+     * a descrição da comunidade é retornada. Se a comunidade não existir, uma exceção será lançada.
      *
-     * @param name o nome da comunidade para a qual a descrio ser retornada.
-     * @return a descrio da comunidade.
-     * @throws CommunityDoesNotExistsException se a comunidade especificada no existir.
+     * @param name o nome da comunidade para a qual a descrição será retornada.
+     * @return a descrição da comunidade.
+     * @throws CommunityDoesNotExistsException se a comunidade especificada não existir.
      */
 
     public String getDescriptionCommunity(String name) throws CommunityDoesNotExistsException {
-        if (communityMap.containsKey(name)) {
-            return communityMap.get(name).getDescription();
+        Community community = findCommunity(name);
+
+        if (community != null) {
+            return community.getDescription();
         } else {
             throw new CommunityDoesNotExistsException();
         }
     }
 
     /**
-     * Retorna o login do proprietrio de uma comunidade.
+     * Retorna o login do proprietário de uma comunidade.
      * <p>
-     * Este mtodo verifica se a comunidade especificada existe no sistema. Caso a comunidade seja encontrada,
-     * o login do proprietrio da comunidade  retornado. Se a comunidade no existir, uma exceo ser lanada.
+     * Este método verifica se a comunidade especificada existe no sistema. Caso a comunidade seja encontrada,
+     * o login do proprietário da comunidade é retornado. Se a comunidade não existir, uma exceção será lançada.
      *
-     * @param name o nome da comunidade para a qual o login do proprietrio ser retornado.
-     * @return o login do proprietrio da comunidade.
-     * @throws CommunityDoesNotExistsException se a comunidade especificada no existir.
+     * @param name o nome da comunidade para a qual o login do proprietário será retornado.
+     * @return o login do proprietário da comunidade.
+     * @throws CommunityDoesNotExistsException se a comunidade especificada não existir.
      */
 
     public String getOwnerCommunity(String name) throws CommunityDoesNotExistsException {
-        if (communityMap.containsKey(name)) {
-            UserAccount owner = communityMap.get(name).getOwner();
+        Community community = findCommunity(name);
 
-            return owner.getLogin();
+        if (community != null) {
+            return community.getOwner();
         } else {
             throw new CommunityDoesNotExistsException();
         }
     }
 
     /**
-     * Retorna uma lista de membros de uma comunidade especfica.
+     * Retorna uma lista de membros de uma comunidade específica.
      * <p>
-     * Este mtodo verifica se a comunidade especificada existe no sistema. Caso a comunidade seja encontrada,
-     * a lista de membros da comunidade  retornada como uma string formatada. Se a comunidade no existir,
-     * uma exceo ser lanada.
+     * Este método verifica se a comunidade especificada existe no sistema. Caso a comunidade seja encontrada,
+     * a lista de membros da comunidade é retornada como uma string formatada. Se a comunidade não existir,
+     * uma exceção será lançada.
      *
-     * @param name o nome da comunidade para a qual a lista de membros ser retornada.
-     * @return uma string contendo os membros da comunidade, formatada de acordo com o mtodo {@link Community#getMembersString}.
-     * @throws CommunityDoesNotExistsException se a comunidade especificada no existir.
+     * @param name o nome da comunidade para a qual a lista de membros será retornada.
+     * @return uma string contendo os membros da comunidade, formatada de acordo com o método {@link Community#getMembersString}.
+     * @throws CommunityDoesNotExistsException se a comunidade especificada não existir.
      */
 
     public String getMembersCommunity(String name) throws CommunityDoesNotExistsException {
-        if (communityMap.containsKey(name)) {
-            Community community = communityMap.get(name);
+        Community community = findCommunity(name);
 
+        if (community != null) {
             return community.getMembersString();
         } else {
             throw new CommunityDoesNotExistsException();
@@ -399,186 +668,215 @@ public class JackutSystem {
     }
 
     /**
-     * Retorna a lista de comunidades de um usurio registrado.
+     * Retorna a lista de comunidades de um usuário registrado.
      * <p>
-     * Este mtodo verifica se o usurio est registrado no sistema. Caso o usurio seja encontrado,
-     * a lista de comunidades  qual o usurio pertence  retornada como uma string formatada. Se o usurio
-     * no estiver registrado, uma exceo ser lanada.
+     * Este método verifica se o usuário está registrado no sistema. Caso o usuário seja encontrado,
+     * a lista de comunidades à qual o usuário pertence é retornada como uma string formatada. Se o usuário
+     * não estiver registrado, uma exceção será lançada.
      *
-     * @param login o login do usurio cuja lista de comunidades ser retornada.
-     * @return uma string contendo as comunidades do usurio formatadas de acordo com o mtodo {@link UtilsString#formatArrayList}.
-     * @throws UnregisteredUserException se o usurio no estiver registrado no sistema.
+     * @param login o login do usuário cuja lista de comunidades será retornada.
+     * @return uma string contendo as comunidades do usuário formatadas de acordo com o método {@link UserAccount#getCommunitiesString}.
+     * @throws UnregisteredUserException se o usuário não estiver registrado no sistema.
      */
 
     public String getCommunity(String login) throws UnregisteredUserException {
-        if (!(getUsersMap().containsKey(login))) {
+        UserAccount user = usersMap.get(login);
+        if (user == null) {
             throw new UnregisteredUserException();
         }
 
-        return UtilsString.formatArrayList(usersMap.get(login).getCommunityList());
+        return user.getCommunitiesString();
     }
 
     /**
-     * Adiciona um usurio a uma comunidade existente.
+     * Adiciona um usuário a uma comunidade existente.
      * <p>
-     * Este mtodo verifica se o usurio est registrado na sesso ativa e se a comunidade especificada
-     * existe. Caso o usurio ainda no faa parte da comunidade, ele  adicionado  lista de membros da
-     * comunidade e a comunidade  associada ao usurio. Se o usurio j fizer parte da comunidade ou se
-     * a comunidade no existir, excees so lanadas.
+     * Este método verifica se o usuário está registrado na sessão ativa e se a comunidade especificada
+     * existe. Caso o usuário ainda não faça parte da comunidade, ele é adicionado à lista de membros da
+     * comunidade e a comunidade é associada ao usuário. Se o usuário já fizer parte da comunidade ou se
+     * a comunidade não existir, exceções são lançadas.
      *
-     * @param id           o identificador do usurio que deseja entrar na comunidade.
-     * @param comunityName o nome da comunidade  qual o usurio deseja ser adicionado.
-     * @throws UnregisteredUserException             se o usurio no estiver registrado na sesso ativa.
-     * @throws CommunityDoesNotExistsException       se a comunidade especificada no existir.
-     * @throws UserIsAlreadyInThisCommunityException se o usurio j estiver presente na comunidade.
+     * @param id           o identificador do usuário que deseja entrar na comunidade.
+     * @param comunityName o nome da comunidade à qual o usuário deseja ser adicionado.
+     * @throws UnregisteredUserException             se o usuário não estiver registrado na sessão ativa.
+     * @throws CommunityDoesNotExistsException       se a comunidade especificada não existir.
+     * @throws UserIsAlreadyInThisCommunityException se o usuário já estiver presente na comunidade.
      */
 
     public void addComunity(String id, String comunityName) throws UnregisteredUserException, CommunityDoesNotExistsException, UserIsAlreadyInThisCommunityException {
-        if (!activeSessions.containsKey(id)) {
-            throw new UnregisteredUserException();
-        }
+        UserAccount userAccount = getUserFromSession(id);
 
-        if (!(communityMap.containsKey(comunityName))) {
-            throw new CommunityDoesNotExistsException();
-        }
+        StripedLocks.Guard communityGuard = communityLocks.lock(directory.getCommunityNames().find(comunityName));
+        StripedLocks.Guard guard = userLocks.lock(userAccount.getId());
+        try (communityGuard; guard) {
+            checkSession(id, userAccount);
 
-        if (activeSessions.get(id).getCommunityList().contains(comunityName)) {
-            throw new UserIsAlreadyInThisCommunityException();
-        } else {
-            communityMap.get(comunityName).setMembersList(activeSessions.get(id));
-            activeSessions.get(id).setCommunityList(comunityName);
+            Community community = findCommunity(comunityName);
+            if (community == null) {
+                throw new CommunityDoesNotExistsException();
+            }
+
+            if (userAccount.getCommunityList().contains(comunityName)) {
+                throw new UserIsAlreadyInThisCommunityException();
+            } else {
+                log(OperationLog.Type.ADD_COMMUNITY, userAccount.getLogin(), comunityName);
+                applyAddCommunity(userAccount, community);
+            }
         }
     }
 
     /**
      * Envia uma mensagem para todos os membros de uma comunidade.
      * <p>
-     * Este mtodo verifica se o usurio est registrado na sesso ativa e se a comunidade de destino
-     * existe. Caso ambas as condies sejam atendidas, a mensagem  criada e enviada para todos os
-     * membros da comunidade, colocando-a na fila de mensagens de cada um.
+     * Este método verifica se o usuário está registrado na sessão ativa e se a comunidade de destino
+     * existe. Caso ambas as condições sejam atendidas, a mensagem é criada e acrescentada uma única vez ao
+     * log de mensagens da comunidade, de onde cada membro a lê pelo seu cursor; o custo não depende da
+     * quantidade de membros.
      *
-     * @param id                o identificador do usurio que est enviando a mensagem.
-     * @param receiverCommunity o nome da comunidade para a qual a mensagem ser enviada.
-     * @param message           o contedo da mensagem a ser enviada para os membros da comunidade.
-     * @throws UnregisteredUserException       se o usurio no estiver registrado na sesso ativa.
-     * @throws CommunityDoesNotExistsException se a comunidade especificada no existir.
+     * @param id                o identificador do usuário que está enviando a mensagem.
+     * @param receiverCommunity o nome da comunidade para a qual a mensagem será enviada.
+     * @param message           o conteúdo da mensagem a ser enviada para os membros da comunidade.
+     * @throws UnregisteredUserException       se o usuário não estiver registrado na sessão ativa.
+     * @throws CommunityDoesNotExistsException se a comunidade especificada não existir.
      */
 
     public void sendMessage(String id, String receiverCommunity, String message) throws UnregisteredUserException, CommunityDoesNotExistsException {
-        if (!activeSessions.containsKey(id)) {
-            throw new UnregisteredUserException();
-        }
+        UserAccount sender = getUserFromSession(id);
 
-        if (!(communityMap.containsKey(receiverCommunity))) {
-            throw new CommunityDoesNotExistsException();
+        BroadcastQueue<PendingMessage> queue = broadcasts;
+        if (queue != null) {
+            Community community = findCommunity(receiverCommunity);
+            if (community == null) {
+                throw new CommunityDoesNotExistsException();
+            }
+
+            queue.submit(directory.getCommunityNames().find(receiverCommunity),
+                    new PendingMessage(sender.getLogin(), receiverCommunity, message, community.getMembersView()));
+            return;
         }
 
-        Message newMessage = new Message(message);
+        StripedLocks.Guard communityGuard = communityLocks.lock(directory.getCommunityNames().find(receiverCommunity));
+        try (communityGuard) {
+            checkSession(id, sender);
 
-        Community community = communityMap.get(receiverCommunity);
+            Community community = findCommunity(receiverCommunity);
+            if (community == null) {
+                throw new CommunityDoesNotExistsException();
+            }
 
-        for (UserAccount userAccount : community.getMembersList()) {
-            userAccount.setMessagesQueue(newMessage);
+            long lsn = log(OperationLog.Type.SEND_MESSAGE, sender.getLogin(), receiverCommunity, message);
+            applySendMessage(community, message, lsn);
         }
     }
 
     /**
-     * L a prxima mensagem da fila de mensagens de um usurio registrado.
+     * Lê a próxima mensagem da fila de mensagens de um usuário registrado.
      * <p>
-     * Este mtodo verifica se o usurio est registrado na sesso ativa e, em seguida, recupera a prxima
-     * mensagem da fila de mensagens desse usurio. Caso o usurio no esteja registrado ou se no houver
-     * mensagens na fila, excees apropriadas so lanadas.
+     * Este método verifica se o usuário está registrado na sessão ativa e, em seguida, recupera a mensagem
+     * não lida mais antiga entre os logs das comunidades do usuário (e a sua fila de mensagens), na ordem de
+     * envio. Caso o usuário não esteja registrado ou se não houver mensagens não lidas, exceções apropriadas
+     * são lançadas. A comunidade de onde a mensagem foi lida é registrada no log, já que mensagens enviadas
+     * em paralelo a outras comunidades podem ainda não estar visíveis no momento da leitura.
      *
-     * @param id o identificador do usurio que deseja ler a mensagem.
-     * @return o contedo da prxima mensagem na fila do usurio.
-     * @throws UnregisteredUserException   se o usurio no estiver registrado na sesso ativa.
-     * @throws ThereAreNoMessagesException se no houver mensagens na fila do usurio.
+     * @param id o identificador do usuário que deseja ler a mensagem.
+     * @return o conteúdo da próxima mensagem na fila do usuário.
+     * @throws UnregisteredUserException   se o usuário não estiver registrado na sessão ativa.
+     * @throws ThereAreNoMessagesException se não houver mensagens na fila do usuário.
      */
 
     public String readMessage(String id) throws UnregisteredUserException, ThereAreNoMessagesException {
-        if (!activeSessions.containsKey(id)) {
-            throw new UnregisteredUserException();
-        }
+        UserAccount userAccount = getUserFromSession(id);
+        awaitBroadcasts();
 
-        UserAccount userAccount = activeSessions.get(id);
+        StripedLocks.Guard guard = userLocks.lock(userAccount.getId());
+        try (guard) {
+            checkSession(id, userAccount);
 
-        if (userAccount.getMessagesQueue().isEmpty()) {
-            throw new ThereAreNoMessagesException();
-        }
+            Community source = nextMessageSource(userAccount);
+            if (source == null) {
+                throw new ThereAreNoMessagesException();
+            }
 
-        Message message = userAccount.getMessagesQueue().poll();
+            log(OperationLog.Type.READ_MESSAGE, userAccount.getLogin(), source == MESSAGES_QUEUE ? null : source.getName());
+            Message message = applyReadMessage(userAccount, source);
 
-        assert message != null;
-        return message.getMessage();
+            assert message != null;
+            return message.getMessage();
+        }
     }
 
     /**
-     * Verifica se um determinado usurio  f de outro usurio (dolo).
+     * Verifica se um determinado usuário é fã de outro usuário (ídolo).
      *
-     * @param login o login do possvel f.
-     * @param idol  o login do usurio que pode ser o dolo.
-     * @return {@code true} se o usurio identificado por {@code login} estiver na lista de fs do {@code idol},
-     * {@code false} caso contrrio.
+     * @param login o login do possível fã.
+     * @param idol  o login do usuário que pode ser o ídolo.
+     * @return {@code true} se o usuário identificado por {@code login} estiver na lista de fãs do {@code idol},
+     * {@code false} caso contrário.
      */
 
     public Boolean isFan(String login, String idol) {
-        return usersMap.get(idol).getFansList().contains(login);
+        return usersMap.get(idol).getView().getFans().contains(directory.find(login));
     }
 
     /**
-     * Adiciona um usurio como dolo do usurio autenticado, ou seja, o usurio autenticado se torna f do dolo especificado.
+     * Adiciona um usuário como ídolo do usuário autenticado, ou seja, o usuário autenticado se torna fã do ídolo especificado.
      *
-     * <p>Este mtodo realiza diversas verificaes antes de registrar a relao de f:
+     * <p>Este método realiza diversas verificações antes de registrar a relação de fã:
      * <ul>
-     *   <li>Verifica se o usurio autenticado est com sesso ativa.</li>
-     *   <li>Verifica se o dolo especificado est registrado no sistema.</li>
-     *   <li>Impede que o usurio se torne f de algum que j considera como dolo.</li>
-     *   <li>Impede que o usurio se torne f de si mesmo.</li>
-     *   <li>Impede que o usurio se torne f de algum que o tenha como inimigo.</li>
+     *   <li>Verifica se o usuário autenticado está com sessão ativa.</li>
+     *   <li>Verifica se o ídolo especificado está registrado no sistema.</li>
+     *   <li>Impede que o usuário se torne fã de alguém que já considera como ídolo.</li>
+     *   <li>Impede que o usuário se torne fã de si mesmo.</li>
+     *   <li>Impede que o usuário se torne fã de alguém que o tenha como inimigo.</li>
      * </ul>
      *
-     * @param id       o identificador da sesso do usurio que deseja adicionar um dolo
-     * @param idolName o login do usurio que ser marcado como dolo
-     * @throws UnregisteredUserException          se o usurio autenticado ou o dolo no estiver registrado
-     * @throws UserAlreadyIsAnIdolException       se o dolo j estiver na lista de fs
-     * @throws UserCannotBeAFanOfHimselfException se o usurio tentar se tornar f de si mesmo
-     * @throws InvalidFunctionDueEnemyException   se o dolo tiver o usurio autenticado como inimigo
+     * @param id       o identificador da sessão do usuário que deseja adicionar um ídolo
+     * @param idolName o login do usuário que será marcado como ídolo
+     * @throws UnregisteredUserException          se o usuário autenticado ou o ídolo não estiver registrado
+     * @throws UserAlreadyIsAnIdolException       se o ídolo já estiver na lista de fãs
+     * @throws UserCannotBeAFanOfHimselfException se o usuário tentar se tornar fã de si mesmo
+     * @throws InvalidFunctionDueEnemyException   se o ídolo tiver o usuário autenticado como inimigo
      */
 
     public void addIdol(String id, String idolName) throws UnregisteredUserException, UserAlreadyIsAnIdolException, UserCannotBeAFanOfHimselfException, InvalidFunctionDueEnemyException {
-        if (!activeSessions.containsKey(id)) {
-            throw new UnregisteredUserException();
-        }
+        UserAccount fan = getUserFromSession(id);
 
-        if (!(usersMap.containsKey(idolName))) {
-            throw new UnregisteredUserException();
-        }
+        StripedLocks.Guard guard = userLocks.lock(fan.getId(), directory.find(idolName));
+        try (guard) {
+            checkSession(id, fan);
 
-        String userLogin = activeSessions.get(id).getLogin();
-        if (usersMap.get(idolName).getFansList().contains(userLogin)) {
-            throw new UserAlreadyIsAnIdolException();
-        }
+            if (!(usersMap.containsKey(idolName))) {
+                throw new UnregisteredUserException();
+            }
 
-        if (userLogin.equals(idolName)) {
-            throw new UserCannotBeAFanOfHimselfException();
-        }
+            String userLogin = fan.getLogin();
+            int userId = fan.getId();
+            if (usersMap.get(idolName).getFansList().contains(userId)) {
+                throw new UserAlreadyIsAnIdolException();
+            }
 
-        if (usersMap.get(idolName).getEnemysList().contains(userLogin)) {
-            throw new InvalidFunctionDueEnemyException(usersMap.get(idolName).getUserName());
-        }
+            if (userLogin.equals(idolName)) {
+                throw new UserCannotBeAFanOfHimselfException();
+            }
+
+            if (usersMap.get(idolName).getEnemysList().contains(userId)) {
+                throw new InvalidFunctionDueEnemyException(usersMap.get(idolName).getUserName());
+            }
 
-        usersMap.get(idolName).setFansList(activeSessions.get(id).getLogin());
+            log(OperationLog.Type.ADD_IDOL, userLogin, idolName);
+            applyAddIdol(fan, usersMap.get(idolName));
+        }
     }
 
     /**
-     * Retorna uma representao em formato de string dos fs (usurios que marcaram como crush)
-     * do usurio identificado pelo login fornecido.
+     * Retorna uma representação em formato de string dos fãs (usuários que marcaram como crush)
+     * do usuário identificado pelo login fornecido.
      *
-     * <p>Este mtodo acessa a conta do usurio pelo login informado e retorna a lista
-     * de fs no formato de {@code String}, conforme definido por {@code getFansString()}.
+     * <p>Este método acessa a conta do usuário pelo login informado e retorna a lista
+     * de fãs no formato de {@code String}, conforme definido por {@code getFansString()}.
      *
-     * @param login o login do usurio cuja lista de fs ser recuperada
-     * @return uma {@code String} contendo os logins ou nomes dos usurios que tm o usurio como crush
+     * @param login o login do usuário cuja lista de fãs será recuperada
+     * @return uma {@code String} contendo os logins ou nomes dos usuários que têm o usuário como crush
      */
 
     public String getFans(String login) {
@@ -588,233 +886,942 @@ public class JackutSystem {
     }
 
     /**
-     * Verifica se o usurio especificado est na lista de crushes do usurio autenticado.
+     * Verifica se o usuário especificado está na lista de crushes do usuário autenticado.
      *
-     * <p>Este mtodo consulta a lista de crushes associada  sesso ativa identificada por {@code id}
+     * <p>Este método consulta a lista de crushes associada à sessão ativa identificada por {@code id}
      * e retorna {@code true} se o login informado em {@code crush} estiver presente nessa lista.
      *
-     * @param id    o identificador da sesso do usurio autenticado
-     * @param crush o login do usurio a ser verificado como crush
-     * @return {@code true} se o usurio especificado estiver na lista de crushes, {@code false} caso contrrio
-     * @throws UnregisteredUserException se o usurio no estiver com a sesso ativa
+     * @param id    o identificador da sessão do usuário autenticado
+     * @param crush o login do usuário a ser verificado como crush
+     * @return {@code true} se o usuário especificado estiver na lista de crushes, {@code false} caso contrário
+     * @throws UnregisteredUserException se o usuário não estiver com a sessão ativa
      */
 
     public Boolean isCrush(String id, String crush) throws UnregisteredUserException {
-        if (!activeSessions.containsKey(id)) {
-            throw new UnregisteredUserException();
-        }
+        UserAccount userAccount = getUserFromSession(id);
+
+        StripedLocks.Guard guard = userLocks.lock(userAccount.getId());
+        try (guard) {
+            checkSession(id, userAccount);
 
-        return activeSessions.get(id).getCrushsList().contains(crush);
+            return userAccount.getCrushsList().contains(directory.find(crush));
+        }
     }
 
     /**
-     * Adiciona um usurio  lista de crushes do usurio autenticado.
+     * Adiciona um usuário à lista de crushes do usuário autenticado.
      *
-     * <p>Este mtodo realiza diversas validaes antes de adicionar o crush:
+     * <p>Este método realiza diversas validações antes de adicionar o crush:
      * <ul>
-     *   <li>Verifica se o usurio est autenticado (sesso ativa).</li>
-     *   <li>Verifica se o usurio a ser marcado como crush est registrado no sistema.</li>
-     *   <li>Impede que um usurio adicione algum que j esteja em sua lista de crushes.</li>
-     *   <li>Impede que o usurio adicione a si mesmo como crush.</li>
-     *   <li>Impede que o usurio adicione como crush algum que o tenha como inimigo.</li>
+     *   <li>Verifica se o usuário está autenticado (sessão ativa).</li>
+     *   <li>Verifica se o usuário a ser marcado como crush está registrado no sistema.</li>
+     *   <li>Impede que um usuário adicione alguém que já esteja em sua lista de crushes.</li>
+     *   <li>Impede que o usuário adicione a si mesmo como crush.</li>
+     *   <li>Impede que o usuário adicione como crush alguém que o tenha como inimigo.</li>
      * </ul>
      *
-     * @param id    o identificador da sesso do usurio que est adicionando o crush
-     * @param crush o login do usurio a ser adicionado como crush
-     * @throws UnregisteredUserException            se o usurio autenticado ou o usurio a ser adicionado no estiver registrado
-     * @throws UserIsAlreadyYourCrushException      se o usurio j estiver na lista de crushes
-     * @throws UserCannotBeACrushOfHimselfException se o usurio tentar se adicionar como crush
-     * @throws InvalidFunctionDueEnemyException     se o usurio a ser adicionado tiver o usurio autenticado como inimigo
+     * <p>Se o crush já tiver marcado o usuário como crush, a paquera se torna mútua e cada um dos dois recebe,
+     * uma única vez, o recado automático "{nome do outro} é seu paquera - Recado do Jackut." (ver
+     * {@link #applyAddCrush(UserAccount, UserAccount, boolean)}).</p>
+     *
+     * @param id    o identificador da sessão do usuário que está adicionando o crush
+     * @param crush o login do usuário a ser adicionado como crush
+     * @throws UnregisteredUserException            se o usuário autenticado ou o usuário a ser adicionado não estiver registrado
+     * @throws UserIsAlreadyYourCrushException      se o usuário já estiver na lista de crushes
+     * @throws UserCannotBeACrushOfHimselfException se o usuário tentar se adicionar como crush
+     * @throws InvalidFunctionDueEnemyException     se o usuário a ser adicionado tiver o usuário autenticado como inimigo
      */
 
     public void addCrush(String id, String crush) throws UnregisteredUserException, UserIsAlreadyYourCrushException, UserCannotBeACrushOfHimselfException, InvalidFunctionDueEnemyException {
-        if (!activeSessions.containsKey(id)) {
-            throw new UnregisteredUserException();
-        }
+        UserAccount userAccount = getUserFromSession(id);
+        int crushId = directory.find(crush);
 
-        String userLogin = activeSessions.get(id).getLogin();
+        StripedLocks.Guard guard = userLocks.lock(userAccount.getId(), crushId);
+        try (guard) {
+            checkSession(id, userAccount);
 
-        if (!(usersMap.containsKey(crush))) {
-            throw new UnregisteredUserException();
-        }
+            String userLogin = userAccount.getLogin();
 
-        if (activeSessions.get(id).getCrushsList().contains(crush)) {
-            throw new UserIsAlreadyYourCrushException();
-        }
+            if (!(usersMap.containsKey(crush))) {
+                throw new UnregisteredUserException();
+            }
 
-        if (userLogin.equals(crush)) {
-            throw new UserCannotBeACrushOfHimselfException();
-        }
+            if (userAccount.getCrushsList().contains(crushId)) {
+                throw new UserIsAlreadyYourCrushException();
+            }
 
-        if (usersMap.get(crush).getEnemysList().contains(userLogin)) {
-            throw new InvalidFunctionDueEnemyException(usersMap.get(crush).getUserName());
-        }
+            if (userLogin.equals(crush)) {
+                throw new UserCannotBeACrushOfHimselfException();
+            }
 
-        activeSessions.get(id).setCrushsList(crush);
+            if (usersMap.get(crush).getEnemysList().contains(userAccount.getId())) {
+                throw new InvalidFunctionDueEnemyException(usersMap.get(crush).getUserName());
+            }
+
+            log(OperationLog.Type.ADD_CRUSH_WITH_NOTES, userLogin, crush);
+            applyAddCrush(userAccount, usersMap.get(crush), true);
+        }
     }
 
     /**
-     * Envia automaticamente uma mensagem para usurios que possuem uma paquera recproca com o usurio autenticado.
+     * Retorna uma representação em formato de string dos usuários marcados como "crush" pelo usuário autenticado.
      *
-     * <p>Este mtodo percorre a lista de crushes do usurio identificado por {@code id} e,
-     * para cada crush, verifica se h reciprocidade (ou seja, se o crush tambm marcou o usurio como crush).
-     * Caso haja reciprocidade,  enviada uma nota automtica com a mensagem "{nome}  seu paquera - Recado do Jackut.".
+     * <p>A consulta não altera o sistema: os recados de paquera mútua são enviados por
+     * {@link #addCrush(String, String)}, quando a reciprocidade surge, e a lista formatada fica em cache até a
+     * lista de crushes mudar.</p>
      *
-     * @param id o identificador da sesso do usurio autenticado
-     * @throws UserCannotSendNoteToHimselfException se o usurio tentar enviar uma nota para si mesmo
-     * @throws UnregisteredUserException            se o usurio no estiver com uma sesso ativa
-     * @throws InvalidFunctionDueEnemyException     se o envio da nota no for permitido por relao de inimizade
+     * @param id o identificador da sessão do usuário solicitando a lista de crushes
+     * @return uma {@code String} contendo os nomes dos usuários marcados como crush
+     * @throws UnregisteredUserException se o usuário não estiver com uma sessão ativa
      */
 
-    public void automaticMessageForCrush(String id) throws UserCannotSendNoteToHimselfException, UnregisteredUserException, InvalidFunctionDueEnemyException {
-        ArrayList<String> crushList = activeSessions.get(id).getCrushsList();
+    public String getCrushs(String id) throws UnregisteredUserException {
+        UserAccount userAccount = getUserFromSession(id);
 
-        for (String crush : crushList) {
-            if (usersMap.containsKey(crush)) {
-                if (usersMap.get(crush).getCrushsList().contains(activeSessions.get(id).getLogin())) {
-                    sendNote(id, crush, activeSessions.get(id).getUserName() + "  seu paquera - Recado do Jackut.");
-                }
-            }
+        StripedLocks.Guard guard = userLocks.lock(userAccount.getId());
+        try (guard) {
+            checkSession(id, userAccount);
+            return userAccount.getCrushsString();
         }
     }
 
     /**
-     * Retorna uma representao em formato de string dos usurios marcados como "crush" pelo usurio autenticado.
+     * Adiciona um usuário à lista de inimigos do usuário atualmente autenticado.
      *
-     * <p>Antes de obter a lista de crushes, o mtodo executa uma verificao automtica
-     * atravs de {@code automaticMessageForCrush(id)}, que pode lanar excees com base em restries de uso:
+     * <p>Este método realiza as seguintes validações antes de adicionar o inimigo:
      * <ul>
-     *   <li>Usurios no podem marcar a si mesmos como crush.</li>
-     *   <li>Usurios no registrados ou no autenticados no podem acessar essa funcionalidade.</li>
-     *   <li>Usurios no podem enviar notas ou marcar como crush algum que seja considerado inimigo.</li>
+     *   <li>Verifica se o usuário atual está com a sessão ativa.</li>
+     *   <li>Verifica se o inimigo especificado está registrado no sistema.</li>
+     *   <li>Verifica se o inimigo já está presente na lista de inimigos.</li>
+     *   <li>Verifica se o usuário não está tentando se adicionar como inimigo.</li>
      * </ul>
      *
-     * @param id o identificador da sesso do usurio solicitando a lista de crushes
-     * @return uma {@code String} contendo os nomes dos usurios marcados como crush
-     * @throws UserCannotSendNoteToHimselfException se o usurio tentar enviar uma nota para si mesmo durante o processo
-     * @throws UnregisteredUserException            se o usurio no estiver com uma sesso ativa
-     * @throws InvalidFunctionDueEnemyException     se a funcionalidade for invlida devido  relao de inimizade
+     * @param id        o identificador da sessão do usuário que deseja adicionar um inimigo
+     * @param enemyName o nome do usuário a ser adicionado como inimigo
+     * @throws UnregisteredUserException            se o usuário atual ou o inimigo não estiver registrado ou autenticado
+     * @throws UserIsAlreadyYourEnemyException      se o usuário especificado já for um inimigo
+     * @throws UserCannotBeAEnemyOfHimselfException se o usuário tentar se adicionar como inimigo
      */
 
-    public String getCrushs(String id) throws UserCannotSendNoteToHimselfException, UnregisteredUserException, InvalidFunctionDueEnemyException {
-        automaticMessageForCrush(id);
+    public void addEnemy(String id, String enemyName) throws UnregisteredUserException, UserIsAlreadyYourEnemyException, UserCannotBeAEnemyOfHimselfException {
+        UserAccount userAccount = getUserFromSession(id);
+        int enemyId = directory.find(enemyName);
+
+        StripedLocks.Guard guard = userLocks.lock(userAccount.getId(), enemyId);
+        try (guard) {
+            checkSession(id, userAccount);
+
+            if (!(usersMap.containsKey(enemyName))) {
+                throw new UnregisteredUserException();
+            }
+
+            if (userAccount.getEnemysList().contains(enemyId)) {
+                throw new UserIsAlreadyYourEnemyException();
+            }
+
+            String userLogin = userAccount.getLogin();
+            if (userLogin.equals(enemyName)) {
+                throw new UserCannotBeAEnemyOfHimselfException();
+            }
 
-        return activeSessions.get(id).getCrushsString();
+            log(OperationLog.Type.ADD_ENEMY, userLogin, enemyName);
+            applyAddEnemy(userAccount, usersMap.get(enemyName));
+        }
     }
 
     /**
-     * Adiciona um usurio  lista de inimigos do usurio atualmente autenticado.
+     * Remove um usuário do sistema com base no seu identificador de sessão.
      *
-     * <p>Este mtodo realiza as seguintes validaes antes de adicionar o inimigo:
+     * <p>Este método realiza as seguintes ações:
      * <ul>
-     *   <li>Verifica se o usurio atual est com a sesso ativa.</li>
-     *   <li>Verifica se o inimigo especificado est registrado no sistema.</li>
-     *   <li>Verifica se o inimigo j est presente na lista de inimigos.</li>
-     *   <li>Verifica se o usurio no est tentando se adicionar como inimigo.</li>
+     *   <li>Verifica se o usuário está registrado em uma sessão ativa. Caso contrário, lança uma exceção.</li>
+     *   <li>Retira as notas ainda não lidas que o usuário enviou, nas filas dos usuários para quem ele enviou notas.</li>
+     *   <li>Remove comunidades em que o usuário é o dono, e também remove o nome da comunidade das listas dos membros.</li>
+     *   <li>Remove o usuário das comunidades de que participa e das listas de amigos, pedidos de amizade, fãs,
+     *   paqueras e inimigos dos outros usuários.</li>
+     *   <li>Remove o usuário dos mapas de usuários registrados e de sessões ativas (inclusive das outras sessões
+     *   abertas por ele).</li>
      * </ul>
      *
-     * @param id        o identificador da sesso do usurio que deseja adicionar um inimigo
-     * @param enemyName o nome do usurio a ser adicionado como inimigo
-     * @throws UnregisteredUserException            se o usurio atual ou o inimigo no estiver registrado ou autenticado
-     * @throws UserIsAlreadyYourEnemyException      se o usurio especificado j for um inimigo
-     * @throws UserCannotBeAEnemyOfHimselfException se o usurio tentar se adicionar como inimigo
+     * <p>Como altera contas e comunidades de muitos usuários, a remoção adquire todas as travas do sistema.</p>
+     *
+     * @param id o identificador da sessão do usuário a ser removido
+     * @throws UnregisteredUserException se o usuário não estiver registrado em uma sessão ativa
      */
 
-    public void addEnemy(String id, String enemyName) throws UnregisteredUserException, UserIsAlreadyYourEnemyException, UserCannotBeAEnemyOfHimselfException {
-        if (!activeSessions.containsKey(id)) {
-            throw new UnregisteredUserException();
+    public void removeUser(String id) throws UnregisteredUserException {
+        StripedLocks.Guard communityGuard = communityLocks.lockAll();
+        StripedLocks.Guard guard = userLocks.lockAll();
+        try (communityGuard; guard) {
+            UserAccount userToBeDeleted = getUserFromSession(id);
+
+            log(OperationLog.Type.REMOVE_USER, userToBeDeleted.getLogin());
+            applyRemoveUser(userToBeDeleted);
+            activeSessions.closeAll(userToBeDeleted);
         }
+    }
 
-        if (!(usersMap.containsKey(enemyName))) {
-            throw new UnregisteredUserException();
+    /**
+     * Aplica em memória a criação de um usuário.
+     */
+
+    private void applyCreateUser(String login, String password, String userName) {
+        UserAccount newUser = new UserAccount(login, password, userName, directory);
+
+        setUsersMap(login, newUser);
+        dirtyUsers.add(login);
+    }
+
+    /**
+     * Aplica em memória a alteração de um atributo do perfil.
+     */
+
+    private void applyEditProfile(UserAccount user, String attribute, String value) {
+        user.setProfileAttribute(attribute, value);
+        dirtyUsers.add(user.getLogin());
+    }
+
+    /**
+     * Aplica em memória um pedido de amizade, aceitando-o se o outro usuário já tiver enviado um pedido.
+     */
+
+    private void applyAddFriend(UserAccount userAccount, UserAccount friendUserAccount) {
+        if (userAccount.getFriendsRequestsReceived().contains(friendUserAccount.getId())) {
+            userAccount.acceptRequest(friendUserAccount);
+        } else {
+            userAccount.sendRequest(friendUserAccount);
         }
+        dirtyUsers.add(userAccount.getLogin());
+        dirtyUsers.add(friendUserAccount.getLogin());
+    }
+
+    /**
+     * Aplica em memória o envio de um recado.
+     */
+
+    private void applySendNote(UserAccount sender, UserAccount receiver, String note) {
+        Note newNote = new Note(sender.getLogin(), receiver.getLogin(), note);
 
-        if (activeSessions.get(id).getEnemysList().contains(enemyName)) {
-            throw new UserIsAlreadyYourEnemyException();
+        sender.setPeopleISentNotesTo(receiver.getId());
+
+        receiver.setNotesQueue(newNote);
+        dirtyUsers.add(sender.getLogin());
+        dirtyUsers.add(receiver.getLogin());
+    }
+
+    /**
+     * Aplica em memória a leitura (remoção) do próximo recado do usuário.
+     */
+
+    private Note applyReadNote(UserAccount userAccount) {
+        dirtyUsers.add(userAccount.getLogin());
+        return userAccount.pollNote();
+    }
+
+    /**
+     * Aplica em memória a criação de uma comunidade.
+     */
+
+    private void applyCreateCommunity(UserAccount owner, String name, String description) {
+        owner.setCommunityList(name);
+
+        Community community = new Community(name, description, owner);
+        communityMap.put(community.getName(), community);
+        owner.getMessageCursors().put(community.getName(), 0L);
+        dirtyUsers.add(owner.getLogin());
+        dirtyCommunities.add(name);
+    }
+
+    /**
+     * Aplica em memória a entrada de um usuário em uma comunidade.
+     */
+
+    private void applyAddCommunity(UserAccount userAccount, Community community) {
+        community.setMembersList(userAccount);
+        userAccount.setCommunityList(community.getName());
+        userAccount.getMessageCursors().put(community.getName(), community.getMessageLog().size());
+        dirtyUsers.add(userAccount.getLogin());
+        dirtyCommunities.add(community.getName());
+    }
+
+    /**
+     * Aplica em memória o envio de uma mensagem, acrescentando-a ao log da comunidade.
+     */
+
+    private void applySendMessage(Community community, String message, long lsn) {
+        community.getMessageLog().append(new Message(message, lsn));
+        dirtyCommunities.add(community.getName());
+    }
+
+    /**
+     * Aplica em memória a leitura da próxima mensagem do usuário, avançando o cursor da comunidade de onde
+     * ela vem (ou removendo-a da fila de mensagens).
+     *
+     * @param source A comunidade de onde a mensagem é lida, ou {@link #MESSAGES_QUEUE}.
+     */
+
+    private Message applyReadMessage(UserAccount userAccount, Community source) {
+        if (source == null) {
+            return null;
         }
 
-        String userLogin = activeSessions.get(id).getLogin();
-        if (userLogin.equals(enemyName)) {
-            throw new UserCannotBeAEnemyOfHimselfException();
+        dirtyUsers.add(userAccount.getLogin());
+        if (source == MESSAGES_QUEUE) {
+            return userAccount.getMessagesQueue().poll();
         }
 
-        activeSessions.get(id).setEnemysList(enemyName);
+        long cursor = userAccount.getMessageCursors().get(source.getName());
+        userAccount.getMessageCursors().put(source.getName(), cursor + 1);
+        return source.getMessageLog().get(cursor);
     }
 
     /**
-     * Remove um usurio do sistema com base no seu identificador de sesso.
+     * Retorna a comunidade cuja próxima mensagem não lida pelo usuário foi enviada primeiro,
+     * {@link #MESSAGES_QUEUE} se ela estiver na fila de mensagens do usuário, ou {@code null} se não
+     * houver mensagens não lidas.
+     */
+
+    private Community nextMessageSource(UserAccount userAccount) {
+        Message queued = userAccount.getMessagesQueue().peek();
+        Community source = queued != null ? MESSAGES_QUEUE : null;
+        long oldest = queued != null ? queued.getSequence() : Long.MAX_VALUE;
+
+        for (Map.Entry<String, Long> cursor : userAccount.getMessageCursors().entrySet()) {
+            Community community = communityMap.get(cursor.getKey());
+            if (community != null && cursor.getValue() < community.getMessageLog().size()) {
+                long sequence = community.getMessageLog().get(cursor.getValue()).getSequence();
+                if (sequence < oldest) {
+                    oldest = sequence;
+                    source = community;
+                }
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Copia para a fila de mensagens do membro as mensagens que ele ainda não leu de uma comunidade que
+     * deixará de existir, mantendo a fila na ordem de envio.
      *
-     * <p>Este mtodo realiza as seguintes aes:
-     * <ul>
-     *   <li>Verifica se o usurio est registrado em uma sesso ativa. Caso contrrio, lana uma exceo.</li>
-     *   <li>Remove a primeira nota na fila de anotaes dos usurios para quem o usurio atual enviou notas.</li>
-     *   <li>Remove comunidades em que o usurio  o dono, e tambm remove o nome da comunidade das listas dos membros.</li>
-     *   <li>Remove o usurio dos mapas de usurios registrados e de sesses ativas.</li>
-     * </ul>
+     * <p>Se todas as mensagens da fila são mais antigas que as do log, os segmentos despejados do log são
+     * encadeados na fila sem serem copiados ({@link MessageLog#transferTo}). Caso contrário, as mensagens das
+     * duas origens são intercaladas e a fila é reconstruída; os segmentos que ela deixa de usar são
+     * liberados na próxima realocação dos arquivos de despejo.</p>
+     */
+
+    private void keepUnreadMessages(UserAccount member, Community community) {
+        Long cursor = member.getMessageCursors().remove(community.getName());
+        MessageLog log = community.getMessageLog();
+        if (cursor == null || cursor >= log.size()) {
+            return;
+        }
+
+        Message last = member.getMessagesQueue().peekLast();
+        if (last == null || last.getSequence() < log.get(cursor).getSequence()) {
+            log.transferTo(cursor, member.getMessagesQueue());
+            return;
+        }
+
+        ArrayList<Message> unread = new ArrayList<>(member.getMessagesQueue());
+        for (long i = cursor; i < log.size(); i++) {
+            unread.add(log.get(i));
+        }
+        unread.sort(Comparator.comparingLong(Message::getSequence));
+
+        member.getMessagesQueue().clear();
+        member.getMessagesQueue().addAll(unread);
+    }
+
+    /**
+     * Aplica em memória a relação de fã entre dois usuários.
+     */
+
+    private void applyAddIdol(UserAccount fan, UserAccount idol) {
+        idol.setFansList(fan.getId());
+        fan.setIdolsList(idol.getId());
+        dirtyUsers.add(idol.getLogin());
+        dirtyUsers.add(fan.getLogin());
+    }
+
+    /**
+     * Aplica em memória a adição de uma paquera. Se o crush já tinha marcado o usuário (o que é verificado pelo
+     * índice inverso {@link UserAccount#getCrushedByList()}), cada um recebe o recado automático com o nome do
+     * outro, exceto quem tiver o remetente como inimigo. Os recados são derivados do próprio registro
+     * {@code ADD_CRUSH_WITH_NOTES}, de modo que a reaplicação do log os entrega de novo exatamente uma vez.
+     * Os registros {@code ADD_CRUSH} de versões anteriores são reaplicados sem recados, porque os recados
+     * que eles geraram estão no log como registros {@code SEND_NOTE}.
      *
-     * @param id o identificador da sesso do usurio a ser removido
-     * @throws UnregisteredUserException se o usurio no estiver registrado em uma sesso ativa
+     * @param sendNotes Se os recados de paquera mútua devem ser enviados.
      */
 
-    public void removeUser(String id) throws UnregisteredUserException {
-        if (!activeSessions.containsKey(id)) {
-            throw new UnregisteredUserException();
+    private void applyAddCrush(UserAccount userAccount, UserAccount crush, boolean sendNotes) {
+        userAccount.setCrushsList(crush.getId());
+        crush.setCrushedByList(userAccount.getId());
+        dirtyUsers.add(userAccount.getLogin());
+        dirtyUsers.add(crush.getLogin());
+
+        if (sendNotes && userAccount.getCrushedByList().contains(crush.getId())) {
+            sendCrushNote(crush, userAccount);
+            sendCrushNote(userAccount, crush);
         }
+    }
 
-        UserAccount userToBeDeleted = activeSessions.get(id);
+    /**
+     * Entrega a {@code receiver} o recado automático de paquera mútua com o nome de {@code sender}.
+     */
 
-        for (String userName : userToBeDeleted.getPeopleISentNotesTo()) {
-            usersMap.get(userName).getNotesQueue().poll();
+    private void sendCrushNote(UserAccount sender, UserAccount receiver) {
+        if (!receiver.getEnemysList().contains(sender.getId())) {
+            applySendNote(sender, receiver, sender.getUserName() + " é seu paquera - Recado do Jackut.");
         }
+    }
 
-        for (Community community : communityMap.values()) {
-            if (community.getOwner().getLogin().equals(userToBeDeleted.getLogin())) {
-                communityMap.remove(community.getName());
-                for (int i = 0; i < community.getMembersList().size(); i++) {
-                    community.getMembersList().get(i).getCommunityList().remove(community.getName());
+    /**
+     * Aplica em memória a adição de um inimigo.
+     */
+
+    private void applyAddEnemy(UserAccount userAccount, UserAccount enemy) {
+        userAccount.setEnemysList(enemy.getId());
+        enemy.setEnemyOfList(userAccount.getId());
+        dirtyUsers.add(userAccount.getLogin());
+        dirtyUsers.add(enemy.getLogin());
+    }
+
+    /**
+     * Aplica em memória a remoção de um usuário, dos recados que ele enviou, das comunidades que ele criou
+     * e de todas as relações em que ele aparece nas contas de outros usuários.
+     *
+     * <p>As comunidades e os vizinhos são encontrados a partir das listas da própria conta e dos seus
+     * índices inversos, de modo que o custo é proporcional à quantidade de relações do usuário, e não à
+     * quantidade de usuários ou comunidades do sistema.</p>
+     */
+
+    private void applyRemoveUser(UserAccount userToBeDeleted) {
+        for (int receiverId : userToBeDeleted.getPeopleISentNotesTo().toArray()) {
+            UserAccount receiver = usersMap.get(directory.loginOf(receiverId));
+            if (receiver != null && receiver.retractNotesFrom(userToBeDeleted.getId())) {
+                dirtyUsers.add(receiver.getLogin());
+            }
+        }
+
+        for (String communityName : userToBeDeleted.getCommunityList()) {
+            Community community = communityMap.get(communityName);
+            if (community == null) {
+                continue;
+            }
+
+            dirtyCommunities.add(communityName);
+            if (!community.getOwner().equals(userToBeDeleted.getLogin())) {
+                community.removeMember(userToBeDeleted.getLogin());
+                continue;
+            }
+
+            communityMap.remove(communityName);
+            for (String member : community.getMembersList()) {
+                UserAccount memberAccount = usersMap.get(member);
+                if (memberAccount != null && memberAccount != userToBeDeleted) {
+                    keepUnreadMessages(memberAccount, community);
+                    memberAccount.removeCommunity(communityName);
+                    dirtyUsers.add(member);
                 }
             }
         }
 
+        unlink(userToBeDeleted, userToBeDeleted.getFriendList(), UserAccount::getFriendList);
+        unlink(userToBeDeleted, userToBeDeleted.getFriendsRequestsSent(), UserAccount::getFriendsRequestsReceived);
+        unlink(userToBeDeleted, userToBeDeleted.getFriendsRequestsReceived(), UserAccount::getFriendsRequestsSent);
+        unlink(userToBeDeleted, userToBeDeleted.getFansList(), UserAccount::getIdolsList);
+        unlink(userToBeDeleted, userToBeDeleted.getIdolsList(), UserAccount::getFansList);
+        unlink(userToBeDeleted, userToBeDeleted.getCrushsList(), UserAccount::getCrushedByList);
+        unlink(userToBeDeleted, userToBeDeleted.getCrushedByList(), UserAccount::getCrushsList);
+        unlink(userToBeDeleted, userToBeDeleted.getEnemysList(), UserAccount::getEnemyOfList);
+        unlink(userToBeDeleted, userToBeDeleted.getEnemyOfList(), UserAccount::getEnemysList);
+
         usersMap.remove(userToBeDeleted.getLogin());
-        activeSessions.remove(id);
+        dirtyUsers.add(userToBeDeleted.getLogin());
     }
 
     /**
-     * Salva os dados dos usurios no sistema.
+     * Remove o usuário do conjunto {@code reverse} de cada um dos seus vizinhos.
+     *
+     * @param removed   O usuário sendo removido.
+     * @param neighbors Os identificadores dos vizinhos, lidos da conta removida.
+     * @param reverse   O conjunto da conta do vizinho que referencia o usuário removido.
+     */
+
+    private void unlink(UserAccount removed, OrderedIntSet neighbors, Function<UserAccount, OrderedIntSet> reverse) {
+        for (int neighborId : neighbors.toArray()) {
+            UserAccount neighbor = usersMap.get(directory.loginOf(neighborId));
+            if (neighbor != null && neighbor != removed && reverse.apply(neighbor).remove(removed.getId())) {
+                neighbor.publish();
+                dirtyUsers.add(neighbor.getLogin());
+            }
+        }
+    }
+
+    /**
+     * Reaplica em memória uma operação lida do log.
+     *
+     * @param entry O registro lido do log.
+     */
+
+    private void applyOperation(OperationLog.Entry entry) {
+        switch (entry.getType()) {
+            case CLEAR:
+                clearMemory();
+                break;
+            case CREATE_USER:
+                applyCreateUser(entry.getArg(0), entry.getArg(1), entry.getArg(2));
+                break;
+            case EDIT_PROFILE:
+                applyEditProfile(usersMap.get(entry.getArg(0)), entry.getArg(1), entry.getArg(2));
+                break;
+            case ADD_FRIEND:
+                applyAddFriend(usersMap.get(entry.getArg(0)), usersMap.get(entry.getArg(1)));
+                break;
+            case SEND_NOTE:
+                applySendNote(usersMap.get(entry.getArg(0)), usersMap.get(entry.getArg(1)), entry.getArg(2));
+                break;
+            case READ_NOTE:
+                applyReadNote(usersMap.get(entry.getArg(0)));
+                break;
+            case CREATE_COMMUNITY:
+                applyCreateCommunity(usersMap.get(entry.getArg(0)), entry.getArg(1), entry.getArg(2));
+                break;
+            case ADD_COMMUNITY:
+                applyAddCommunity(usersMap.get(entry.getArg(0)), communityMap.get(entry.getArg(1)));
+                break;
+            case SEND_MESSAGE:
+                Community target = communityMap.get(entry.getArg(1));
+                for (int i = 3; i < entry.getArgCount(); i++) {
+                    skipMessage(usersMap.get(entry.getArg(i)), target, target.getMessageLog().size());
+                }
+                applySendMessage(target, entry.getArg(2), entry.getLsn());
+                break;
+            case READ_MESSAGE:
+                UserAccount reader = usersMap.get(entry.getArg(0));
+                if (entry.getArgCount() < 2) {
+                    applyReadMessage(reader, nextMessageSource(reader));
+                } else {
+                    applyReadMessage(reader, entry.getArg(1) == null ? MESSAGES_QUEUE : communityMap.get(entry.getArg(1)));
+                }
+                break;
+            case ADD_IDOL:
+                applyAddIdol(usersMap.get(entry.getArg(0)), usersMap.get(entry.getArg(1)));
+                break;
+            case ADD_CRUSH:
+                applyAddCrush(usersMap.get(entry.getArg(0)), usersMap.get(entry.getArg(1)), false);
+                break;
+            case ADD_CRUSH_WITH_NOTES:
+                applyAddCrush(usersMap.get(entry.getArg(0)), usersMap.get(entry.getArg(1)), true);
+                break;
+            case ADD_ENEMY:
+                applyAddEnemy(usersMap.get(entry.getArg(0)), usersMap.get(entry.getArg(1)));
+                break;
+            case REMOVE_USER:
+                applyRemoveUser(usersMap.get(entry.getArg(0)));
+                break;
+        }
+    }
+
+    /**
+     * Faz um checkpoint incremental: grava em um {@link Delta} apenas as contas e comunidades alteradas
+     * desde o checkpoint anterior (as removidas são gravadas como tombstones) e descarta o log, já que
+     * todas as operações registradas passam a estar contidas nos arquivos. O custo é proporcional às
+     * alterações, e não à quantidade de usuários.
+     *
+     * <p>Quando há deltas demais pendentes, eles são compactados no snapshot em segundo plano. O checkpoint
+     * adquire todas as travas do sistema, de modo que o delta não contém operações aplicadas pela metade.</p>
+     *
+     * <p>O checkpoint que agenda a compactação também libera o espaço dos arquivos de despejo
+     * ({@link #relocateSpilledSegments()}); as gerações antigas só são apagadas depois que o delta com as novas
+     * referências é gravado.</p>
      */
 
     public void saveData() {
+        StripedLocks.Guard communityGuard = communityLocks.lockAll();
+        StripedLocks.Guard guard = userLocks.lockAll();
+        try (communityGuard; guard) {
+            SpillFile.Relocation relocation = pendingDeltas + 1 >= MAX_PENDING_DELTAS ? relocateSpilledSegments() : null;
+            if (dirtyUsers.isEmpty() && dirtyCommunities.isEmpty() && !resetSinceCheckpoint) {
+                finishRelocation(relocation);
+                return;
+            }
+
+            ArrayList<UserAccount> users = new ArrayList<>();
+            ArrayList<String> removedUsers = new ArrayList<>();
+            for (String login : dirtyUsers) {
+                UserAccount userAccount = usersMap.get(login);
+                if (userAccount != null) {
+                    users.add(userAccount);
+                } else {
+                    removedUsers.add(login);
+                }
+            }
+
+            ArrayList<Community> communities = new ArrayList<>();
+            ArrayList<String> removedCommunities = new ArrayList<>();
+            for (String name : dirtyCommunities) {
+                Community community = communityMap.get(name);
+                if (community != null) {
+                    communities.add(community);
+                } else {
+                    removedCommunities.add(name);
+                }
+            }
+
+            Delta delta = new Delta(deltaSequence + 1, operationLog.getLastLsn(), resetSinceCheckpoint,
+                    users, removedUsers, communities, removedCommunities);
+            if (!Serealization.serealizeDelta(delta)) {
+                return;
+            }
+
+            operationLog.reset();
+            deltaSequence = delta.getSequence();
+            dirtyUsers.clear();
+            dirtyCommunities.clear();
+            resetSinceCheckpoint = false;
+            finishRelocation(relocation);
+
+            if (++pendingDeltas >= MAX_PENDING_DELTAS) {
+                Serealization.compactSnapshot("snapshot");
+                pendingDeltas = 0;
+            }
+        }
+    }
+
+    /**
+     * Descarta dos logs das comunidades os segmentos que todos os membros já leram e copia os segmentos ainda
+     * referenciados dos arquivos de despejo com mais espaço morto do que vivo para uma geração nova
+     * ({@link SpillFile.Relocation}). As contas e comunidades cujas referências mudaram são marcadas como
+     * alteradas, para que o próximo delta as grave. Deve ser chamado com todas as travas adquiridas.
+     *
+     * @return A realocação, a ser concluída por {@link #finishRelocation} depois que o delta for gravado.
+     */
 
-        Serealization.serealizeObject(usersMap, "usersAccount");
-        Serealization.serealizeObject(communityMap, "communities");
+    private SpillFile.Relocation relocateSpilledSegments() {
+        List<UserAccount> spilledUsers = usersMap.loadSpilled();
+        ArrayList<Community> spilledCommunities = new ArrayList<>();
+        for (Community community : communityMap.values()) {
+            if (community.getMessageLog().hasSpilledSegments()) {
+                if (community.getMessageLog().trimTo(lowestMessageCursor(community))) {
+                    dirtyCommunities.add(community.getName());
+                }
+                spilledCommunities.add(community);
+            }
+        }
+
+        SpillFile.Relocation relocation = new SpillFile.Relocation();
+        try {
+            for (UserAccount userAccount : spilledUsers) {
+                userAccount.forEachSpilledSegment(relocation::mark);
+            }
+            for (Community community : spilledCommunities) {
+                community.getMessageLog().forEachSegment(relocation::mark);
+            }
+            relocation.start();
+        } catch (IOException | UncheckedIOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        for (UserAccount userAccount : spilledUsers) {
+            if (userAccount.relocateSpilledSegments(relocation::move)) {
+                dirtyUsers.add(userAccount.getLogin());
+            }
+        }
+        for (Community community : spilledCommunities) {
+            if (community.getMessageLog().relocate(relocation::move)) {
+                dirtyCommunities.add(community.getName());
+            }
+        }
+        return relocation;
     }
 
     /**
-     * Remove todos os dados do sistema, incluindo usurios, amigos e recados.
+     * Retorna a menor posição do log da comunidade que algum membro ainda não leu. Os membros que não estão em
+     * memória são lidos do snapshot sem serem carregados; a busca para assim que nenhum segmento pode mais
+     * ser descartado.
+     */
+
+    private long lowestMessageCursor(Community community) {
+        MessageLog log = community.getMessageLog();
+        long lowest = log.size();
+        for (String member : community.getMembersList()) {
+            UserAccount memberAccount = usersMap.peek(member);
+            if (memberAccount == null) {
+                continue;
+            }
+
+            Long cursor = memberAccount.getMessageCursors().get(community.getName());
+            lowest = Math.min(lowest, cursor == null ? log.getFirst() : cursor);
+            if (lowest < log.getFirst() + Mailbox.SEGMENT_CAPACITY) {
+                break;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Apaga as gerações dos arquivos de despejo que a realocação deixou sem referências. Só pode ser chamado
+     * quando os dados gravados no disco já correspondem aos dados em memória.
+     */
+
+    private void finishRelocation(SpillFile.Relocation relocation) {
+        if (relocation == null) {
+            return;
+        }
+
+        try {
+            relocation.finish();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Remove todos os dados do sistema, incluindo usuários, amigos e recados.
+     *
+     * <p>Em seguida grava um checkpoint, que descarta os dados anteriores no disco e esvazia o log; a partir
+     * daí nenhum snapshot, delta ou registro do log referencia os recados e mensagens despejados em disco, e
+     * os arquivos de despejo ({@link SpillFile}) são apagados.</p>
      */
 
     public void clearData() {
+        awaitBroadcasts();
+
+        StripedLocks.Guard communityGuard = communityLocks.lockAll();
+        StripedLocks.Guard guard = userLocks.lockAll();
+        try (communityGuard; guard) {
+            log(OperationLog.Type.CLEAR);
+            clearMemory();
+            activeSessions.closeAll();
+            saveData();
+
+            if (!resetSinceCheckpoint) {
+                try {
+                    SpillFile.truncateAll();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove os dados mantidos em memória, sem registrar a operação no log. O próximo checkpoint
+     * grava um delta que descarta todos os dados anteriores.
+     */
+
+    private void clearMemory() {
         usersMap.clear();
         communityMap.clear();
+        directory = new UserDirectory();
+        dirtyUsers.clear();
+        dirtyCommunities.clear();
+        resetSinceCheckpoint = true;
     }
 
     /**
-     * L os dados dos usurios do armazenamento persistente.
+     * Lê os dados dos usuários do armazenamento persistente: abre o último snapshot, aplica os deltas
+     * gravados depois dele e reaplica as operações registradas no log depois do último delta. As contas
+     * do snapshot só são decodificadas quando forem usadas pela primeira vez.
      */
 
     public void readData() {
-        this.usersMap = Serealization.deserializeObject("usersAccount");
-        this.communityMap = Serealization.deserializeObject("communities");
+        StripedLocks.Guard communityGuard = communityLocks.lockAll();
+        StripedLocks.Guard guard = userLocks.lockAll();
+        try (communityGuard; guard) {
+            ArrayList<Delta> deltas = new ArrayList<>();
+            ShardedSnapshot snapshot;
+            try {
+                directory = new UserDirectory();
+                snapshot = Serealization.openSnapshot("snapshot", deltas, directory);
+            } catch (CorruptedFileException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+
+            this.usersMap = new LazyUsersMap(snapshot);
+            this.communityMap = new ConcurrentHashMap<>(snapshot.getCommunityMap());
+            this.deltaSequence = snapshot.getDeltaSequence();
+            long lsn = snapshot.getLsn();
+
+            for (Delta delta : deltas) {
+                delta.applyTo(usersMap, communityMap);
+                deltaSequence = delta.getSequence();
+                lsn = delta.getLsn();
+            }
+
+            dirtyUsers.clear();
+            dirtyCommunities.clear();
+            resetSinceCheckpoint = false;
+            pendingDeltas = deltas.size();
+
+            operationLog.replay(lsn, this::applyOperation);
+        }
     }
 
     /**
-     * Fecha o sistema, salvando, limpando e recarregando os dados.
+     * Fecha o sistema, gravando um checkpoint incremental. Os dados em memória continuam válidos
+     * e não precisam ser recarregados.
      */
 
     public void closeSystem() {
+        awaitBroadcasts();
         saveData();
-        clearData();
-        readData();
+    }
+
+    /**
+     * Ativa ou desativa a entrega assíncrona das mensagens enviadas às comunidades.
+     *
+     * <p>Com a entrega assíncrona, {@link #sendMessage} apenas valida a sessão e a comunidade, coloca a
+     * mensagem em uma fila e retorna. Um conjunto de {@code workers} threads grava as mensagens no log e nas
+     * comunidades em lotes de até {@value #BROADCAST_BATCH_SIZE}, cada lote com uma única espera pelo disco
+     * (ver {@link #runBatch(Supplier)}). As mensagens de uma mesma comunidade são sempre entregues pelo mesmo
+     * trabalhador, na ordem em que foram enviadas. Quando a fila de um trabalhador tem {@code capacity}
+     * mensagens pendentes, quem envia espera até abrir espaço.</p>
+     *
+     * <p>Cada mensagem guarda a cópia dos membros da comunidade no momento do envio. Quem entra na comunidade
+     * depois do envio e antes da entrega não recebe a mensagem, como na entrega síncrona; esses membros são
+     * gravados no registro {@link OperationLog.Type#SEND_MESSAGE} para que a recarga do log dê o mesmo
+     * resultado.</p>
+     *
+     * <p>Antes de ler mensagens ({@link #readMessage}), limpar o sistema ou gravar o checkpoint de
+     * encerramento, o sistema espera a entrega das mensagens já enviadas, de modo que quem envia e depois lê
+     * vê as suas mensagens na mesma ordem da entrega síncrona. Deve ser chamado sem envios em andamento; as
+     * mensagens pendentes da configuração anterior são entregues antes da troca.</p>
+     *
+     * @param workers  A quantidade de trabalhadores, ou 0 para entregar na thread de quem envia.
+     * @param capacity A quantidade máxima de mensagens pendentes por trabalhador.
+     */
+
+    public synchronized void setAsyncBroadcast(int workers, int capacity) {
+        BroadcastQueue<PendingMessage> previous = broadcasts;
+        broadcasts = workers > 0 ? new BroadcastQueue<>(workers, capacity, BROADCAST_BATCH_SIZE, this::deliverMessages) : null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Espera a entrega de todas as mensagens enviadas antes da chamada. Não faz nada se a entrega for síncrona.
+     */
+
+    public void awaitBroadcasts() {
+        BroadcastQueue<PendingMessage> queue = broadcasts;
+        if (queue != null) {
+            queue.await();
+        }
+    }
+
+    /**
+     * @return As métricas da entrega assíncrona (mensagens pendentes e atraso de entrega), ou {@code null} se
+     * a entrega for síncrona.
+     */
+
+    public BroadcastStats getBroadcastStats() {
+        BroadcastQueue<PendingMessage> queue = broadcasts;
+        return queue == null ? null : queue.getStats();
+    }
+
+    /**
+     * Entrega um lote de mensagens da fila assíncrona. Mensagens para comunidades removidas depois do envio
+     * são descartadas.
+     */
+
+    private void deliverMessages(ArrayList<PendingMessage> messages) {
+        runBatch(() -> {
+            for (PendingMessage pending : messages) {
+                StripedLocks.Guard communityGuard = communityLocks.lock(directory.getCommunityNames().find(pending.community));
+                try (communityGuard) {
+                    Community community = findCommunity(pending.community);
+                    if (community != null) {
+                        List<String> lateMembers = lateMembers(community, pending.members);
+                        ArrayList<String> args = new ArrayList<>(List.of(pending.sender, pending.community, pending.message));
+                        args.addAll(lateMembers);
+                        long lsn = log(OperationLog.Type.SEND_MESSAGE, args.toArray(new String[0]));
+
+                        long index = community.getMessageLog().size();
+                        for (String login : lateMembers) {
+                            UserAccount member = usersMap.get(login);
+                            StripedLocks.Guard guard = userLocks.lock(member.getId());
+                            try (guard) {
+                                skipMessage(member, community, index);
+                            }
+                        }
+                        applySendMessage(community, pending.message, lsn);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Retorna os logins dos membros atuais da comunidade que não estavam em {@code members}, a cópia dos
+     * membros tirada quando a mensagem foi enviada. Deve ser chamado com a trava da comunidade adquirida.
+     */
+
+    private List<String> lateMembers(Community community, IntSetView members) {
+        if (community.getMembersView() == members) {
+            return List.of();
+        }
+
+        ArrayList<String> late = new ArrayList<>();
+        for (String login : community.getMembersList()) {
+            if (!members.contains(directory.find(login))) {
+                late.add(login);
+            }
+        }
+        return late;
+    }
+
+    /**
+     * Avança o cursor do membro para além da mensagem na posição {@code index} do log da comunidade, que
+     * ainda vai ser acrescentada, se ela for a próxima que ele leria. Usado para os membros que entraram na
+     * comunidade depois de a mensagem ser enviada, para que eles não a recebam.
+     */
+
+    private void skipMessage(UserAccount member, Community community, long index) {
+        Map<String, Long> cursors = member.getMessageCursors();
+        Long cursor = cursors.get(community.getName());
+        if (cursor != null && cursor == index) {
+            cursors.put(community.getName(), index + 1);
+            dirtyUsers.add(member.getLogin());
+        }
+    }
+
+    /**
+     * Mensagem enviada a uma comunidade que aguarda na fila de entrega assíncrona, com a cópia dos membros
+     * da comunidade no momento do envio.
+     */
+
+    private static final class PendingMessage {
+        private final String sender;
+        private final String community;
+        private final String message;
+        private final IntSetView members;
+
+        private PendingMessage(String sender, String community, String message, IntSetView members) {
+            this.sender = sender;
+            this.community = community;
+            this.message = message;
+            this.members = members;
+        }
+    }
+
+    /**
+     * Estado de um lote em execução.
+     */
+
+    private static final class Batch {
+        private final HashMap<String, UserAccount> sessions = new HashMap<>();
+        private long closings;
+        private long lastLsn;
+        private int unsynced;
+
+        private Batch(long closings) {
+            this.closings = closings;
+        }
     }
 }
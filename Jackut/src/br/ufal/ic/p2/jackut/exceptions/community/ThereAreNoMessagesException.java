@@ -1,14 +1,16 @@
 package br.ufal.ic.p2.jackut.exceptions.community;
 
 /**
- * Exceo personalizada que indica que no h mensagens disponveis.
- * Esta classe estende {@link Exception} e  lanada quando uma operao
- * relacionada  obteno de mensagens no encontra nenhuma mensagem.
+ * Exceção personalizada que indica que não há mensagens disponíveis.
+ * Esta classe estende {@link Exception} e é lançada quando uma operação
+ * relacionada à obtenção de mensagens não encontra nenhuma mensagem.
  */
 
 public class ThereAreNoMessagesException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     public ThereAreNoMessagesException() {
-        super("No h mensagens.");
+        super("Não há mensagens.");
     }
 }
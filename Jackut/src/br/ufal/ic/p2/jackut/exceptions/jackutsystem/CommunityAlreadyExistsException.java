@@ -1,16 +1,18 @@
 package br.ufal.ic.p2.jackut.exceptions.jackutsystem;
 
 /**
- * Exceo personalizada que indica que uma comunidade com o mesmo nome
- * j existe. Esta classe estende {@link Exception} e  lanada quando
- * ocorre uma tentativa de criao ou cadastro de uma comunidade com um
- * nome que j foi utilizado.
+ * Exceção personalizada que indica que uma comunidade com o mesmo nome
+ * já existe. Esta classe estende {@link Exception} e é lançada quando
+ * ocorre uma tentativa de criação ou cadastro de uma comunidade com um
+ * nome que já foi utilizado.
  */
 
 public class CommunityAlreadyExistsException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
 
     public CommunityAlreadyExistsException() {
-        super("Comunidade com esse nome j existe.");
+        super("Comunidade com esse nome já existe.");
     }
 }
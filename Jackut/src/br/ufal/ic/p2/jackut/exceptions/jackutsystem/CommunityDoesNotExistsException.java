@@ -1,14 +1,16 @@
 package br.ufal.ic.p2.jackut.exceptions.jackutsystem;
 
 /**
- * Exceo personalizada que indica que a comunidade solicitada no existe.
- * Esta classe estende {@link Exception} e  lanada quando h uma tentativa
- * de acessar ou operar em uma comunidade que no foi encontrada.
+ * Exceção personalizada que indica que a comunidade solicitada não existe.
+ * Esta classe estende {@link Exception} e é lançada quando há uma tentativa
+ * de acessar ou operar em uma comunidade que não foi encontrada.
  */
 
 public class CommunityDoesNotExistsException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     public CommunityDoesNotExistsException() {
-        super("Comunidade no existe.");
+        super("Comunidade não existe.");
     }
 }
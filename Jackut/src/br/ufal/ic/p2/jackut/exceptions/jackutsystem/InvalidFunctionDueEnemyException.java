@@ -1,21 +1,23 @@
 package br.ufal.ic.p2.jackut.exceptions.jackutsystem;
 
 /**
- * Exceo personalizada que indica que uma funo no pode ser executada
- * devido  presena de um inimigo. Esta classe estende {@link Exception} e
- *  lanada quando o usurio tenta realizar uma ao que  invlida devido
- *  presena de um inimigo especfico.
+ * Exceção personalizada que indica que uma função não pode ser executada
+ * devido à presença de um inimigo. Esta classe estende {@link Exception} e
+ * é lançada quando o usuário tenta realizar uma ação que é inválida devido
+ * à presença de um inimigo específico.
  */
 
 public class InvalidFunctionDueEnemyException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     /**
-     * Construtor que cria uma nova instncia da exceo com uma mensagem personalizada.
-     * A mensagem inclui o nome do inimigo, indicando que a funo  invlida devido a esse inimigo.
+     * Construtor que cria uma nova instância da exceção com uma mensagem personalizada.
+     * A mensagem inclui o nome do inimigo, indicando que a função é inválida devido a esse inimigo.
      *
-     * @param enemyName O nome do inimigo que torna a funo invlida.
+     * @param enemyName O nome do inimigo que torna a função inválida.
      */
     public InvalidFunctionDueEnemyException(String enemyName) {
-        super("Funo invlida: " + enemyName + "  seu inimigo.");
+        super("Função inválida: " + enemyName + " é seu inimigo.");
     }
 }
@@ -1,17 +1,19 @@
 package br.ufal.ic.p2.jackut.exceptions.jackutsystem;
 
 /**
- * Exceo personalizada que  lanada quando ocorre uma falha no login ou na senha de um usurio.
+ * Exceção personalizada que é lançada quando ocorre uma falha no login ou na senha de um usuário.
  * Esta classe estende {@link Exception} e permite fornecer uma mensagem personalizada
- * ao ser lanada.
+ * ao ser lançada.
  *
- * <p>Esta exceo pode ser utilizada para indicar falhas de autenticao, como quando
- * o usurio insere um login ou senha incorretos.</p>
+ * <p>Esta exceção pode ser utilizada para indicar falhas de autenticação, como quando
+ * o usuário insere um login ou senha incorretos.</p>
  */
 
 public class InvalidLoginOrPasswordException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     public InvalidLoginOrPasswordException() {
-        super("Login ou senha invlidos.");
+        super("Login ou senha inválidos.");
     }
 }
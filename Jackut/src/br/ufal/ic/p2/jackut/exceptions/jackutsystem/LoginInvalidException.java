@@ -1,17 +1,19 @@
 package br.ufal.ic.p2.jackut.exceptions.jackutsystem;
 
 /**
- * Exceo personalizada que  lanada quando ocorre um erro relacionado a um login invlido.
- * Esta classe estende {@link Exception} e fornece uma mensagem padro "Login invlido."
- * ao ser lanada.
+ * Exceção personalizada que é lançada quando ocorre um erro relacionado a um login inválido.
+ * Esta classe estende {@link Exception} e fornece uma mensagem padrão "Login inválido."
+ * ao ser lançada.
  *
- * <p>Esta exceo pode ser utilizada para indicar que o login fornecido no  vlido
- * ou no corresponde a um registro existente.</p>
+ * <p>Esta exceção pode ser utilizada para indicar que o login fornecido não é válido
+ * ou não corresponde a um registro existente.</p>
  */
 
 public class LoginInvalidException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     public LoginInvalidException() {
-        super("Login invlido.");
+        super("Login inválido.");
     }
 }
@@ -1,17 +1,19 @@
 package br.ufal.ic.p2.jackut.exceptions.jackutsystem;
 
 /**
- * Exceo personalizada que  lanada quando ocorre um erro relacionado a uma senha invlida.
- * Esta classe estende {@link Exception} e fornece uma mensagem padro "Senha invlida."
- * ao ser lanada.
+ * Exceção personalizada que é lançada quando ocorre um erro relacionado a uma senha inválida.
+ * Esta classe estende {@link Exception} e fornece uma mensagem padrão "Senha inválida."
+ * ao ser lançada.
  *
- * <p>Esta exceo pode ser utilizada para indicar que a senha fornecida  invlida ou no corresponde
- * aos critrios de segurana esperados.</p>
+ * <p>Esta exceção pode ser utilizada para indicar que a senha fornecida é inválida ou não corresponde
+ * aos critérios de segurança esperados.</p>
  */
 
 public class PasswordInvalidException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     public PasswordInvalidException() {
-        super("Senha invlida.");
+        super("Senha inválida.");
     }
 }
@@ -1,15 +1,17 @@
 package br.ufal.ic.p2.jackut.exceptions.jackutsystem;
 
 /**
- * Exceo personalizada para indicar que j existe uma conta com o login de usurio fornecido.
+ * Exceção personalizada para indicar que já existe uma conta com o login de usuário fornecido.
  * <p>
- * Esta exceo  lanada quando uma tentativa de registrar um novo usurio  feita,
- * mas j existe uma conta com o mesmo login de usurio no sistema.
+ * Esta exceção é lançada quando uma tentativa de registrar um novo usuário é feita,
+ * mas já existe uma conta com o mesmo login de usuário no sistema.
  * </p>
  */
 
 public class UserAlreadyExistsException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public UserAlreadyExistsException() {
-        super("Conta com esse nome j existe.");
+        super("Conta com esse nome já existe.");
     }
 }
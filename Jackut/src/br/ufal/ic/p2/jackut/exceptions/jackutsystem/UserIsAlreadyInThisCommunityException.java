@@ -1,18 +1,20 @@
 package br.ufal.ic.p2.jackut.exceptions.jackutsystem;
 
 /**
- * Exceo personalizada que indica que o usurio j faz parte da comunidade.
- * Esta classe estende {@link Exception} e  lanada quando h uma tentativa
- * de adicionar um usurio a uma comunidade  qual ele j pertence.
+ * Exceção personalizada que indica que o usuário já faz parte da comunidade.
+ * Esta classe estende {@link Exception} e é lançada quando há uma tentativa
+ * de adicionar um usuário a uma comunidade à qual ele já pertence.
  */
 
 public class UserIsAlreadyInThisCommunityException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     /**
-     * Construtor padro que cria uma nova instncia da exceo com a
-     * mensagem padro "Usurio j faz parte dessa comunidade."
+     * Construtor padrão que cria uma nova instância da exceção com a
+     * mensagem padrão "Usuário já faz parte dessa comunidade."
      */
     public UserIsAlreadyInThisCommunityException() {
-        super("Usuario j faz parte dessa comunidade.");
+        super("Usuario já faz parte dessa comunidade.");
     }
 }
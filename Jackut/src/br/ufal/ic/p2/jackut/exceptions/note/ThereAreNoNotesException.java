@@ -1,16 +1,18 @@
 package br.ufal.ic.p2.jackut.exceptions.note;
 
 /**
- * Exceo personalizada para indicar que no h recados disponveis.
+ * Exceção personalizada para indicar que não há recados disponíveis.
  * <p>
- * Esta exceo  lanada quando uma tentativa de acessar recados  feita,
- * mas no h recados disponveis ou cadastrados.
+ * Esta exceção é lançada quando uma tentativa de acessar recados é feita,
+ * mas não há recados disponíveis ou cadastrados.
  * </p>
  */
 
 public class ThereAreNoNotesException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     public ThereAreNoNotesException() {
-        super("No h recados.");
+        super("Não há recados.");
     }
 }
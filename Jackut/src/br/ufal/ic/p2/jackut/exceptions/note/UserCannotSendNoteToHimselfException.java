@@ -1,15 +1,17 @@
 package br.ufal.ic.p2.jackut.exceptions.note;
 
 /**
- * Exceo personalizada para indicar que o usurio no pode enviar um recado para si mesmo.
+ * Exceção personalizada para indicar que o usuário não pode enviar um recado para si mesmo.
  * <p>
- * Esta exceo  lanada quando um usurio tenta enviar um recado para si mesmo,
- * o que no  permitido pelo sistema.
+ * Esta exceção é lançada quando um usuário tenta enviar um recado para si mesmo,
+ * o que não é permitido pelo sistema.
  * </p>
  */
 
 public class UserCannotSendNoteToHimselfException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public UserCannotSendNoteToHimselfException() {
-        super("Usurio no pode enviar recado para si mesmo.");
+        super("Usuário não pode enviar recado para si mesmo.");
     }
 }
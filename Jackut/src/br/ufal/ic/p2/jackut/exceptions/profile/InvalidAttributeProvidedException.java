@@ -1,13 +1,15 @@
 package br.ufal.ic.p2.jackut.exceptions.profile;
 
 /**
- * Exceo personalizada que  lanada quando um atributo invlido ou no preenchido  fornecido.
- * Esta exceo estende a classe {@link Exception}.
+ * Exceção personalizada que é lançada quando um atributo inválido ou não preenchido é fornecido.
+ * Esta exceção estende a classe {@link Exception}.
  */
 
 public class InvalidAttributeProvidedException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     public InvalidAttributeProvidedException() {
-        super("Atributo no preenchido.");
+        super("Atributo não preenchido.");
     }
 }
@@ -0,0 +1,28 @@
+package br.ufal.ic.p2.jackut.exceptions.serealization;
+
+import java.io.IOException;
+
+/**
+ * Exceção personalizada para indicar que um arquivo de dados está corrompido.
+ * <p>
+ * Esta exceção é lançada quando o checksum de um bloco lido não corresponde
+ * ao checksum gravado junto com ele.
+ * </p>
+ */
+
+public class CorruptedFileException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public CorruptedFileException() {
+        super("Arquivo de dados corrompido.");
+    }
+
+    /**
+     * Cria a exceção com uma mensagem que identifica o arquivo e o problema encontrado.
+     *
+     * @param message A mensagem da exceção.
+     */
+    public CorruptedFileException(String message) {
+        super(message);
+    }
+}
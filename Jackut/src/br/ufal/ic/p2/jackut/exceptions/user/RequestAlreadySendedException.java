@@ -1,17 +1,19 @@
 package br.ufal.ic.p2.jackut.exceptions.user;
 
 /**
- * Exceo personalizada para indicar que um pedido de amizade j foi enviado.
+ * Exceção personalizada para indicar que um pedido de amizade já foi enviado.
  * <p>
- * Esta exceo  lanada quando um usurio tenta enviar um convite de amizade
- * para outro usurio que j foi adicionado como amigo, estando aguardando
- * a aceitao do convite.
+ * Esta exceção é lançada quando um usuário tenta enviar um convite de amizade
+ * para outro usuário que já foi adicionado como amigo, estando aguardando
+ * a aceitação do convite.
  * </p>
  */
 
 public class RequestAlreadySendedException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     public RequestAlreadySendedException() {
-        super("Usurio j est adicionado como amigo, esperando aceitao do convite.");
+        super("Usuário já está adicionado como amigo, esperando aceitação do convite.");
     }
 }
@@ -1,15 +1,17 @@
 package br.ufal.ic.p2.jackut.exceptions.user;
 
 /**
- * Exceo personalizada para indicar que o usurio no est registrado.
+ * Exceção personalizada para indicar que o usuário não está registrado.
  * <p>
- * Esta exceo  lanada quando uma operao  tentada com um usurio que
- * no est cadastrado no sistema.
+ * Esta exceção é lançada quando uma operação é tentada com um usuário que
+ * não está cadastrado no sistema.
  * </p>
  */
 
 public class UnregisteredUserException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public UnregisteredUserException() {
-        super("Usurio no cadastrado.");
+        super("Usuário não cadastrado.");
     }
 }
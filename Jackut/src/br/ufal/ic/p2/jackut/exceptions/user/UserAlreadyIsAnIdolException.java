@@ -1,14 +1,16 @@
 package br.ufal.ic.p2.jackut.exceptions.user;
 
 /**
- * Exceo personalizada que indica que o usurio j foi adicionado como dolo.
- * Esta classe estende {@link Exception} e  lanada quando h uma tentativa
- * de adicionar um usurio que j est registrado como dolo.
+ * Exceção personalizada que indica que o usuário já foi adicionado como ídolo.
+ * Esta classe estende {@link Exception} e é lançada quando há uma tentativa
+ * de adicionar um usuário que já está registrado como ídolo.
  */
 
 public class UserAlreadyIsAnIdolException extends Exception {
+    private static final long serialVersionUID = 1L;
+
 
     public UserAlreadyIsAnIdolException() {
-        super("Usurio j est adicionado como dolo.");
+        super("Usuário já está adicionado como ídolo.");
     }
 }
@@ -1,15 +1,17 @@
 package br.ufal.ic.p2.jackut.exceptions.user;
 
 /**
- * Exceo personalizada para indicar que o usurio j foi adicionado como amigo.
+ * Exceção personalizada para indicar que o usuário já foi adicionado como amigo.
  * <p>
- * Esta exceo  lanada quando uma tentativa de adicionar um usurio como amigo
- *  feita, mas o usurio j foi adicionado como amigo anteriormente.
+ * Esta exceção é lançada quando uma tentativa de adicionar um usuário como amigo
+ * é feita, mas o usuário já foi adicionado como amigo anteriormente.
  * </p>
  */
 
 public class UserAlreadyIsFriendException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public UserAlreadyIsFriendException() {
-        super("Usurio j est adicionado como amigo.");
+        super("Usuário já está adicionado como amigo.");
     }
 }
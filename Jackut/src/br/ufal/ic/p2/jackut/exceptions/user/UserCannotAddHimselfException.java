@@ -1,15 +1,17 @@
 package br.ufal.ic.p2.jackut.exceptions.user;
 
 /**
- * Exceo personalizada para indicar que o usurio no pode adicionar a si mesmo como amigo.
+ * Exceção personalizada para indicar que o usuário não pode adicionar a si mesmo como amigo.
  * <p>
- * Esta exceo  lanada quando um usurio tenta enviar um convite de amizade para si mesmo,
- * o que no  permitido pelo sistema.
+ * Esta exceção é lançada quando um usuário tenta enviar um convite de amizade para si mesmo,
+ * o que não é permitido pelo sistema.
  * </p>
  */
 
 public class UserCannotAddHimselfException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public UserCannotAddHimselfException() {
-        super("Usurio no pode adicionar a si mesmo como amigo.");
+        super("Usuário não pode adicionar a si mesmo como amigo.");
     }
 }
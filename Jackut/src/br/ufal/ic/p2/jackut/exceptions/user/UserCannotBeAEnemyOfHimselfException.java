@@ -1,13 +1,15 @@
 package br.ufal.ic.p2.jackut.exceptions.user;
 
 /**
- * Exceo personalizada que indica que o usurio no pode ser inimigo de si mesmo.
- * Esta classe estende {@link Exception} e  lanada quando ocorre uma tentativa
- * de definir o prprio usurio como inimigo.
+ * Exceção personalizada que indica que o usuário não pode ser inimigo de si mesmo.
+ * Esta classe estende {@link Exception} e é lançada quando ocorre uma tentativa
+ * de definir o próprio usuário como inimigo.
  */
 
 public class UserCannotBeAEnemyOfHimselfException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public UserCannotBeAEnemyOfHimselfException() {
-        super("Usurio no pode ser inimigo de si mesmo.");
+        super("Usuário não pode ser inimigo de si mesmo.");
     }
 }
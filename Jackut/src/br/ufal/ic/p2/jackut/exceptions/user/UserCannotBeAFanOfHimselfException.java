@@ -1,13 +1,15 @@
 package br.ufal.ic.p2.jackut.exceptions.user;
 
 /**
- * Exceo personalizada que indica que o usurio no pode ser f de si mesmo.
- * Esta classe estende {@link Exception} e  lanada quando ocorre uma tentativa
- * de definir o prprio usurio como f.
+ * Exceção personalizada que indica que o usuário não pode ser fã de si mesmo.
+ * Esta classe estende {@link Exception} e é lançada quando ocorre uma tentativa
+ * de definir o próprio usuário como fã.
  */
 
 public class UserCannotBeAFanOfHimselfException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public UserCannotBeAFanOfHimselfException() {
-        super("Usurio no pode ser f de si mesmo.");
+        super("Usuário não pode ser fã de si mesmo.");
     }
 }
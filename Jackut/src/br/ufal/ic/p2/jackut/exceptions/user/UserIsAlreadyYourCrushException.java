@@ -1,12 +1,14 @@
 package br.ufal.ic.p2.jackut.exceptions.user;
 
 /**
- * Exceo personalizada que indica que o usurio j foi adicionado como paquera.
- * Esta classe estende {@link Exception} e  lanada quando ocorre uma tentativa
- * de adicionar um usurio como paquera, mas ele j foi adicionado anteriormente.
+ * Exceção personalizada que indica que o usuário já foi adicionado como paquera.
+ * Esta classe estende {@link Exception} e é lançada quando ocorre uma tentativa
+ * de adicionar um usuário como paquera, mas ele já foi adicionado anteriormente.
  */
 public class UserIsAlreadyYourCrushException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public UserIsAlreadyYourCrushException() {
-        super("Usurio j est adicionado como paquera.");
+        super("Usuário já está adicionado como paquera.");
     }
 }
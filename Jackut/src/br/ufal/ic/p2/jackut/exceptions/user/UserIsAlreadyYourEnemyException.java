@@ -1,13 +1,15 @@
 package br.ufal.ic.p2.jackut.exceptions.user;
 
 /**
- * Exceo personalizada que indica que o usurio j foi adicionado como inimigo.
- * Esta classe estende {@link Exception} e  lanada quando ocorre uma tentativa
- * de adicionar um usurio como inimigo, mas ele j foi adicionado anteriormente.
+ * Exceção personalizada que indica que o usuário já foi adicionado como inimigo.
+ * Esta classe estende {@link Exception} e é lançada quando ocorre uma tentativa
+ * de adicionar um usuário como inimigo, mas ele já foi adicionado anteriormente.
  */
 
 public class UserIsAlreadyYourEnemyException extends Exception{
+    private static final long serialVersionUID = 1L;
+
     public UserIsAlreadyYourEnemyException(){
-        super("Usurio j est adicionado como inimigo.");
+        super("Usuário já está adicionado como inimigo.");
     }
 }
@@ -1,51 +1,104 @@
 package br.ufal.ic.p2.jackut.models;
 
+import br.ufal.ic.p2.jackut.utils.IntSetView;
+import br.ufal.ic.p2.jackut.utils.OrderedIntSet;
+import br.ufal.ic.p2.jackut.utils.SymbolTable;
+import br.ufal.ic.p2.jackut.utils.UserDirectory;
+import br.ufal.ic.p2.jackut.utils.UtilsBinary;
 import br.ufal.ic.p2.jackut.utils.UtilsString;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.*;
 
 /**
- * A classe {@code Community} representa uma comunidade, que possui um nome, uma descrio,
- * um proprietrio e uma lista de membros. A comunidade pode ser gerenciada e expandida ao
- * adicionar novos membros  lista de participantes.
+ * A classe {@code Community} representa uma comunidade, que possui um nome, uma descrição,
+ * um proprietário e uma lista de membros. A comunidade pode ser gerenciada e expandida ao
+ * adicionar novos membros à lista de participantes.
+ *
+ * <p>O dono e os membros são referenciados apenas pelo login, e não como contas aninhadas, de modo que
+ * a comunidade pode ser carregada sem carregar as contas dos seus membros. O nome, o dono e os membros são
+ * canonicalizados nas {@link SymbolTable}s do {@link UserDirectory} do sistema, o mesmo do dono na criação
+ * ou o do fluxo na leitura.</p>
+ *
+ * <p>As mensagens enviadas à comunidade ficam em um único {@link MessageLog}; cada membro guarda apenas o
+ * seu cursor de leitura ({@link UserAccount#getMessageCursors()}).</p>
+ *
+ * <p>Os membros também são guardados pelos identificadores de {@link UserDirectory}, e a cada alteração da
+ * lista de membros é publicada uma cópia imutável desses identificadores ({@link IntSetView}), lida por
+ * {@link #getMembersString()} sem travas. Uma entrada nova é publicada em tempo constante.</p>
  */
 
-public class Community implements Serializable {
+@SuppressWarnings("serial")
+public class Community implements Externalizable {
     /**
      * O nome da comunidade.
      */
     private String name;
 
     /**
-     * A descrio da comunidade.
+     * A descrição da comunidade.
      */
     private String description;
 
     /**
-     * A conta do usurio que  o proprietrio da comunidade.
+     * O login do usuário que é o proprietário da comunidade.
      */
-    private UserAccount owner;
+    private String owner;
 
     /**
-     * A lista de contas de usurios que so membros da comunidade.
+     * Os logins dos usuários que são membros da comunidade, na ordem de entrada.
      */
-    private ArrayList<UserAccount> membersList;
+    private LinkedHashSet<String> membersList;
 
     /**
-     * Constri uma nova instncia de {@code Community} com o nome, descrio e proprietrio fornecidos.
-     * Inicializa a lista de membros com o proprietrio da comunidade.
+     * O log com as mensagens enviadas à comunidade.
+     */
+    private MessageLog messageLog;
+
+    /**
+     * Os identificadores dos membros, na ordem de entrada.
+     */
+    private OrderedIntSet memberIds;
+
+    /**
+     * Cópia imutável dos identificadores dos membros, substituída a cada alteração.
+     */
+    private volatile IntSetView membersView;
+
+    /**
+     * O diretório do sistema a que a comunidade pertence.
+     */
+    private UserDirectory directory;
+
+    /**
+     * Constrói uma nova instância de {@code Community} com o nome, descrição e proprietário fornecidos.
+     * Inicializa a lista de membros com o proprietário da comunidade.
      *
      * @param name        o nome da comunidade
-     * @param description a descrio da comunidade
-     * @param owner       o proprietrio da comunidade
+     * @param description a descrição da comunidade
+     * @param owner       o proprietário da comunidade
      */
     public Community(String name, String description, UserAccount owner) {
-        this.name = name;
+        this.directory = owner.getDirectory();
+        this.name = directory.getCommunityNames().intern(name);
         this.description = description;
-        this.owner = owner;
-        this.membersList = new ArrayList<>();
-        this.membersList.add(owner);
+        this.owner = owner.getLogin();
+        this.membersList = new LinkedHashSet<>();
+        this.membersList.add(this.owner);
+        this.memberIds = new OrderedIntSet();
+        this.memberIds.add(owner.getId());
+        this.messageLog = new MessageLog(this.owner);
+        this.membersView = IntSetView.of(memberIds, null, directory.getLogins());
+    }
+
+    /**
+     * Construtor vazio exigido por {@link Externalizable}. O diretório da comunidade é o do fluxo de onde ela
+     * é lida (ver {@link UserDirectory#of(ObjectInput)}).
+     */
+    public Community() {
     }
 
 
@@ -60,50 +113,112 @@ public class Community implements Serializable {
 
 
     /**
-     * Retorna a descrio da comunidade.
+     * Retorna a descrição da comunidade.
      *
-     * @return a descrio da comunidade
+     * @return a descrição da comunidade
      */
     public String getDescription() {
         return description;
     }
 
     /**
-     * Retorna o proprietrio da comunidade.
+     * Retorna o login do proprietário da comunidade.
      *
-     * @return o proprietrio da comunidade
+     * @return o login do proprietário da comunidade
      */
-    public UserAccount getOwner() {
+    public String getOwner() {
         return owner;
     }
 
 
     /**
-     * Retorna uma representao em forma de string dos membros da comunidade formatados.
-     * Utiliza o mtodo {@link UtilsString#formatArrayList(ArrayList)} para formatar a lista de membros.
+     * Retorna uma representação em forma de string dos membros da comunidade formatados.
+     * Utiliza o método {@link UtilsString#formatSymbols(OrderedIntSet, SymbolTable)} para formatar a lista de membros;
+     * o resultado fica em cache até a lista ser alterada. Pode ser chamado sem a trava da comunidade.
      *
      * @return uma string formatada com os membros da comunidade
      */
     public String getMembersString() {
-        return UtilsString.formatArrayList(this.membersList);
+        return membersView.format();
     }
 
     /**
-     * Retorna a lista de membros da comunidade.
+     * Retorna a cópia imutável atual dos identificadores dos membros. Enquanto a lista de membros não muda, é
+     * sempre a mesma instância. Pode ser chamado sem a trava da comunidade.
      *
-     * @return a lista de membros da comunidade
+     * @return a cópia dos identificadores dos membros
      */
-    public ArrayList<UserAccount> getMembersList() {
-        return membersList;
+    public IntSetView getMembersView() {
+        return membersView;
+    }
+
+    /**
+     * Retorna os logins dos membros da comunidade, na ordem de entrada. A lista não pode ser alterada
+     * diretamente; use {@link #setMembersList(UserAccount)} e {@link #removeMember(String)}.
+     *
+     * @return os logins dos membros da comunidade
+     */
+    public Set<String> getMembersList() {
+        return Collections.unmodifiableSet(membersList);
     }
 
 
     /**
-     * Adiciona um novo membro  lista de membros da comunidade.
+     * Retorna o log com as mensagens enviadas à comunidade.
      *
-     * @param member a conta de usurio a ser adicionada como membro da comunidade
+     * @return o log de mensagens
+     */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    /**
+     * Adiciona um novo membro à lista de membros da comunidade.
+     *
+     * @param member a conta de usuário a ser adicionada como membro da comunidade
      */
     public void setMembersList(UserAccount member) {
-        this.membersList.add(member);
+        if (this.membersList.add(member.getLogin())) {
+            this.memberIds.add(member.getId());
+            this.membersView = IntSetView.of(memberIds, membersView, directory.getLogins());
+        }
+    }
+
+    /**
+     * Remove um membro da lista de membros da comunidade.
+     *
+     * @param login o login do membro a ser removido
+     */
+    public void removeMember(String login) {
+        if (this.membersList.remove(login)) {
+            this.memberIds.remove(directory.find(login));
+            this.membersView = IntSetView.of(memberIds, membersView, directory.getLogins());
+        }
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        UtilsBinary.writeString(out, name);
+        UtilsBinary.writeString(out, description);
+        UtilsBinary.writeString(out, owner);
+        UtilsBinary.writeStrings(out, membersList);
+        messageLog.writeTo(out);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        this.directory = UserDirectory.of(in);
+        this.name = directory.getCommunityNames().intern(UtilsBinary.readString(in));
+        this.description = UtilsBinary.readString(in);
+        this.owner = directory.intern(UtilsBinary.readString(in));
+        this.membersList = new LinkedHashSet<>();
+        UtilsBinary.readStrings(in, membersList, directory.getLogins());
+        this.memberIds = new OrderedIntSet(membersList.size());
+        for (String member : membersList) {
+            this.memberIds.add(directory.idOf(member));
+        }
+        this.messageLog = new MessageLog(owner);
+        this.messageLog.readFrom(in);
+        this.membersView = IntSetView.of(memberIds, null, directory.getLogins());
     }
 }
@@ -0,0 +1,343 @@
+package br.ufal.ic.p2.jackut.models;
+
+import br.ufal.ic.p2.jackut.utils.BinaryObjectInput;
+import br.ufal.ic.p2.jackut.utils.BinaryObjectOutput;
+import br.ufal.ic.p2.jackut.utils.ShardedSnapshot;
+import br.ufal.ic.p2.jackut.utils.SpillFile;
+import br.ufal.ic.p2.jackut.utils.UtilsBinary;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Caixa de entrada (fila) de recados ou mensagens que mantém em memória apenas uma quantidade limitada
+ * de itens, despejando os demais em um {@link SpillFile} do shard do dono da caixa.
+ *
+ * <p>A fila é dividida em três partes: a cabeça, com os próximos itens a serem lidos; uma sequência de
+ * segmentos no disco, do mais antigo para o mais novo; e a cauda, onde os novos itens são acrescentados.
+ * Quando a cauda enche, ela é gravada como um novo segmento; quando a cabeça esvazia, o segmento mais
+ * antigo é lido de volta. Assim, a memória usada não depende da quantidade de itens não lidos, apenas
+ * da referência (8 bytes) de cada segmento. As três partes são {@link RingBuffer}s, que não guardam vetor
+ * algum quando vazias e encolhem à medida que são esvaziadas.</p>
+ *
+ * <p>Na serialização da conta, apenas os itens vivos da cabeça e da cauda e as referências dos segmentos são
+ * gravados. Os segmentos de um {@link MessageLog} podem ser encadeados na caixa sem serem copiados
+ * ({@link #addSegment(long, int)}), e as referências são trocadas quando o {@link SpillFile} compacta os
+ * arquivos ({@link #relocate(LongUnaryOperator)}).</p>
+ *
+ * @param <T> O tipo de item da caixa.
+ */
+
+public class Mailbox<T extends Externalizable> extends AbstractQueue<T> {
+
+    /**
+     * Quantidade máxima de itens na cabeça da fila.
+     */
+
+    public static final int HEAD_CAPACITY = 16;
+
+    /**
+     * Quantidade de itens em cada segmento despejado (e capacidade da cauda).
+     */
+
+    public static final int SEGMENT_CAPACITY = 64;
+
+    private final int shard;
+    private final Supplier<T> factory;
+    private final RingBuffer<T> head = new RingBuffer<>();
+    private final RingBuffer<Long> segments = new RingBuffer<>();
+    private final RingBuffer<T> tail = new RingBuffer<>();
+    private int size = 0;
+
+    /**
+     * Cria uma caixa de entrada vazia.
+     *
+     * @param owner   O login do dono da caixa, que define o shard onde os itens serão despejados.
+     * @param factory Cria instâncias vazias do item, usadas na leitura dos segmentos.
+     */
+
+    public Mailbox(String owner, Supplier<T> factory) {
+        this.shard = ShardedSnapshot.shardOf(owner);
+        this.factory = factory;
+    }
+
+    @Override
+    public boolean offer(T item) {
+        if (segments.isEmpty() && tail.isEmpty() && head.size() < HEAD_CAPACITY) {
+            head.add(item);
+        } else {
+            tail.add(item);
+            if (tail.size() == SEGMENT_CAPACITY) {
+                segments.add(SpillFile.forShard(shard).append(encode(tail)));
+                tail.clear();
+            }
+        }
+        size++;
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        if (!refillHead()) {
+            return null;
+        }
+        size--;
+        return head.poll();
+    }
+
+    @Override
+    public T peek() {
+        return refillHead() ? head.peek() : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Percorre os itens em ordem, lendo os segmentos despejados sob demanda. A remoção pelo iterador
+     * não é suportada.
+     */
+
+    @Override
+    public Iterator<T> iterator() {
+        ArrayList<T> memory = new ArrayList<>(head);
+        ArrayList<Long> offsets = new ArrayList<>(segments);
+        ArrayList<T> last = new ArrayList<>(tail);
+
+        return new Iterator<>() {
+            private Iterator<T> current = memory.iterator();
+            private int segment = 0;
+            private boolean tailStarted = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (segment < offsets.size()) {
+                        current = decode(SpillFile.read(offsets.get(segment++)), factory).iterator();
+                    } else if (!tailStarted) {
+                        current = last.iterator();
+                        tailStarted = true;
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Garante que a cabeça tenha itens, lendo o segmento mais antigo ou, se não houver segmentos,
+     * transferindo a cauda.
+     *
+     * @return {@code false} se a caixa estiver vazia.
+     */
+
+    private boolean refillHead() {
+        if (!head.isEmpty()) {
+            return true;
+        }
+
+        if (!segments.isEmpty()) {
+            head.addAll(decode(SpillFile.read(segments.poll()), factory));
+        } else {
+            head.addAll(tail);
+            tail.clear();
+        }
+        return !head.isEmpty();
+    }
+
+    /**
+     * Retorna o item mais novo da caixa, sem removê-lo. Se ele estiver despejado, o último segmento é lido.
+     *
+     * @return O último item, ou {@code null} se a caixa estiver vazia.
+     */
+
+    public T peekLast() {
+        if (!tail.isEmpty()) {
+            return tail.get(tail.size() - 1);
+        }
+        if (!segments.isEmpty()) {
+            List<T> items = decode(SpillFile.read(segments.get(segments.size() - 1)), factory);
+            return items.get(items.size() - 1);
+        }
+        return head.isEmpty() ? null : head.get(head.size() - 1);
+    }
+
+    /**
+     * Acrescenta ao final da caixa um segmento já gravado, sem copiá-lo. A cauda, se houver, é despejada
+     * antes, para manter a ordem dos itens.
+     *
+     * @param segment A referência do segmento no {@link SpillFile}.
+     * @param count   A quantidade de itens do segmento.
+     */
+
+    public void addSegment(long segment, int count) {
+        if (!tail.isEmpty()) {
+            segments.add(SpillFile.forShard(shard).append(encode(tail)));
+            tail.clear();
+        }
+        segments.add(segment);
+        size += count;
+    }
+
+    /**
+     * @return {@code true} se algum item da caixa está despejado no disco.
+     */
+
+    public boolean hasSpilledSegments() {
+        return !segments.isEmpty();
+    }
+
+    /**
+     * Informa a referência de cada segmento despejado, do mais antigo para o mais novo.
+     *
+     * @param action Recebe as referências.
+     */
+
+    public void forEachSegment(LongConsumer action) {
+        for (long segment : segments) {
+            action.accept(segment);
+        }
+    }
+
+    /**
+     * Troca a referência de cada segmento despejado pela retornada por {@code move}.
+     *
+     * @param move Retorna a nova referência de um segmento.
+     * @return {@code true} se alguma referência mudou.
+     */
+
+    public boolean relocate(LongUnaryOperator move) {
+        boolean changed = false;
+        for (int i = segments.size(); i > 0; i--) {
+            long segment = segments.poll();
+            long moved = move.applyAsLong(segment);
+            changed |= moved != segment;
+            segments.add(moved);
+        }
+        return changed;
+    }
+
+    /**
+     * Descarta todos os itens, inclusive os despejados, sem lê-los de volta do disco.
+     */
+
+    @Override
+    public void clear() {
+        head.clear();
+        segments.clear();
+        tail.clear();
+        size = 0;
+    }
+
+    /**
+     * Codifica um segmento de itens, no formato lido por {@link #decode(byte[], Supplier)}.
+     */
+
+    static byte[] encode(Collection<? extends Externalizable> items) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BinaryObjectOutput out = new BinaryObjectOutput(bytes);
+            UtilsBinary.writeVarInt(out, items.size());
+            for (Externalizable item : items) {
+                item.writeExternal(out);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodifica um segmento gravado por {@link #encode(Collection)}.
+     */
+
+    static <E extends Externalizable> List<E> decode(byte[] bytes, Supplier<E> factory) {
+        try {
+            BinaryObjectInput in = new BinaryObjectInput(new ByteArrayInputStream(bytes));
+            int count = UtilsBinary.readVarInt(in);
+            ArrayList<E> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(readItem(in, factory));
+            }
+            return items;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Grava a cabeça, as referências dos segmentos despejados e a cauda.
+     *
+     * @param out O fluxo de destino.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public void writeTo(ObjectOutput out) throws IOException {
+        UtilsBinary.writeVarInt(out, size);
+        UtilsBinary.writeVarInt(out, head.size());
+        for (T item : head) {
+            item.writeExternal(out);
+        }
+        UtilsBinary.writeVarInt(out, segments.size());
+        for (long offset : segments) {
+            out.writeLong(offset);
+        }
+        UtilsBinary.writeVarInt(out, tail.size());
+        for (T item : tail) {
+            item.writeExternal(out);
+        }
+    }
+
+    /**
+     * Lê o conteúdo gravado por {@link #writeTo(ObjectOutput)}.
+     *
+     * @param in O fluxo de origem.
+     * @throws IOException Se ocorrer um erro de leitura.
+     */
+
+    public void readFrom(ObjectInput in) throws IOException {
+        size = UtilsBinary.readVarInt(in);
+        int headSize = UtilsBinary.readVarInt(in);
+        for (int i = 0; i < headSize; i++) {
+            head.add(readItem(in, factory));
+        }
+        int segmentCount = UtilsBinary.readVarInt(in);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(in.readLong());
+        }
+        int tailSize = UtilsBinary.readVarInt(in);
+        for (int i = 0; i < tailSize; i++) {
+            tail.add(readItem(in, factory));
+        }
+    }
+
+    /**
+     * Lê um item criado pela fábrica informada.
+     */
+
+    static <E extends Externalizable> E readItem(ObjectInput in, Supplier<E> factory) throws IOException {
+        E item = factory.get();
+        try {
+            item.readExternal(in);
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+        return item;
+    }
+}
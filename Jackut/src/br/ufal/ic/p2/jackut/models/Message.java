@@ -1,31 +1,52 @@
 package br.ufal.ic.p2.jackut.models;
 
-import java.io.Serializable;
+import br.ufal.ic.p2.jackut.utils.UtilsBinary;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
- * A classe {@code Message} representa uma mensagem simples contendo um texto.
- * Esta classe implementa a interface {@link Serializable}, permitindo que instncias
- * da classe possam ser serializadas para serem armazenadas ou transmitidas.
+ * A classe {@code Message} representa uma mensagem simples contendo um texto e o número de sequência do seu
+ * envio, usado para entregar em ordem as mensagens de várias comunidades.
+ * Esta classe implementa a interface {@link Externalizable}, permitindo que instâncias
+ * da classe possam ser serializadas em formato binário compacto para serem armazenadas ou transmitidas.
  */
 
-public class Message implements Serializable {
+public class Message implements Externalizable {
+    private static final long serialVersionUID = 1L;
     /**
-     * A mensagem armazenada nesta instncia.
+     * A mensagem armazenada nesta instância.
      */
     private String message;
 
     /**
-     * Constri uma nova instncia de {@code Message} com o texto fornecido.
+     * O número de sequência do envio (o LSN da operação no log).
+     */
+    private long sequence;
+
+    /**
+     * Constrói uma nova instância de {@code Message} com o texto fornecido.
      *
-     * @param message o texto da mensagem
+     * @param message  o texto da mensagem
+     * @param sequence o número de sequência do envio
      */
 
-    public Message(String message) {
+    public Message(String message, long sequence) {
         this.message = message;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Construtor vazio exigido por {@link Externalizable}.
+     */
+
+    public Message() {
     }
 
     /**
-     * Retorna o texto da mensagem armazenada nesta instncia.
+     * Retorna o texto da mensagem armazenada nesta instância.
      *
      * @return o texto da mensagem
      */
@@ -33,4 +54,26 @@ public class Message implements Serializable {
     public String getMessage() {
         return message;
     }
+
+    /**
+     * Retorna o número de sequência do envio da mensagem.
+     *
+     * @return o número de sequência
+     */
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        UtilsBinary.writeString(out, message);
+        out.writeLong(sequence);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        this.message = UtilsBinary.readString(in);
+        this.sequence = in.readLong();
+    }
 }
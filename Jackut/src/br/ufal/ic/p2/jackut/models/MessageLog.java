@@ -0,0 +1,223 @@
+package br.ufal.ic.p2.jackut.models;
+
+import br.ufal.ic.p2.jackut.utils.ShardedSnapshot;
+import br.ufal.ic.p2.jackut.utils.SpillFile;
+import br.ufal.ic.p2.jackut.utils.UtilsBinary;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Log somente de acréscimo com as mensagens enviadas a uma comunidade. Cada mensagem é guardada uma única
+ * vez, e cada membro guarda apenas a posição (cursor) da próxima mensagem que ainda não leu.
+ *
+ * <p>As mensagens são agrupadas em segmentos de {@link Mailbox#SEGMENT_CAPACITY} itens: o segmento em
+ * formação fica em memória e os segmentos completos são despejados no {@link SpillFile} do shard do dono
+ * da comunidade, ficando em memória apenas a sua referência. O último segmento lido é mantido em cache, já
+ * que os membros costumam ler as mensagens em sequência.</p>
+ *
+ * <p>Os segmentos que todos os membros já leram podem ser descartados por {@link #trimTo(long)}. As posições
+ * continuam contando desde a primeira mensagem da comunidade, de modo que os cursores dos membros não
+ * mudam.</p>
+ *
+ * <p>Os métodos usam o monitor do log, já que um membro pode ler as mensagens (e trocar o segmento em cache)
+ * enquanto outro usuário envia uma nova mensagem à comunidade.</p>
+ */
+
+public class MessageLog {
+    private final int shard;
+    private long first = 0;
+    private final ArrayList<Long> segments = new ArrayList<>();
+    private final ArrayList<Message> tail = new ArrayList<>();
+
+    private int cachedSegment = -1;
+    private List<Message> cachedMessages;
+
+    /**
+     * Cria um log vazio.
+     *
+     * @param owner O login do dono da comunidade, que define o shard onde as mensagens serão despejadas.
+     */
+
+    public MessageLog(String owner) {
+        this.shard = ShardedSnapshot.shardOf(owner);
+    }
+
+    /**
+     * @return A quantidade de mensagens já enviadas à comunidade.
+     */
+
+    public synchronized long size() {
+        return first + (long) segments.size() * Mailbox.SEGMENT_CAPACITY + tail.size();
+    }
+
+    /**
+     * Acrescenta uma mensagem ao final do log.
+     *
+     * @param message A mensagem enviada.
+     */
+
+    public synchronized void append(Message message) {
+        tail.add(message);
+        if (tail.size() == Mailbox.SEGMENT_CAPACITY) {
+            segments.add(SpillFile.forShard(shard).append(Mailbox.encode(tail)));
+            tail.clear();
+        }
+    }
+
+    /**
+     * Retorna a mensagem na posição informada, lendo o segmento correspondente do disco se necessário.
+     *
+     * @param index A posição da mensagem, entre a primeira mensagem não descartada e {@link #size()} - 1.
+     * @return A mensagem.
+     */
+
+    public synchronized Message get(long index) {
+        if (index < first || index >= size()) {
+            throw new IndexOutOfBoundsException("Mensagem " + index + " de " + size());
+        }
+
+        int segment = (int) ((index - first) / Mailbox.SEGMENT_CAPACITY);
+        int position = (int) ((index - first) % Mailbox.SEGMENT_CAPACITY);
+        if (segment == segments.size()) {
+            return tail.get(position);
+        }
+
+        if (segment != cachedSegment) {
+            cachedMessages = Mailbox.decode(SpillFile.read(segments.get(segment)), Message::new);
+            cachedSegment = segment;
+        }
+        return cachedMessages.get(position);
+    }
+
+    /**
+     * Acrescenta a uma fila as mensagens a partir da posição informada. Os segmentos despejados inteiros são
+     * encadeados na fila sem serem copiados ({@link Mailbox#addSegment(long, int)}).
+     *
+     * @param from   A posição da primeira mensagem a acrescentar.
+     * @param target A fila de destino.
+     */
+
+    public synchronized void transferTo(long from, Mailbox<Message> target) {
+        long spilledEnd = first + (long) segments.size() * Mailbox.SEGMENT_CAPACITY;
+        long index = Math.max(from, first);
+        while (index < spilledEnd && (index - first) % Mailbox.SEGMENT_CAPACITY != 0) {
+            target.add(get(index++));
+        }
+        for (; index < spilledEnd; index += Mailbox.SEGMENT_CAPACITY) {
+            target.addSegment(segments.get((int) ((index - first) / Mailbox.SEGMENT_CAPACITY)), Mailbox.SEGMENT_CAPACITY);
+        }
+        for (int position = (int) (index - spilledEnd); position < tail.size(); position++) {
+            target.add(tail.get(position));
+        }
+    }
+
+    /**
+     * Descarta os segmentos despejados cujas mensagens estão todas antes da posição informada.
+     *
+     * @param cursor A menor posição que ainda pode ser lida por algum membro.
+     * @return {@code true} se algum segmento foi descartado.
+     */
+
+    public synchronized boolean trimTo(long cursor) {
+        int count = (int) Math.min(segments.size(), Math.max(0, (cursor - first) / Mailbox.SEGMENT_CAPACITY));
+        if (count == 0) {
+            return false;
+        }
+
+        segments.subList(0, count).clear();
+        first += (long) count * Mailbox.SEGMENT_CAPACITY;
+        cachedSegment = -1;
+        cachedMessages = null;
+        return true;
+    }
+
+    /**
+     * @return A posição da primeira mensagem que ainda pode ser lida, isto é, que não foi descartada.
+     */
+
+    public synchronized long getFirst() {
+        return first;
+    }
+
+    /**
+     * @return {@code true} se alguma mensagem do log está despejada no disco.
+     */
+
+    public synchronized boolean hasSpilledSegments() {
+        return !segments.isEmpty();
+    }
+
+    /**
+     * Informa a referência de cada segmento despejado, do mais antigo para o mais novo.
+     *
+     * @param action Recebe as referências.
+     */
+
+    public synchronized void forEachSegment(LongConsumer action) {
+        for (long segment : segments) {
+            action.accept(segment);
+        }
+    }
+
+    /**
+     * Troca a referência de cada segmento despejado pela retornada por {@code move}.
+     *
+     * @param move Retorna a nova referência de um segmento.
+     * @return {@code true} se alguma referência mudou.
+     */
+
+    public synchronized boolean relocate(LongUnaryOperator move) {
+        boolean changed = false;
+        for (int i = 0; i < segments.size(); i++) {
+            long moved = move.applyAsLong(segments.get(i));
+            changed |= moved != segments.get(i);
+            segments.set(i, moved);
+        }
+        return changed;
+    }
+
+    /**
+     * Grava a posição da primeira mensagem não descartada, as referências dos segmentos despejados e as
+     * mensagens do segmento em formação.
+     *
+     * @param out O fluxo de destino.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public synchronized void writeTo(ObjectOutput out) throws IOException {
+        out.writeLong(first);
+        UtilsBinary.writeVarInt(out, segments.size());
+        for (long offset : segments) {
+            out.writeLong(offset);
+        }
+        UtilsBinary.writeVarInt(out, tail.size());
+        for (Message message : tail) {
+            message.writeExternal(out);
+        }
+    }
+
+    /**
+     * Lê o conteúdo gravado por {@link #writeTo(ObjectOutput)}.
+     *
+     * @param in O fluxo de origem.
+     * @throws IOException Se ocorrer um erro de leitura.
+     */
+
+    public synchronized void readFrom(ObjectInput in) throws IOException {
+        first = in.readLong();
+        int segmentCount = UtilsBinary.readVarInt(in);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(in.readLong());
+        }
+        int tailSize = UtilsBinary.readVarInt(in);
+        for (int i = 0; i < tailSize; i++) {
+            tail.add(Mailbox.readItem(in, Message::new));
+        }
+    }
+}
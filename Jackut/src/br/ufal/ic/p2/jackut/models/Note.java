@@ -1,15 +1,28 @@
 package br.ufal.ic.p2.jackut.models;
 
-import java.io.Serializable;
+import br.ufal.ic.p2.jackut.utils.BinaryObjectInput;
+import br.ufal.ic.p2.jackut.utils.UserDirectory;
+import br.ufal.ic.p2.jackut.utils.UtilsBinary;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
- * Representa um recado (Note) enviada entre usurios no sistema Jackut.
- * Cada mensagem contm um remetente, um destinatrio e o contedo da mensagem.
+ * Representa um recado (Note) enviada entre usuários no sistema Jackut.
+ * Cada mensagem contém um remetente, um destinatário e o conteúdo da mensagem.
+ *
+ * <p>Esta classe implementa {@code Externalizable} para permitir a serialização dos objetos
+ * em formato binário compacto.</p>
  *
- * <p>Esta classe implementa {@code Serializable} para permitir a serializao dos objetos.</p>
+ * <p>O remetente e o destinatário são as instâncias canônicas dos logins: quem cria o recado passa os
+ * logins das contas, e na leitura eles são trocados pelos do {@link UserDirectory} do fluxo, quando houver
+ * um, sem adicionar logins ao diretório.</p>
  */
 
-public class Note implements Serializable {
+public class Note implements Externalizable {
+    private static final long serialVersionUID = 1L;
 
     /**
      * Nome do remetente da mensagem.
@@ -17,12 +30,12 @@ public class Note implements Serializable {
     private String sender;
 
     /**
-     * Nome do destinatrio da mensagem.
+     * Nome do destinatário da mensagem.
      */
     private String receiver;
 
     /**
-     * Contedo da mensagem.
+     * Conteúdo da mensagem.
      */
     private String message;
 
@@ -30,8 +43,8 @@ public class Note implements Serializable {
      * Construtor para criar uma nova nota.
      *
      * @param sender   Nome do remetente da mensagem.
-     * @param receiver Nome do destinatrio da mensagem.
-     * @param message  Contedo da mensagem.
+     * @param receiver Nome do destinatário da mensagem.
+     * @param message  Conteúdo da mensagem.
      */
 
     public Note(String sender, String receiver, String message) {
@@ -41,7 +54,14 @@ public class Note implements Serializable {
     }
 
     /**
-     * Obtm o nome do remetente da mensagem.
+     * Construtor vazio exigido por {@link Externalizable}.
+     */
+
+    public Note() {
+    }
+
+    /**
+     * Obtém o nome do remetente da mensagem.
      *
      * @return Nome do remetente.
      */
@@ -51,9 +71,9 @@ public class Note implements Serializable {
     }
 
     /**
-     * Obtm o nome do destinatrio da mensagem.
+     * Obtém o nome do destinatário da mensagem.
      *
-     * @return Nome do destinatrio.
+     * @return Nome do destinatário.
      */
 
     public String getReceiver() {
@@ -61,12 +81,37 @@ public class Note implements Serializable {
     }
 
     /**
-     * Obtm o contedo da mensagem.
+     * Obtém o conteúdo da mensagem.
      *
-     * @return Contedo da mensagem.
+     * @return Conteúdo da mensagem.
      */
 
     public String getMessage() {
         return message;
     }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        UtilsBinary.writeString(out, sender);
+        UtilsBinary.writeString(out, receiver);
+        UtilsBinary.writeString(out, message);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        UserDirectory directory = in instanceof BinaryObjectInput ? ((BinaryObjectInput) in).getDirectory() : null;
+        this.sender = canonical(UtilsBinary.readString(in), directory);
+        this.receiver = canonical(UtilsBinary.readString(in), directory);
+        this.message = UtilsBinary.readString(in);
+    }
+
+    /**
+     * Retorna a instância canônica do login no diretório, ou o próprio login se não houver diretório ou se
+     * o login não estiver nele.
+     */
+
+    private static String canonical(String login, UserDirectory directory) {
+        String canonical = directory != null ? directory.lookup(login) : null;
+        return canonical != null ? canonical : login;
+    }
 }
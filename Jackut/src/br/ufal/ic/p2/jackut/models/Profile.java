@@ -1,18 +1,24 @@
 package br.ufal.ic.p2.jackut.models;
 
-import java.io.Serializable;
+import br.ufal.ic.p2.jackut.utils.UtilsBinary;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Representa um perfil de usurio contendo atributos personalizados.
- * Cada atributo  armazenado em um mapa de chave-valor.
+ * Representa um perfil de usuário contendo atributos personalizados.
+ * Cada atributo é armazenado em um mapa de chave-valor.
  *
- * <p>Esta classe implementa {@link Serializable}, permitindo que os perfis
+ * <p>Esta classe implementa {@link Externalizable}, permitindo que os perfis
  * sejam salvos e recuperados de forma persistente.</p>
  */
 
-public class Profile implements Serializable {
+@SuppressWarnings("serial")
+public class Profile implements Externalizable {
 
     /**
      * Mapa que armazena os atributos do perfil como pares chave-valor.
@@ -20,7 +26,7 @@ public class Profile implements Serializable {
     private Map<String, String> attributesMap;
 
     /**
-     * Construtor padro que inicializa o mapa de atributos.
+     * Construtor padrão que inicializa o mapa de atributos.
      */
 
     public Profile() {
@@ -28,7 +34,7 @@ public class Profile implements Serializable {
     }
 
     /**
-     * Obtm o mapa de atributos do perfil.
+     * Obtém o mapa de atributos do perfil.
      *
      * @return Um {@link Map} contendo os atributos do perfil.
      */
@@ -47,4 +53,23 @@ public class Profile implements Serializable {
     public void setAttributesMap(String attribute, String value) {
         this.attributesMap.put(attribute, value);
     }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        UtilsBinary.writeVarInt(out, attributesMap.size());
+        for (Map.Entry<String, String> attribute : attributesMap.entrySet()) {
+            UtilsBinary.writeString(out, attribute.getKey());
+            UtilsBinary.writeString(out, attribute.getValue());
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int size = UtilsBinary.readVarInt(in);
+        this.attributesMap = new HashMap<>(Math.max(16, size * 2));
+        for (int i = 0; i < size; i++) {
+            String attribute = UtilsBinary.readString(in);
+            this.attributesMap.put(attribute, UtilsBinary.readString(in));
+        }
+    }
 }
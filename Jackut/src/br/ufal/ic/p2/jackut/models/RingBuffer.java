@@ -0,0 +1,146 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.AbstractQueue;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Fila circular apoiada em um vetor, usada pelas partes em memória das caixas de entrada ({@link Mailbox}).
+ *
+ * <p>Cada item ocupa apenas uma posição do vetor (4 ou 8 bytes), sem nós intermediários. O vetor dobra de
+ * tamanho quando enche e cai pela metade quando fica com menos de um quarto ocupado; uma fila vazia não
+ * guarda vetor algum, de modo que as caixas de entrada de usuários sem itens pendentes quase não ocupam
+ * memória. O iterador percorre apenas o trecho ocupado, do item mais antigo ao mais novo.</p>
+ *
+ * @param <T> O tipo de item da fila.
+ */
+
+public class RingBuffer<T> extends AbstractQueue<T> {
+    private static final Object[] EMPTY = new Object[0];
+    private static final int MIN_CAPACITY = 4;
+
+    private Object[] items = EMPTY;
+    private int first = 0;
+    private int size = 0;
+    private int modifications = 0;
+
+    @Override
+    public boolean offer(T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        if (size == items.length) {
+            resize(Math.max(MIN_CAPACITY, items.length * 2));
+        }
+
+        items[index(size)] = item;
+        size++;
+        modifications++;
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        T item = get(0);
+        items[first] = null;
+        first = index(1);
+        size--;
+        modifications++;
+
+        if (size == 0) {
+            items = EMPTY;
+            first = 0;
+        } else if (items.length > MIN_CAPACITY && size < items.length / 4) {
+            resize(items.length / 2);
+        }
+        return item;
+    }
+
+    @Override
+    public T peek() {
+        return size == 0 ? null : get(0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        items = EMPTY;
+        first = 0;
+        size = 0;
+        modifications++;
+    }
+
+    /**
+     * Retorna o item na posição informada, contada a partir do mais antigo.
+     *
+     * @param position A posição do item, entre 0 e {@link #size()} - 1.
+     * @return O item.
+     */
+
+    @SuppressWarnings("unchecked")
+    public T get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Posição " + position + " de " + size);
+        }
+        return (T) items[index(position)];
+    }
+
+    /**
+     * @return A quantidade de posições do vetor atual.
+     */
+
+    public int capacity() {
+        return items.length;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private final int expectedModifications = modifications;
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < size;
+            }
+
+            @Override
+            public T next() {
+                if (modifications != expectedModifications) {
+                    throw new ConcurrentModificationException();
+                }
+                if (position >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(position++);
+            }
+        };
+    }
+
+    private int index(int position) {
+        int index = first + position;
+        return index < items.length ? index : index - items.length;
+    }
+
+    /**
+     * Copia o trecho ocupado para um novo vetor com a capacidade informada, começando da posição 0.
+     */
+
+    private void resize(int capacity) {
+        Object[] resized = new Object[capacity];
+        for (int i = 0; i < size; i++) {
+            resized[i] = items[index(i)];
+        }
+        items = resized;
+        first = 0;
+    }
+}
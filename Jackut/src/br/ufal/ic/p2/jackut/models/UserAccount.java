@@ -1,59 +1,149 @@
 package br.ufal.ic.p2.jackut.models;
 
+import br.ufal.ic.p2.jackut.utils.IntSetView;
+import br.ufal.ic.p2.jackut.utils.OrderedIntSet;
+import br.ufal.ic.p2.jackut.utils.SymbolTable;
+import br.ufal.ic.p2.jackut.utils.UserDirectory;
+import br.ufal.ic.p2.jackut.utils.UtilsBinary;
 import br.ufal.ic.p2.jackut.utils.UtilsString;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.function.LongUnaryOperator;
 
 /**
- * Representa uma conta de usurio no sistema Jackut.
- * Cada conta possui um login, senha, nome de usurio e um perfil associado.
- * Alm disso, permite gerenciamento de amizades e troca de notas.
+ * Representa uma conta de usuário no sistema Jackut.
+ * Cada conta possui um login, senha, nome de usuário e um perfil associado.
+ * Além disso, permite gerenciamento de amizades e troca de notas.
  * <p>
- * implementa {@link Serializable} para permitir a serializao do objeto.
+ * implementa {@link Externalizable} para permitir a serialização do objeto em formato binário compacto.
+ * As amizades, pedidos de amizade, fãs, paqueras e inimigos referenciam os outros usuários pelo identificador
+ * inteiro atribuído por {@link UserDirectory}, guardado em {@link OrderedIntSet}s que verificam a pertinência
+ * em tempo constante e preservam a ordem de inserção usada na formatação. Nos arquivos, as relações são
+ * gravadas pelos logins, de modo que uma conta pode ser carregada do snapshot sem carregar as contas com que
+ * se relaciona. As comunidades continuam em um {@link LinkedHashSet} de nomes, canonicalizados em
+ * {@link UserDirectory#getCommunityNames()}, assim como o login da conta em {@link UserDirectory#getLogins()}. A conta
+ * guarda o diretório do sistema em que foi criada ou lida, usado em todas essas conversões. Recados ficam em um
+ * {@link Mailbox}, que mantém em memória apenas os itens mais próximos de serem lidos.
+ * <p>
+ * As mensagens de comunidades não são copiadas para a conta: ela guarda apenas um cursor de leitura para o
+ * {@link MessageLog} de cada comunidade. A fila de mensagens recebe apenas as mensagens não lidas de
+ * comunidades que deixaram de existir.
+ * <p>
+ * Os recados recebidos são contados por remetente. Quando um remetente é removido, os seus recados ainda na
+ * fila são marcados como retirados (uma contagem por remetente, sem percorrer a fila) e descartados quando
+ * chegam à frente da fila; como a fila é FIFO, os recados retirados de um remetente são sempre os mais
+ * antigos dele que ainda estão na fila.
+ * <p>
+ * As representações formatadas das listas ficam em cache até a lista correspondente ser alterada (detectado
+ * pela versão do {@link OrderedIntSet}), de modo que leituras repetidas não reconstroem a string. Para isso, as
+ * comunidades também são guardadas pelos identificadores de {@link UserDirectory#getCommunityNames()}.
+ * <p>
+ * Cada relação de mão única (fã, paquera e inimigo) também é guardada no sentido inverso, na conta do outro
+ * usuário ({@link #getIdolsList()}, {@link #getCrushedByList()} e {@link #getEnemyOfList()}), para que a
+ * remoção de uma conta alcance apenas os usuários com que ela se relaciona.
+ * <p>
+ * Os dados lidos pelas consultas mais frequentes (senha, nome, perfil, amigos, fãs e comunidades) também
+ * são publicados em uma cópia imutável, a {@link View}, substituída por uma nova a cada alteração desses
+ * dados (<i>copy-on-write</i>). As consultas leem a cópia atual sem adquirir a trava da conta. Os conjuntos
+ * são copiados por {@link OrderedIntSet#snapshot()}, que compartilha os vetores do conjunto, de modo que
+ * adicionar um amigo, fã ou comunidade publica a nova cópia em tempo constante; as partes não alteradas são
+ * reaproveitadas da cópia anterior.
  */
 
-public class UserAccount implements Serializable {
+@SuppressWarnings("serial")
+public class UserAccount implements Externalizable {
+    private UserDirectory directory;
+    private int id;
     private String login;
     private String password;
     private String userName;
 
     private Profile profile = new Profile();
 
-    private ArrayList<UserAccount> friendList = new ArrayList<>();
-    private ArrayList<UserAccount> friendsRequestsSent = new ArrayList<>();
-    private ArrayList<UserAccount> friendsRequestsReceived = new ArrayList<>();
+    private OrderedIntSet friendList = new OrderedIntSet();
+    private OrderedIntSet friendsRequestsSent = new OrderedIntSet();
+    private OrderedIntSet friendsRequestsReceived = new OrderedIntSet();
+
+    private Mailbox<Note> notesQueue;
+    private Mailbox<Message> messagesQueue;
+    private LinkedHashMap<String, Long> messageCursors = new LinkedHashMap<>();
+
+    private OrderedIntSet peopleISentNotesTo = new OrderedIntSet();
+
+    private HashMap<Integer, Integer> queuedNotesBySender = new HashMap<>();
+    private HashMap<Integer, Integer> retractedNotesBySender = new HashMap<>();
+    private int retractedNotes = 0;
+
+    private String crushsString;
+    private int crushsStringVersion;
+    private String enemysString;
+    private int enemysStringVersion;
 
-    private Queue<Note> notesQueue = new LinkedList<>();
-    private Queue<Message> messagesQueue = new LinkedList<>();
+    private int profileVersion = 0;
+    private volatile View view;
 
-    private ArrayList<String> peopleISentNotesTo = new ArrayList<>();
+    private LinkedHashSet<String> communityList = new LinkedHashSet<>();
+    private OrderedIntSet communityIds = new OrderedIntSet();
 
-    private ArrayList<String> communityList = new ArrayList<>();
+    private OrderedIntSet fansList = new OrderedIntSet();
+    private OrderedIntSet crushsList = new OrderedIntSet();
+    private OrderedIntSet enemysList = new OrderedIntSet();
 
-    private ArrayList<String> fansList = new ArrayList<>();
-    private ArrayList<String> crushsList = new ArrayList<>();
-    private ArrayList<String> enemysList = new ArrayList<>();
+    private OrderedIntSet idolsList = new OrderedIntSet();
+    private OrderedIntSet crushedByList = new OrderedIntSet();
+    private OrderedIntSet enemyOfList = new OrderedIntSet();
 
     /**
-     * Constri uma nova conta de usurio.
+     * Constrói uma nova conta de usuário.
      *
-     * @param login    O login do usurio.
-     * @param password A senha do usurio.
-     * @param userName O nome de usurio.
+     * @param login     O login do usuário.
+     * @param password  A senha do usuário.
+     * @param userName  O nome de usuário.
+     * @param directory O diretório do sistema a que a conta pertence.
      */
 
-    public UserAccount(String login, String password, String userName) {
-        this.login = login;
+    public UserAccount(String login, String password, String userName, UserDirectory directory) {
+        this.directory = directory;
+        this.id = directory.idOf(login);
+        this.login = directory.loginOf(id);
         this.password = password;
         this.userName = userName;
+        this.notesQueue = new Mailbox<>(login, Note::new);
+        this.messagesQueue = new Mailbox<>(login, Message::new);
+        publish();
+    }
+
+    /**
+     * Construtor vazio exigido por {@link Externalizable}. O diretório da conta é o do fluxo de onde ela é
+     * lida (ver {@link UserDirectory#of(ObjectInput)}).
+     */
+
+    public UserAccount() {
+    }
+
+    /**
+     * @return O diretório do sistema a que a conta pertence.
+     */
+
+    public UserDirectory getDirectory() {
+        return directory;
     }
 
     /**
-     * @return O login do usurio.
+     * @return O identificador do usuário em {@link #getDirectory()}.
+     */
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return O login do usuário.
      */
 
     public String getLogin() {
@@ -61,7 +151,7 @@ public class UserAccount implements Serializable {
     }
 
     /**
-     * @return A senha do usurio.
+     * @return A senha do usuário.
      */
 
     public String getPassword() {
@@ -69,7 +159,7 @@ public class UserAccount implements Serializable {
     }
 
     /**
-     * @return O nome de usurio.
+     * @return O nome de usuário.
      */
 
     public String getUserName() {
@@ -77,7 +167,7 @@ public class UserAccount implements Serializable {
     }
 
     /**
-     * @return O perfil do usurio.
+     * @return O perfil do usuário. Para alterá-lo, use {@link #setProfileAttribute(String, String)}.
      */
 
     public Profile getProfile() {
@@ -85,73 +175,119 @@ public class UserAccount implements Serializable {
     }
 
     /**
-     * @return Lista de amigos do usurio.
+     * Adiciona ou atualiza um atributo do perfil.
+     *
+     * @param attribute O atributo.
+     * @param value     O novo valor.
+     */
+
+    public void setProfileAttribute(String attribute, String value) {
+        profile.setAttributesMap(attribute, value);
+        profileVersion++;
+        publish();
+    }
+
+    /**
+     * Retorna a cópia imutável mais recente dos dados lidos pelas consultas, que pode ser lida sem a trava
+     * da conta.
+     *
+     * @return A cópia atual.
+     */
+
+    public View getView() {
+        return view;
+    }
+
+    /**
+     * Publica uma nova {@link View} se algum dos dados que ela copia mudou desde a última publicação. Os
+     * métodos da conta que alteram esses dados já a chamam; quem altera diretamente um dos conjuntos
+     * retornados por {@link #getFriendList()} ou {@link #getFansList()} deve chamá-la em seguida. Deve ser
+     * chamado com a trava da conta adquirida.
      */
 
-    public List<UserAccount> getFriendList() {
+    public final void publish() {
+        View current = view;
+        if (current != null && current.profileVersion == profileVersion
+                && IntSetView.of(friendList, current.friends, directory.getLogins()) == current.friends
+                && IntSetView.of(fansList, current.fans, directory.getLogins()) == current.fans
+                && IntSetView.of(communityIds, current.communities, directory.getCommunityNames()) == current.communities) {
+            return;
+        }
+        view = new View(this, current);
+    }
+
+    /**
+     * @return Os identificadores dos amigos do usuário.
+     */
+
+    public OrderedIntSet getFriendList() {
         return friendList;
     }
 
     /**
-     * @return Lista formatada de amigos do usurio.
+     * @return Lista formatada de amigos do usuário.
      */
 
     public String getFriendsString() {
-        return UtilsString.formatArrayList(this.friendList);
+        return view.getFriendsString();
     }
 
     /**
-     * Adiciona um amigo  lista de amigos do usurio.
+     * Adiciona um amigo à lista de amigos do usuário.
      *
-     * @param friend O usurio a ser adicionado como amigo.
+     * @param friend O usuário a ser adicionado como amigo.
      */
 
     public void setFriendList(UserAccount friend) {
-        this.friendList.add(friend);
+        if (this.friendList.add(friend.getId())) {
+            publish();
+        }
     }
 
     /**
-     * Envia uma solicitao de amizade para outro usurio.
+     * Envia uma solicitação de amizade para outro usuário.
      *
-     * @param userAccount O usurio para quem a solicitao ser enviada.
+     * @param userAccount O usuário para quem a solicitação será enviada.
      */
 
     public void sendRequest(UserAccount userAccount) {
-        this.friendsRequestsSent.add(userAccount);
-        userAccount.friendsRequestsReceived.add(this);
+        this.friendsRequestsSent.add(userAccount.getId());
+        userAccount.friendsRequestsReceived.add(this.id);
     }
 
     /**
-     * Aceita uma solicitao de amizade recebida.
+     * Aceita uma solicitação de amizade recebida.
      *
-     * @param userAccount O usurio cuja solicitao ser aceita.
+     * @param userAccount O usuário cuja solicitação será aceita.
      */
 
     public void acceptRequest(UserAccount userAccount) {
-        this.friendList.add(userAccount);
-        this.friendsRequestsReceived.remove(userAccount);
-        userAccount.friendList.add(this);
-        userAccount.friendsRequestsSent.remove(this);
+        this.friendList.add(userAccount.getId());
+        this.friendsRequestsReceived.remove(userAccount.getId());
+        userAccount.friendList.add(this.id);
+        userAccount.friendsRequestsSent.remove(this.id);
+        this.publish();
+        userAccount.publish();
     }
 
     /**
-     * @return Lista de solicitaes de amizade enviadas.
+     * @return Os identificadores dos usuários para quem foram enviadas solicitações de amizade.
      */
 
-    public ArrayList<UserAccount> getFriendsRequestsSent() {
+    public OrderedIntSet getFriendsRequestsSent() {
         return friendsRequestsSent;
     }
 
     /**
-     * @return Lista de solicitaes de amizade recebidas.
+     * @return Os identificadores dos usuários que enviaram solicitações de amizade.
      */
 
-    public ArrayList<UserAccount> getFriendsRequestsReceived() {
+    public OrderedIntSet getFriendsRequestsReceived() {
         return friendsRequestsReceived;
     }
 
     /**
-     * @return Fila de notas do usurio.
+     * @return Fila de notas do usuário, incluindo as notas retiradas que ainda não foram descartadas.
      */
 
     public Queue<Note> getNotesQueue() {
@@ -159,50 +295,129 @@ public class UserAccount implements Serializable {
     }
 
     /**
-     * Adiciona uma nota  fila de notas do usurio.
+     * Adiciona uma nota à fila de notas do usuário.
      *
      * @param note A nota a ser adicionada.
      */
 
     public void setNotesQueue(Note note) {
         this.notesQueue.add(note);
+        this.queuedNotesBySender.merge(directory.idOf(note.getSender()), 1, Integer::sum);
+    }
+
+    /**
+     * @return {@code true} se houver alguma nota não retirada na fila.
+     */
+
+    public boolean hasNotes() {
+        return notesQueue.size() > retractedNotes;
     }
 
     /**
-     * Retorna a lista de comunidades associadas.
+     * Remove e retorna a próxima nota não retirada da fila, descartando as notas retiradas à sua frente.
+     *
+     * @return A próxima nota, ou {@code null} se não houver notas.
+     */
+
+    public Note pollNote() {
+        Note note;
+        while ((note = notesQueue.poll()) != null) {
+            int sender = directory.idOf(note.getSender());
+            queuedNotesBySender.computeIfPresent(sender, (key, count) -> count > 1 ? count - 1 : null);
+
+            Integer retracted = retractedNotesBySender.get(sender);
+            if (retracted == null) {
+                return note;
+            }
+            retractedNotesBySender.compute(sender, (key, count) -> count > 1 ? count - 1 : null);
+            retractedNotes--;
+        }
+        return null;
+    }
+
+    /**
+     * Retira todas as notas do remetente que ainda estão na fila.
+     *
+     * @param senderId O identificador do remetente.
+     * @return {@code true} se alguma nota foi retirada.
+     */
+
+    public boolean retractNotesFrom(int senderId) {
+        int queued = queuedNotesBySender.getOrDefault(senderId, 0);
+        int retracted = retractedNotesBySender.getOrDefault(senderId, 0);
+        if (queued == retracted) {
+            return false;
+        }
+
+        retractedNotesBySender.put(senderId, queued);
+        retractedNotes += queued - retracted;
+        return true;
+    }
+
+    /**
+     * Retorna a lista de comunidades associadas. A lista não pode ser alterada diretamente; use
+     * {@link #setCommunityList(String)} e {@link #removeCommunity(String)}.
      *
      * @return a lista de nomes das comunidades
      */
 
-    public ArrayList<String> getCommunityList() {
-        return communityList;
+    public Set<String> getCommunityList() {
+        return Collections.unmodifiableSet(communityList);
     }
 
     /**
-     * Adiciona o nome de uma comunidade  lista de comunidades.
+     * Adiciona o nome de uma comunidade à lista de comunidades.
      *
      * @param communityName o nome da comunidade a ser adicionada
      */
 
     public void setCommunityList(String communityName) {
-        this.communityList.add(communityName);
+        if (this.communityList.add(directory.getCommunityNames().intern(communityName))) {
+            communityIds.add(directory.getCommunityNames().idOf(communityName));
+            publish();
+        }
+    }
+
+    /**
+     * Remove o nome de uma comunidade da lista de comunidades.
+     *
+     * @param communityName o nome da comunidade a ser removida
+     */
+
+    public void removeCommunity(String communityName) {
+        if (this.communityList.remove(communityName)) {
+            communityIds.remove(directory.getCommunityNames().find(communityName));
+            publish();
+        }
+    }
+
+    /**
+     * Retorna uma representação em forma de string das comunidades, formatadas.
+     * Utiliza o método {@link UtilsString#formatSymbols(OrderedIntSet, SymbolTable)} para formatar a lista de
+     * comunidades.
+     *
+     * @return uma string formatada com as comunidades
+     */
+
+    public String getCommunitiesString() {
+        return view.getCommunitiesString();
     }
 
 
     /**
-     * Retorna a fila de mensagens.
+     * Retorna a fila de mensagens que não pertencem mais ao log de nenhuma comunidade.
      *
      * @return a fila de mensagens
      */
 
-    public Queue<Message> getMessagesQueue() {
+    public Mailbox<Message> getMessagesQueue() {
         return messagesQueue;
     }
 
     /**
-     * Adiciona uma mensagem  fila de mensagens.
+     * Adiciona uma mensagem à fila de mensagens.
      *
-     * @param message a mensagem a ser adicionada  fila
+     * @param message a mensagem a ser adicionada à fila
      */
 
     public void setMessagesQueue(Message message) {
@@ -210,127 +425,406 @@ public class UserAccount implements Serializable {
     }
 
     /**
-     * Retorna a lista de fs.
+     * Retorna, para cada comunidade do usuário, a posição da próxima mensagem não lida no seu log.
      *
-     * @return a lista de nomes dos fs
+     * @return os cursores de leitura, indexados pelo nome da comunidade
      */
 
-    public ArrayList<String> getFansList() {
+    public Map<String, Long> getMessageCursors() {
+        return messageCursors;
+    }
+
+    /**
+     * Verifica se algum recado ou mensagem da conta está despejado no disco.
+     *
+     * @return {@code true} se a fila de recados ou a de mensagens tem segmentos despejados
+     */
+
+    public boolean hasSpilledSegments() {
+        return notesQueue.hasSpilledSegments() || messagesQueue.hasSpilledSegments();
+    }
+
+    /**
+     * Informa a referência de cada segmento despejado das filas de recados e de mensagens.
+     *
+     * @param action recebe as referências
+     */
+
+    public void forEachSpilledSegment(LongConsumer action) {
+        notesQueue.forEachSegment(action);
+        messagesQueue.forEachSegment(action);
+    }
+
+    /**
+     * Troca as referências dos segmentos despejados das filas pelas retornadas por {@code move}.
+     *
+     * @param move retorna a nova referência de um segmento
+     * @return {@code true} se alguma referência mudou
+     */
+
+    public boolean relocateSpilledSegments(LongUnaryOperator move) {
+        boolean notesMoved = notesQueue.relocate(move);
+        return messagesQueue.relocate(move) || notesMoved;
+    }
+
+    /**
+     * Retorna o conjunto de fãs.
+     *
+     * @return os identificadores dos fãs
+     */
+
+    public OrderedIntSet getFansList() {
         return fansList;
     }
 
     /**
-     * Adiciona o nome de um f  lista de fs.
+     * Adiciona um fã ao conjunto de fãs.
      *
-     * @param fanName o nome do f a ser adicionado
+     * @param fanId o identificador do fã a ser adicionado
      */
 
-    public void setFansList(String fanName) {
-        this.fansList.add(fanName);
+    public void setFansList(int fanId) {
+        if (this.fansList.add(fanId)) {
+            publish();
+        }
     }
 
     /**
-     * Retorna uma representao em forma de string dos fs, formatados.
-     * Utiliza o mtodo {@link UtilsString#formatArrayList(ArrayList)} para formatar a lista de fs.
+     * Retorna uma representação em forma de string dos fãs, formatados.
+     * Utiliza o método {@link UtilsString#formatLogins(OrderedIntSet, UserDirectory)} para formatar a lista de fãs.
      *
-     * @return uma string formatada com os fs
+     * @return uma string formatada com os fãs
      */
 
     public String getFansString() {
-        return UtilsString.formatArrayList(this.fansList);
+        return view.getFansString();
     }
 
     /**
-     * Retorna a lista de crushes.
+     * Retorna o conjunto de crushes.
      *
-     * @return a lista de nomes dos crushes
+     * @return os identificadores dos crushes
      */
 
-    public ArrayList<String> getCrushsList() {
+    public OrderedIntSet getCrushsList() {
         return crushsList;
     }
 
     /**
-     * Adiciona o nome de um crush  lista de crushes.
+     * Adiciona um crush ao conjunto de crushes.
      *
-     * @param crushName o nome do crush a ser adicionado
+     * @param crushId o identificador do crush a ser adicionado
      */
 
-    public void setCrushsList(String crushName) {
-        this.crushsList.add(crushName);
+    public void setCrushsList(int crushId) {
+        this.crushsList.add(crushId);
     }
 
     /**
-     * Retorna uma representao em forma de string dos crushes, formatados.
-     * Utiliza o mtodo {@link UtilsString#formatArrayList(ArrayList)} para formatar a lista de crushes.
+     * Retorna uma representação em forma de string dos crushes, formatados.
+     * Utiliza o método {@link UtilsString#formatLogins(OrderedIntSet, UserDirectory)} para formatar a lista de crushes.
      *
      * @return uma string formatada com os crushes
      */
 
     public String getCrushsString() {
-        return UtilsString.formatArrayList(this.crushsList);
+        if (crushsString == null || crushsStringVersion != crushsList.getVersion()) {
+            crushsString = UtilsString.formatLogins(this.crushsList, directory);
+            crushsStringVersion = crushsList.getVersion();
+        }
+        return crushsString;
     }
 
     /**
-     * Retorna a lista de inimigos.
+     * Retorna o conjunto de inimigos.
      *
-     * @return a lista de nomes dos inimigos
+     * @return os identificadores dos inimigos
      */
 
-    public ArrayList<String> getEnemysList() {
+    public OrderedIntSet getEnemysList() {
         return enemysList;
     }
 
     /**
-     * Adiciona o nome de um inimigo  lista de inimigos.
+     * Adiciona um inimigo ao conjunto de inimigos.
      *
-     * @param enemyName o nome do inimigo a ser adicionado
+     * @param enemyId o identificador do inimigo a ser adicionado
      */
 
-    public void setEnemysList(String enemyName) {
-        this.enemysList.add(enemyName);
+    public void setEnemysList(int enemyId) {
+        this.enemysList.add(enemyId);
     }
 
     /**
-     * Retorna uma representao em forma de string dos inimigos, formatados.
-     * Utiliza o mtodo {@link UtilsString#formatArrayList(ArrayList)} para formatar a lista de inimigos.
+     * Retorna uma representação em forma de string dos inimigos, formatados.
+     * Utiliza o método {@link UtilsString#formatLogins(OrderedIntSet, UserDirectory)} para formatar a lista de inimigos.
      *
      * @return uma string formatada com os inimigos
      */
 
     public String getEnemysString() {
-        return UtilsString.formatArrayList(this.enemysList);
+        if (enemysString == null || enemysStringVersion != enemysList.getVersion()) {
+            enemysString = UtilsString.formatLogins(this.enemysList, directory);
+            enemysStringVersion = enemysList.getVersion();
+        }
+        return enemysString;
+    }
+
+
+    /**
+     * Retorna o conjunto de ídolos, isto é, dos usuários de quem este usuário é fã.
+     *
+     * @return os identificadores dos ídolos
+     */
+
+    public OrderedIntSet getIdolsList() {
+        return idolsList;
     }
 
+    /**
+     * Adiciona um ídolo ao conjunto de ídolos.
+     *
+     * @param idolId o identificador do ídolo a ser adicionado
+     */
+
+    public void setIdolsList(int idolId) {
+        this.idolsList.add(idolId);
+    }
 
     /**
-     * Retorna a lista de pessoas para as quais foram enviadas notas.
+     * Retorna o conjunto dos usuários que têm este usuário como crush.
      *
-     * @return a lista de nomes das pessoas que receberam notas
+     * @return os identificadores dos usuários
      */
 
-    public ArrayList<String> getPeopleISentNotesTo() {
+    public OrderedIntSet getCrushedByList() {
+        return crushedByList;
+    }
+
+    /**
+     * Adiciona um usuário ao conjunto dos que têm este usuário como crush.
+     *
+     * @param userId o identificador do usuário a ser adicionado
+     */
+
+    public void setCrushedByList(int userId) {
+        this.crushedByList.add(userId);
+    }
+
+    /**
+     * Retorna o conjunto dos usuários que têm este usuário como inimigo.
+     *
+     * @return os identificadores dos usuários
+     */
+
+    public OrderedIntSet getEnemyOfList() {
+        return enemyOfList;
+    }
+
+    /**
+     * Adiciona um usuário ao conjunto dos que têm este usuário como inimigo.
+     *
+     * @param userId o identificador do usuário a ser adicionado
+     */
+
+    public void setEnemyOfList(int userId) {
+        this.enemyOfList.add(userId);
+    }
+
+    /**
+     * Retorna o conjunto de pessoas para as quais foram enviadas notas.
+     *
+     * @return os identificadores das pessoas que receberam notas
+     */
+
+    public OrderedIntSet getPeopleISentNotesTo() {
         return peopleISentNotesTo;
     }
 
     /**
-     * Adiciona o nome de uma pessoa  lista de pessoas para as quais foram enviadas notas.
+     * Adiciona uma pessoa ao conjunto de pessoas para as quais foram enviadas notas.
      *
-     * @param userName o nome da pessoa que recebeu a nota
+     * @param userId o identificador da pessoa que recebeu a nota
      */
 
-    public void setPeopleISentNotesTo(String userName) {
-        this.peopleISentNotesTo.add(userName);
+    public void setPeopleISentNotesTo(int userId) {
+        this.peopleISentNotesTo.add(userId);
     }
 
     /**
-     * Representao em String do usurio, baseada no login.
+     * Representação em String do usuário, baseada no login.
      *
-     * @return O login do usurio.
+     * @return O login do usuário.
      */
 
     @Override
     public String toString() {
         return this.getLogin();
     }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        UtilsBinary.writeString(out, login);
+        UtilsBinary.writeString(out, password);
+        UtilsBinary.writeString(out, userName);
+        profile.writeExternal(out);
+
+        UtilsBinary.writeUserIds(out, friendList, directory);
+        UtilsBinary.writeUserIds(out, friendsRequestsSent, directory);
+        UtilsBinary.writeUserIds(out, friendsRequestsReceived, directory);
+
+        notesQueue.writeTo(out);
+        messagesQueue.writeTo(out);
+        UtilsBinary.writeVarInt(out, messageCursors.size());
+        for (Map.Entry<String, Long> cursor : messageCursors.entrySet()) {
+            UtilsBinary.writeString(out, cursor.getKey());
+            out.writeLong(cursor.getValue());
+        }
+
+        UtilsBinary.writeUserIds(out, peopleISentNotesTo, directory);
+        UtilsBinary.writeUserCounts(out, queuedNotesBySender, directory);
+        UtilsBinary.writeUserCounts(out, retractedNotesBySender, directory);
+        UtilsBinary.writeStrings(out, communityList);
+        UtilsBinary.writeUserIds(out, fansList, directory);
+        UtilsBinary.writeUserIds(out, crushsList, directory);
+        UtilsBinary.writeUserIds(out, enemysList, directory);
+        UtilsBinary.writeUserIds(out, idolsList, directory);
+        UtilsBinary.writeUserIds(out, crushedByList, directory);
+        UtilsBinary.writeUserIds(out, enemyOfList, directory);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        this.directory = UserDirectory.of(in);
+        this.id = directory.idOf(UtilsBinary.readString(in));
+        this.login = directory.loginOf(id);
+        this.password = UtilsBinary.readString(in);
+        this.userName = UtilsBinary.readString(in);
+        this.profile.readExternal(in);
+
+        UtilsBinary.readUserIds(in, friendList, directory);
+        UtilsBinary.readUserIds(in, friendsRequestsSent, directory);
+        UtilsBinary.readUserIds(in, friendsRequestsReceived, directory);
+
+        this.notesQueue = new Mailbox<>(login, Note::new);
+        this.notesQueue.readFrom(in);
+        this.messagesQueue = new Mailbox<>(login, Message::new);
+        this.messagesQueue.readFrom(in);
+        int cursorCount = UtilsBinary.readVarInt(in);
+        for (int i = 0; i < cursorCount; i++) {
+            messageCursors.put(directory.getCommunityNames().intern(UtilsBinary.readString(in)), in.readLong());
+        }
+
+        UtilsBinary.readUserIds(in, peopleISentNotesTo, directory);
+        UtilsBinary.readUserCounts(in, queuedNotesBySender, directory);
+        UtilsBinary.readUserCounts(in, retractedNotesBySender, directory);
+        this.retractedNotes = 0;
+        for (int count : retractedNotesBySender.values()) {
+            this.retractedNotes += count;
+        }
+        UtilsBinary.readStrings(in, communityList, directory.getCommunityNames());
+        for (String communityName : communityList) {
+            communityIds.add(directory.getCommunityNames().idOf(communityName));
+        }
+        UtilsBinary.readUserIds(in, fansList, directory);
+        UtilsBinary.readUserIds(in, crushsList, directory);
+        UtilsBinary.readUserIds(in, enemysList, directory);
+        UtilsBinary.readUserIds(in, idolsList, directory);
+        UtilsBinary.readUserIds(in, crushedByList, directory);
+        UtilsBinary.readUserIds(in, enemyOfList, directory);
+        publish();
+    }
+
+    /**
+     * Cópia imutável dos dados de uma conta lidos pelas consultas: senha, nome, perfil, amigos, fãs e
+     * comunidades. Uma vez publicada, nunca é alterada, e pode ser lida por qualquer thread sem travas.
+     */
+
+    public static final class View {
+        private final String password;
+        private final String userName;
+        private final Map<String, String> profile;
+        private final int profileVersion;
+        private final IntSetView friends;
+        private final IntSetView fans;
+        private final IntSetView communities;
+
+        private View(UserAccount account, View previous) {
+            this.password = account.password;
+            this.userName = account.userName;
+            this.profileVersion = account.profileVersion;
+            this.profile = previous != null && previous.profileVersion == profileVersion
+                    ? previous.profile : Collections.unmodifiableMap(new HashMap<>(account.profile.getAttributesMap()));
+            this.friends = IntSetView.of(account.friendList, previous != null ? previous.friends : null,
+                    account.directory.getLogins());
+            this.fans = IntSetView.of(account.fansList, previous != null ? previous.fans : null, account.directory.getLogins());
+            this.communities = IntSetView.of(account.communityIds, previous != null ? previous.communities : null,
+                    account.directory.getCommunityNames());
+        }
+
+        /**
+         * @return A senha do usuário.
+         */
+
+        public String getPassword() {
+            return password;
+        }
+
+        /**
+         * @return O nome do usuário.
+         */
+
+        public String getUserName() {
+            return userName;
+        }
+
+        /**
+         * @param attribute O atributo do perfil.
+         * @return O valor do atributo, ou {@code null} se ele não estiver preenchido.
+         */
+
+        public String getProfileAttribute(String attribute) {
+            return profile.get(attribute);
+        }
+
+        /**
+         * @return Os identificadores dos amigos.
+         */
+
+        public IntSetView getFriends() {
+            return friends;
+        }
+
+        /**
+         * @return Os identificadores dos fãs.
+         */
+
+        public IntSetView getFans() {
+            return fans;
+        }
+
+        /**
+         * @return Lista formatada de amigos.
+         */
+
+        public String getFriendsString() {
+            return friends.format();
+        }
+
+        /**
+         * @return Lista formatada de fãs.
+         */
+
+        public String getFansString() {
+            return fans.format();
+        }
+
+        /**
+         * @return Lista formatada de comunidades.
+         */
+
+        public String getCommunitiesString() {
+            return communities.format();
+        }
+    }
 }
@@ -0,0 +1,153 @@
+package br.ufal.ic.p2.jackut.server;
+
+import br.ufal.ic.p2.jackut.Facade;
+import br.ufal.ic.p2.jackut.utils.Command;
+import br.ufal.ic.p2.jackut.utils.CommandResult;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Servidor TCP que expõe os comandos da {@link Facade} em um protocolo de linhas, para que vários clientes
+ * usem o mesmo sistema Jackut ao mesmo tempo.
+ *
+ * <p>Cada linha enviada pelo cliente é um comando na sintaxe dos scripts do EasyAccept (ver {@link Command}),
+ * e o servidor responde com uma linha: {@code OK} (seguido do valor retornado, se houver) ou {@code ERR}
+ * seguido da mensagem de erro. Quebras de linha e barras invertidas nas respostas são escritas como
+ * {@code \n}, {@code \r} e {@code \\}. A linha {@code quit} encerra a conexão. Variáveis como
+ * {@code ${s1}} são responsabilidade do cliente. Comandos enviados em sequência, sem esperar as respostas
+ * (pipeline), são executados como um lote ({@link Facade#executarLote}).</p>
+ *
+ * <p>Cada conexão é atendida por uma thread virtual, de modo que dezenas de milhares de clientes
+ * conectados ocupam apenas algumas threads de plataforma enquanto esperam. O servidor escuta apenas no
+ * endereço local e grava um checkpoint ao ser encerrado.</p>
+ */
+
+public class JackutServer {
+
+    /**
+     * Porta padrão do servidor.
+     */
+
+    public static final int DEFAULT_PORT = 7070;
+
+    private static final int BACKLOG = 4096;
+
+    /**
+     * Quantidade máxima de comandos já recebidos executados em um mesmo lote.
+     */
+
+    private static final int MAX_PIPELINE = 1024;
+
+    private final Facade facade;
+
+    /**
+     * Cria o servidor sobre uma fachada.
+     *
+     * @param facade A fachada compartilhada por todas as conexões.
+     */
+
+    public JackutServer(Facade facade) {
+        this.facade = facade;
+    }
+
+    /**
+     * Inicia o servidor.
+     *
+     * @param args A porta, opcional.
+     * @throws IOException Se não for possível abrir a porta.
+     */
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Facade facade = new Facade();
+        Runtime.getRuntime().addShutdownHook(new Thread(facade::encerrarSistema));
+
+        new JackutServer(facade).listen(port);
+    }
+
+    /**
+     * Aceita conexões na porta informada até que o processo seja encerrado.
+     *
+     * @param port A porta.
+     * @throws IOException Se não for possível abrir a porta.
+     */
+
+    public void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+             ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor()) {
+            System.out.println("Jackut escutando em " + server.getLocalSocketAddress());
+            while (!server.isClosed()) {
+                Socket socket = server.accept();
+                connections.submit(() -> serve(socket));
+            }
+        }
+    }
+
+    /**
+     * Atende uma conexão até o cliente enviar {@code quit} ou fechar o socket. Os comandos já recebidos são
+     * executados juntos, como um lote, e as suas respostas são enviadas de uma vez.
+     */
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+
+            ArrayList<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null && !line.trim().equals("quit")) {
+                lines.add(line);
+                if (lines.size() >= MAX_PIPELINE || !reader.ready()) {
+                    respond(writer, lines);
+                }
+            }
+            respond(writer, lines);
+        } catch (IOException e) {
+            // O cliente fechou a conexão.
+        }
+    }
+
+    private void respond(BufferedWriter writer, ArrayList<String> lines) throws IOException {
+        for (String response : execute(lines)) {
+            writer.write(response);
+            writer.newLine();
+        }
+        writer.flush();
+        lines.clear();
+    }
+
+    /**
+     * Executa uma sequência de linhas como um lote.
+     *
+     * @param lines As linhas recebidas.
+     * @return A resposta de cada linha, exceto das linhas vazias e dos comentários.
+     */
+
+    List<String> execute(List<String> lines) {
+        ArrayList<String> responses = new ArrayList<>(lines.size());
+        for (CommandResult result : facade.executarScript(lines)) {
+            responses.add(format(result));
+        }
+        return responses;
+    }
+
+    private static String format(CommandResult result) {
+        return result.isOk() ? (result.getValue() == null ? "OK" : "OK " + escape(result.getValue())) : "ERR " + escape(result.getError());
+    }
+
+    private static String escape(String value) {
+        if (value.indexOf('\\') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return value.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+}
@@ -0,0 +1,124 @@
+package br.ufal.ic.p2.jackut.server;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cliente de carga para o {@link JackutServer}: abre várias conexões simultâneas, cada uma em uma thread
+ * virtual, e mede a vazão e a latência das requisições.
+ *
+ * <p>Cada cliente cria um usuário, abre uma sessão e envia uma sequência de comandos sorteados entre
+ * pedidos de amizade, recados, leituras de recados e consultas, respondidos um de cada vez. Respostas
+ * {@code ERR} com erros do próprio sistema (por exemplo, "Não há recados.") contam como requisições
+ * atendidas; falhas de conexão contam como erros.</p>
+ *
+ * <p>Uso: {@code LoadTestClient [host] [porta] [clientes] [requisições por cliente]}.</p>
+ */
+
+public class LoadTestClient {
+
+    /**
+     * Executa o teste de carga e imprime o resultado.
+     *
+     * @param args O host, a porta, a quantidade de clientes e a quantidade de requisições por cliente.
+     * @throws InterruptedException Se a espera pelos clientes for interrompida.
+     */
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : JackutServer.DEFAULT_PORT;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        List<long[]> latencies = new ArrayList<>();
+        AtomicLong failures = new AtomicLong();
+        String run = Long.toString(System.currentTimeMillis(), 36);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                long[] samples = new long[requests];
+                latencies.add(samples);
+                int client = i;
+                executor.submit(() -> {
+                    try {
+                        runClient(host, port, run, client, clients, samples);
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).filter(latency -> latency > 0).sorted().toArray();
+        System.out.printf("clientes=%d requisições=%d falhas=%d tempo=%.2fs vazão=%.0f req/s%n",
+                clients, all.length, failures.get(), elapsed / 1e9, all.length / (elapsed / 1e9));
+        if (all.length > 0) {
+            System.out.printf("latência (ms): p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f máx=%.2f%n",
+                    percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 0.999),
+                    all[all.length - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Executa as requisições de um cliente, guardando a latência de cada uma em nanossegundos.
+     */
+
+    private static void runClient(String host, int port, String run, int client, int clients, long[] samples) throws IOException {
+        try (Socket socket = new Socket(host, port);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+
+            String login = "lt" + run + "_" + client;
+            call(reader, writer, "criarUsuario login=" + login + " senha=s nome=\"Cliente " + client + "\"");
+            String session = call(reader, writer, "abrirSessao login=" + login + " senha=s").substring(3);
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < samples.length; i++) {
+                String other = "lt" + run + "_" + random.nextInt(clients);
+                String command = switch (random.nextInt(5)) {
+                    case 0 -> "adicionarAmigo id=" + session + " amigo=" + other;
+                    case 1 -> "enviarRecado id=" + session + " destinatario=" + other + " recado=\"Oi " + i + "\"";
+                    case 2 -> "lerRecado id=" + session;
+                    case 3 -> "getAmigos login=" + other;
+                    default -> "getAtributoUsuario login=" + other + " atributo=nome";
+                };
+
+                long begin = System.nanoTime();
+                call(reader, writer, command);
+                samples[i] = System.nanoTime() - begin;
+            }
+
+            writer.write("quit");
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    private static String call(BufferedReader reader, BufferedWriter writer, String command) throws IOException {
+        writer.write(command);
+        writer.newLine();
+        writer.flush();
+
+        String response = reader.readLine();
+        if (response == null) {
+            throw new EOFException("Conexão encerrada pelo servidor");
+        }
+        return response;
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
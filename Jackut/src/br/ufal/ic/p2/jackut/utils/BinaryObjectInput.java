@@ -0,0 +1,55 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.io.ObjectInput;
+
+/**
+ * Adaptador que permite ler objetos {@link java.io.Externalizable} diretamente de um fluxo binário
+ * gravado por {@link BinaryObjectOutput}.
+ *
+ * <p>Apenas os métodos primitivos de {@link java.io.DataInput} são suportados; {@link #readObject()}
+ * lança {@link UnsupportedOperationException}.</p>
+ *
+ * <p>O fluxo também informa aos modelos lidos o {@link UserDirectory} do sistema a que eles pertencem.</p>
+ */
+
+public class BinaryObjectInput extends DataInputStream implements ObjectInput {
+    private final UserDirectory directory;
+
+    /**
+     * Cria o adaptador sobre o fluxo informado, sem diretório. Só pode ser usado para ler modelos que não
+     * dependem de um (ver {@link UserDirectory#of(ObjectInput)}).
+     *
+     * @param in O fluxo de origem.
+     */
+
+    public BinaryObjectInput(InputStream in) {
+        this(in, null);
+    }
+
+    /**
+     * Cria o adaptador sobre o fluxo informado.
+     *
+     * @param in        O fluxo de origem.
+     * @param directory O diretório do sistema a que pertencem os modelos lidos.
+     */
+
+    public BinaryObjectInput(InputStream in, UserDirectory directory) {
+        super(in);
+        this.directory = directory;
+    }
+
+    /**
+     * @return O diretório do sistema a que pertencem os modelos lidos, ou {@code null}.
+     */
+
+    public UserDirectory getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public Object readObject() {
+        throw new UnsupportedOperationException("Objetos aninhados não são suportados no formato binário.");
+    }
+}
@@ -0,0 +1,31 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.io.DataOutputStream;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+
+/**
+ * Adaptador que permite gravar objetos {@link java.io.Externalizable} diretamente em um fluxo binário,
+ * sem o cabeçalho e os descritores de classe do {@link java.io.ObjectOutputStream}.
+ *
+ * <p>Apenas os métodos primitivos de {@link java.io.DataOutput} são suportados; {@link #writeObject(Object)}
+ * lança {@link UnsupportedOperationException}.</p>
+ */
+
+public class BinaryObjectOutput extends DataOutputStream implements ObjectOutput {
+
+    /**
+     * Cria o adaptador sobre o fluxo informado.
+     *
+     * @param out O fluxo de destino.
+     */
+
+    public BinaryObjectOutput(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void writeObject(Object obj) {
+        throw new UnsupportedOperationException("Objetos aninhados não são suportados no formato binário.");
+    }
+}
@@ -0,0 +1,208 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+
+/**
+ * Fluxo de saída que agrupa os bytes em blocos de tamanho fixo e comprime cada bloco
+ * independentemente com {@link Deflater}.
+ *
+ * <p>Layout do fluxo:</p>
+ * <pre>
+ * MAGIC, tamanhoDoBloco
+ * blocos: [tamanhoOriginal:int][tamanhoGravado:int][crc32c:int][bytes]  (gravado == original indica bloco sem compressão)
+ * marcador de fim: [0:int]
+ * </pre>
+ *
+ * <p>Um bloco que não diminui ao ser comprimido é gravado sem compressão; com o nível
+ * {@link Deflater#NO_COMPRESSION} nenhum bloco é comprimido e o fluxo funciona apenas como um buffer.
+ * Cada bloco leva o CRC32C dos bytes gravados, verificado na leitura por {@link BlockInflaterInputStream}.
+ * O fluxo contabiliza os bytes recebidos, os bytes gravados e o tempo gasto em cada fase.</p>
+ */
+
+public class BlockDeflaterOutputStream extends FilterOutputStream {
+
+    /**
+     * Identificador gravado no início de todo fluxo comprimido.
+     */
+
+    public static final int MAGIC = 0x4A4B5A31;
+
+    private final int level;
+    private final Deflater deflater;
+    private final DataOutputStream data;
+    private final byte[] block;
+    private final ByteArrayOutputStream compressed;
+    private final byte[] chunk = new byte[8192];
+    private final CRC32C crc = new CRC32C();
+    private int count = 0;
+    private boolean finished = false;
+
+    private long rawBytes = 0;
+    private long storedBytes = 0;
+    private long compressNanos = 0;
+    private long writeNanos = 0;
+
+    /**
+     * Cria o fluxo e grava o cabeçalho.
+     *
+     * @param out       O fluxo de destino.
+     * @param level     O nível de compressão do {@link Deflater} (de 0 a 9, ou -1 para o padrão).
+     * @param blockSize O tamanho, em bytes, dos blocos comprimidos.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public BlockDeflaterOutputStream(OutputStream out, int level, int blockSize) throws IOException {
+        super(out);
+        this.level = level;
+        this.deflater = level == Deflater.NO_COMPRESSION ? null : new Deflater(level);
+        this.data = new DataOutputStream(out);
+        this.block = new byte[blockSize];
+        this.compressed = new ByteArrayOutputStream(blockSize);
+
+        long start = System.nanoTime();
+        data.writeInt(MAGIC);
+        data.writeInt(blockSize);
+        storedBytes += 8;
+        writeNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == block.length) {
+            writeBlock();
+        }
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == block.length) {
+                writeBlock();
+            }
+            int copied = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, copied);
+            count += copied;
+            off += copied;
+            len -= copied;
+        }
+    }
+
+    /**
+     * Grava o bloco parcial atual e descarrega o fluxo de destino.
+     */
+
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        long start = System.nanoTime();
+        out.flush();
+        writeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Grava o último bloco e o marcador de fim, sem fechar o fluxo de destino.
+     *
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        writeBlock();
+        long start = System.nanoTime();
+        data.writeInt(0);
+        data.flush();
+        storedBytes += 4;
+        writeNanos += System.nanoTime() - start;
+
+        finished = true;
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    private void writeBlock() throws IOException {
+        if (count == 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        byte[] bytes = block;
+        int length = count;
+        if (level != Deflater.NO_COMPRESSION) {
+            compressed.reset();
+            deflater.reset();
+            deflater.setInput(block, 0, count);
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+
+            if (compressed.size() < count) {
+                bytes = compressed.toByteArray();
+                length = bytes.length;
+            }
+        }
+        crc.reset();
+        crc.update(bytes, 0, length);
+        long compressedAt = System.nanoTime();
+
+        data.writeInt(count);
+        data.writeInt(length);
+        data.writeInt((int) crc.getValue());
+        data.write(bytes, 0, length);
+        writeNanos += System.nanoTime() - compressedAt;
+        compressNanos += compressedAt - start;
+
+        rawBytes += count;
+        storedBytes += 12 + length;
+        count = 0;
+    }
+
+    /**
+     * @return A quantidade de bytes recebidos, antes da compressão.
+     */
+
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * @return A quantidade de bytes gravados no fluxo de destino, incluindo cabeçalhos.
+     */
+
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * @return O tempo, em nanossegundos, gasto comprimindo blocos.
+     */
+
+    public long getCompressNanos() {
+        return compressNanos;
+    }
+
+    /**
+     * @return O tempo, em nanossegundos, gasto gravando no fluxo de destino.
+     */
+
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+}
@@ -0,0 +1,183 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import br.ufal.ic.p2.jackut.exceptions.serealization.CorruptedFileException;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Fluxo de entrada que lê os blocos gravados por {@link BlockDeflaterOutputStream}, verificando o CRC32C
+ * e descomprimindo um bloco de cada vez. O fluxo contabiliza os bytes lidos, os bytes entregues e o tempo gasto em cada fase.
+ */
+
+public class BlockInflaterInputStream extends InputStream {
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+    private final CRC32C crc = new CRC32C();
+    private final byte[] block;
+    private byte[] stored;
+    private int position = 0;
+    private int limit = 0;
+    private boolean finished = false;
+
+    private long rawBytes = 0;
+    private long storedBytes = 0;
+    private long decompressNanos = 0;
+    private long readNanos = 0;
+
+    /**
+     * Cria o fluxo, lendo e validando o cabeçalho.
+     *
+     * @param in O fluxo de origem, posicionado no início do cabeçalho.
+     * @throws IOException Se ocorrer um erro de leitura ou o cabeçalho for inválido.
+     */
+
+    public BlockInflaterInputStream(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+
+        long start = System.nanoTime();
+        if (this.in.readInt() != BlockDeflaterOutputStream.MAGIC) {
+            throw new InvalidObjectException("Arquivo não é um fluxo comprimido do Jackut.");
+        }
+        int blockSize = this.in.readInt();
+        if (blockSize <= 0) {
+            throw new InvalidObjectException("Tamanho de bloco inválido: " + blockSize);
+        }
+        readNanos += System.nanoTime() - start;
+
+        this.block = new byte[blockSize];
+        this.stored = new byte[blockSize];
+        this.storedBytes = 8;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !readBlock()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !readBlock()) {
+            return -1;
+        }
+
+        int copied = Math.min(len, limit - position);
+        System.arraycopy(block, position, b, off, copied);
+        position += copied;
+        return copied;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private boolean readBlock() throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        int rawLength;
+        int storedLength;
+        int checksum;
+        byte[] target;
+        try {
+            rawLength = in.readInt();
+            if (rawLength == 0) {
+                storedBytes += 4;
+                finished = true;
+                readNanos += System.nanoTime() - start;
+                return false;
+            }
+
+            storedLength = in.readInt();
+            checksum = in.readInt();
+            if (rawLength < 0 || rawLength > block.length || storedLength < 0 || storedLength > rawLength) {
+                throw new CorruptedFileException();
+            }
+
+            target = storedLength == rawLength ? block : stored;
+            in.readFully(target, 0, storedLength);
+        } catch (EOFException e) {
+            throw new CorruptedFileException();
+        }
+        long readAt = System.nanoTime();
+        readNanos += readAt - start;
+
+        crc.reset();
+        crc.update(target, 0, storedLength);
+        if ((int) crc.getValue() != checksum) {
+            throw new CorruptedFileException();
+        }
+
+        if (storedLength != rawLength) {
+            try {
+                inflater.reset();
+                inflater.setInput(stored, 0, storedLength);
+                if (inflater.inflate(block, 0, rawLength) != rawLength || !inflater.finished()) {
+                    throw new CorruptedFileException();
+                }
+            } catch (DataFormatException e) {
+                throw new CorruptedFileException();
+            }
+            decompressNanos += System.nanoTime() - readAt;
+        }
+
+        rawBytes += rawLength;
+        storedBytes += 12 + storedLength;
+        position = 0;
+        limit = rawLength;
+        return true;
+    }
+
+    /**
+     * @return A quantidade de bytes entregues, depois da descompressão.
+     */
+
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * @return A quantidade de bytes lidos do fluxo de origem, incluindo cabeçalhos.
+     */
+
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * @return O tempo, em nanossegundos, gasto descomprimindo blocos.
+     */
+
+    public long getDecompressNanos() {
+        return decompressNanos;
+    }
+
+    /**
+     * @return O tempo, em nanossegundos, gasto lendo do fluxo de origem.
+     */
+
+    public long getReadNanos() {
+        return readNanos;
+    }
+}
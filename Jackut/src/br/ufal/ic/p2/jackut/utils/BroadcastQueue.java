@@ -0,0 +1,259 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Fila de entregas assíncronas atendida por um conjunto fixo de threads trabalhadoras.
+ *
+ * <p>Cada item é enviado com uma chave inteira, e todos os itens com a mesma chave vão para a fila do mesmo
+ * trabalhador ({@code chave % trabalhadores}), de modo que são entregues na ordem em que foram enviados.
+ * Cada trabalhador retira da sua fila até {@code batchSize} itens de uma vez e os entrega juntos ao
+ * consumidor. As filas são limitadas: quando a fila de um trabalhador está cheia, {@link #submit(int, Object)}
+ * bloqueia quem envia até abrir espaço.</p>
+ *
+ * <p>{@link #await()} espera a entrega de todos os itens enviados antes da chamada, e {@link #getStats()}
+ * informa a profundidade das filas e o atraso entre o envio e a entrega.</p>
+ *
+ * @param <T> O tipo dos itens entregues.
+ */
+
+public class BroadcastQueue<T> implements Closeable {
+    private final Worker[] workers;
+    private final int batchSize;
+    private final Consumer<ArrayList<T>> consumer;
+
+    private final ReentrantLock progressLock = new ReentrantLock();
+    private final Condition progress = progressLock.newCondition();
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private volatile long lastLagNanos;
+
+    /**
+     * Cria a fila e inicia os trabalhadores.
+     *
+     * @param workerCount A quantidade de threads trabalhadoras.
+     * @param capacity    A quantidade máxima de itens pendentes na fila de cada trabalhador.
+     * @param batchSize   A quantidade máxima de itens entregues de uma vez.
+     * @param consumer    A função que entrega um lote de itens, sempre chamada pelo trabalhador do lote.
+     */
+
+    @SuppressWarnings("unchecked")
+    public BroadcastQueue(int workerCount, int capacity, int batchSize, Consumer<ArrayList<T>> consumer) {
+        if (workerCount <= 0 || capacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Trabalhadores, capacidade e lote devem ser positivos");
+        }
+
+        this.batchSize = batchSize;
+        this.consumer = consumer;
+        this.workers = (Worker[]) new BroadcastQueue<?>.Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(capacity);
+            workers[i].thread.setName("jackut-broadcast-" + i);
+            workers[i].thread.start();
+        }
+    }
+
+    /**
+     * Envia um item para entrega, bloqueando enquanto a fila do seu trabalhador estiver cheia.
+     *
+     * @param key  A chave do item; itens com a mesma chave são entregues na ordem de envio.
+     * @param item O item, não nulo.
+     */
+
+    public void submit(int key, T item) {
+        Worker worker = workers[Math.floorMod(key, workers.length)];
+        worker.submitted.incrementAndGet();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                worker.queue.put(new Pending<>(item, System.nanoTime()));
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Espera até que todos os itens enviados antes desta chamada tenham sido entregues (ou tenham falhado).
+     */
+
+    public void await() {
+        long[] targets = new long[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            targets[i] = workers[i].submitted.get();
+        }
+
+        progressLock.lock();
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                while (workers[i].completed < targets[i]) {
+                    progress.awaitUninterruptibly();
+                }
+            }
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    /**
+     * @return A quantidade de itens enviados que ainda não foram entregues.
+     */
+
+    public long getDepth() {
+        long depth = 0;
+        for (Worker worker : workers) {
+            depth += worker.submitted.get() - worker.completed;
+        }
+        return depth;
+    }
+
+    /**
+     * @return As métricas da fila neste momento.
+     */
+
+    public BroadcastStats getStats() {
+        long count = delivered.get();
+        return new BroadcastStats(getDepth(), count, failed.get(), lastLagNanos,
+                count == 0 ? 0 : totalLagNanos.get() / count, maxLagNanos.get());
+    }
+
+    /**
+     * Entrega os itens pendentes e encerra os trabalhadores. Os trabalhadores não são interrompidos, pois uma
+     * interrupção durante a gravação fecharia os arquivos usados pelo consumidor.
+     */
+
+    @Override
+    public void close() {
+        await();
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void deliver(Worker worker, ArrayList<Pending<T>> pending) {
+        ArrayList<T> items = new ArrayList<>(pending.size());
+        for (Pending<T> item : pending) {
+            items.add(item.item);
+        }
+
+        try {
+            consumer.accept(items);
+            delivered.addAndGet(items.size());
+        } catch (RuntimeException e) {
+            failed.addAndGet(items.size());
+            e.printStackTrace();
+        }
+
+        long now = System.nanoTime();
+        for (Pending<T> item : pending) {
+            long lag = now - item.enqueuedAt;
+            totalLagNanos.addAndGet(lag);
+            maxLagNanos.accumulateAndGet(lag, Math::max);
+        }
+        lastLagNanos = now - pending.get(pending.size() - 1).enqueuedAt;
+
+        progressLock.lock();
+        try {
+            worker.completed += pending.size();
+            progress.signalAll();
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    /**
+     * Um item na fila, com o instante em que foi enviado.
+     */
+
+    private static final class Pending<T> {
+        private final T item;
+        private final long enqueuedAt;
+
+        private Pending(T item, long enqueuedAt) {
+            this.item = item;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Um trabalhador, com a sua fila e os contadores de itens enviados e concluídos.
+     */
+
+    private final class Worker implements Runnable {
+        private final ArrayBlockingQueue<Pending<T>> queue;
+        private final AtomicLong submitted = new AtomicLong();
+        private final Thread thread = new Thread(this);
+
+        /**
+         * Itens entregues ou que falharam. Alterado apenas com {@link #progressLock} adquirida.
+         */
+
+        private volatile long completed;
+
+        private Worker(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Pede ao trabalhador que termine depois de entregar os itens já enviados.
+         */
+
+        private void stop() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(new Pending<>(null, 0));
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            ArrayList<Pending<T>> pending = new ArrayList<>(batchSize);
+            boolean stopping = false;
+            while (!stopping) {
+                try {
+                    pending.add(queue.take());
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                queue.drainTo(pending, batchSize - 1);
+
+                stopping = pending.removeIf(item -> item.item == null);
+                if (!pending.isEmpty()) {
+                    deliver(this, pending);
+                }
+                pending.clear();
+            }
+        }
+    }
+}
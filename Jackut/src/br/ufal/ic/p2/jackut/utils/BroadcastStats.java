@@ -0,0 +1,88 @@
+package br.ufal.ic.p2.jackut.utils;
+
+/**
+ * Métricas de uma {@link BroadcastQueue}: itens pendentes, itens entregues e atraso entre o envio e a entrega.
+ */
+
+public class BroadcastStats {
+    private final long depth;
+    private final long delivered;
+    private final long failed;
+    private final long lastLagNanos;
+    private final long averageLagNanos;
+    private final long maxLagNanos;
+
+    /**
+     * Cria as métricas.
+     *
+     * @param depth           Itens enviados que ainda não foram entregues.
+     * @param delivered       Itens entregues desde a criação da fila.
+     * @param failed          Itens cuja entrega lançou uma exceção.
+     * @param lastLagNanos    Atraso do último item entregue.
+     * @param averageLagNanos Atraso médio dos itens entregues.
+     * @param maxLagNanos     Maior atraso observado.
+     */
+
+    public BroadcastStats(long depth, long delivered, long failed, long lastLagNanos, long averageLagNanos, long maxLagNanos) {
+        this.depth = depth;
+        this.delivered = delivered;
+        this.failed = failed;
+        this.lastLagNanos = lastLagNanos;
+        this.averageLagNanos = averageLagNanos;
+        this.maxLagNanos = maxLagNanos;
+    }
+
+    /**
+     * @return Os itens enviados que ainda não foram entregues.
+     */
+
+    public long getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return Os itens entregues desde a criação da fila.
+     */
+
+    public long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * @return Os itens cuja entrega lançou uma exceção.
+     */
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return O atraso, em nanossegundos, do último item entregue.
+     */
+
+    public long getLastLagNanos() {
+        return lastLagNanos;
+    }
+
+    /**
+     * @return O atraso médio, em nanossegundos, dos itens entregues.
+     */
+
+    public long getAverageLagNanos() {
+        return averageLagNanos;
+    }
+
+    /**
+     * @return O maior atraso, em nanossegundos, observado.
+     */
+
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pendentes=%d entregues=%d falhas=%d atraso: último %.2f ms, médio %.2f ms, máximo %.2f ms",
+                depth, delivered, failed, lastLagNanos / 1e6, averageLagNanos / 1e6, maxLagNanos / 1e6);
+    }
+}
@@ -0,0 +1,123 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.util.ArrayList;
+
+/**
+ * Um comando da {@link br.ufal.ic.p2.jackut.Facade}, recebido pelo
+ * {@link br.ufal.ic.p2.jackut.server.JackutServer} ou executado em lote por
+ * {@link br.ufal.ic.p2.jackut.Facade#executarLote}. Na forma de texto, usa a mesma sintaxe dos scripts do
+ * EasyAccept: o nome de um método da fachada seguido dos argumentos no formato {@code chave=valor}, por
+ * exemplo {@code criarUsuario login=jpsauve senha=sauvejp nome="Jacques Sauve"}.
+ *
+ * <p>Valores com espaços ficam entre aspas, e dentro delas uma barra invertida torna literal o caractere
+ * seguinte. Como no EasyAccept, os argumentos são passados ao método na ordem em que aparecem; as chaves
+ * servem apenas para documentar o comando.</p>
+ */
+
+public class Command {
+    private final String name;
+    private final String[] args;
+
+    private Command(String name, String[] args) {
+        this.name = name;
+        this.args = args;
+    }
+
+    /**
+     * Cria um comando diretamente a partir do nome e dos argumentos, sem passar pela forma de texto.
+     *
+     * @param name O nome do método da fachada.
+     * @param args Os valores dos argumentos, na ordem dos parâmetros do método.
+     * @return O comando.
+     */
+
+    public static Command of(String name, String... args) {
+        return new Command(name, args.clone());
+    }
+
+    /**
+     * @return O nome do método da fachada.
+     */
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Os valores dos argumentos, na ordem em que aparecem no comando.
+     */
+
+    public String[] getArgs() {
+        return args;
+    }
+
+    /**
+     * Interpreta uma linha de comando.
+     *
+     * @param line A linha recebida.
+     * @return O comando, ou {@code null} se a linha estiver vazia ou for um comentário ({@code #}).
+     * @throws IllegalArgumentException Se a linha estiver malformada.
+     */
+
+    public static Command parse(String line) {
+        ArrayList<String> tokens = tokenize(line);
+        if (tokens.isEmpty() || tokens.get(0).startsWith("#")) {
+            return null;
+        }
+
+        String[] args = new String[tokens.size() - 1];
+        for (int i = 1; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            int separator = token.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Argumento sem chave: " + token);
+            }
+            args[i - 1] = token.substring(separator + 1);
+        }
+        return new Command(tokens.get(0), args);
+    }
+
+    /**
+     * Separa a linha nos espaços fora de aspas, removendo as aspas e as barras de escape.
+     */
+
+    private static ArrayList<String> tokenize(String line) {
+        ArrayList<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inToken = false;
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '\\' && i + 1 < line.length()) {
+                    current.append(line.charAt(++i));
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Aspas não fechadas");
+        }
+        if (inToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+}
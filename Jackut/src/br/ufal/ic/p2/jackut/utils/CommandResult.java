@@ -0,0 +1,70 @@
+package br.ufal.ic.p2.jackut.utils;
+
+/**
+ * O resultado da execução de um {@link Command}: o valor retornado pelo método da fachada ou a mensagem
+ * do erro que ele lançou.
+ */
+
+public class CommandResult {
+    private final boolean ok;
+    private final String value;
+
+    private CommandResult(boolean ok, String value) {
+        this.ok = ok;
+        this.value = value;
+    }
+
+    /**
+     * @param value O valor retornado, ou {@code null} se o método não retornar nada.
+     * @return Um resultado de sucesso.
+     */
+
+    public static CommandResult ok(String value) {
+        return new CommandResult(true, value);
+    }
+
+    /**
+     * @param message A mensagem do erro.
+     * @return Um resultado de erro.
+     */
+
+    public static CommandResult error(String message) {
+        return new CommandResult(false, message);
+    }
+
+    /**
+     * @return true se o comando foi executado sem erros.
+     */
+
+    public boolean isOk() {
+        return ok;
+    }
+
+    /**
+     * @return O valor retornado pelo comando, ou {@code null} se ele não retornar nada ou tiver falhado.
+     */
+
+    public String getValue() {
+        return ok ? value : null;
+    }
+
+    /**
+     * @return A mensagem do erro, ou {@code null} se o comando foi executado sem erros.
+     */
+
+    public String getError() {
+        return ok ? null : value;
+    }
+
+    /**
+     * @return {@code OK}, seguido do valor se houver, ou {@code ERR} seguido da mensagem do erro.
+     */
+
+    @Override
+    public String toString() {
+        if (!ok) {
+            return "ERR " + value;
+        }
+        return value == null ? "OK" : "OK " + value;
+    }
+}
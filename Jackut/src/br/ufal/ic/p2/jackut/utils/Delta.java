@@ -0,0 +1,187 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import br.ufal.ic.p2.jackut.models.Community;
+import br.ufal.ic.p2.jackut.models.UserAccount;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Arquivo de checkpoint incremental do sistema Jackut.
+ *
+ * <p>Um delta contém apenas as contas e comunidades alteradas desde o checkpoint anterior, gravadas por
+ * inteiro, e os nomes das que foram removidas (<i>tombstones</i>). Os deltas são aplicados, em ordem de
+ * sequência, sobre o {@link ShardedSnapshot} base; periodicamente eles são compactados em um novo snapshot.</p>
+ *
+ * <p>Layout do conteúdo (gravado pela {@link Serealization} em um fluxo comprimido por blocos):</p>
+ * <pre>
+ * MAGIC, FORMAT_VERSION, sequência, lsn, reinício (byte)
+ * contas alteradas, comunidades alteradas (quantidade em varint + registros)
+ * logins removidos, nomes de comunidades removidas ({@link UtilsBinary#writeStrings})
+ * </pre>
+ */
+
+public class Delta {
+
+    /**
+     * Identificador gravado no início de todo delta.
+     */
+
+    public static final int MAGIC = 0x4A4B444C;
+
+    /**
+     * Versão atual do formato binário do delta.
+     */
+
+    public static final int FORMAT_VERSION = 6;
+
+    private final long sequence;
+    private final long lsn;
+    private final boolean reset;
+    private final List<UserAccount> users;
+    private final List<String> removedUsers;
+    private final List<Community> communities;
+    private final List<String> removedCommunities;
+
+    /**
+     * Cria um delta.
+     *
+     * @param sequence           O número de sequência do delta.
+     * @param lsn                LSN da última operação contida no delta.
+     * @param reset              Indica se os dados anteriores ao delta foram apagados ({@code zerarSistema}).
+     * @param users              As contas alteradas.
+     * @param removedUsers       Os logins das contas removidas.
+     * @param communities        As comunidades alteradas.
+     * @param removedCommunities Os nomes das comunidades removidas.
+     */
+
+    public Delta(long sequence, long lsn, boolean reset, List<UserAccount> users, List<String> removedUsers,
+                 List<Community> communities, List<String> removedCommunities) {
+        this.sequence = sequence;
+        this.lsn = lsn;
+        this.reset = reset;
+        this.users = users;
+        this.removedUsers = removedUsers;
+        this.communities = communities;
+        this.removedCommunities = removedCommunities;
+    }
+
+    /**
+     * @return O número de sequência do delta.
+     */
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return O LSN da última operação contida no delta.
+     */
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    /**
+     * Aplica o delta sobre os mapas informados.
+     *
+     * @param usersMap     O mapa de usuários.
+     * @param communityMap O mapa de comunidades.
+     */
+
+    public void applyTo(LazyUsersMap usersMap, Map<String, Community> communityMap) {
+        if (reset) {
+            usersMap.clear();
+            communityMap.clear();
+        }
+
+        for (UserAccount userAccount : users) {
+            usersMap.put(userAccount.getLogin(), userAccount);
+        }
+        for (String login : removedUsers) {
+            usersMap.remove(login);
+        }
+        for (Community community : communities) {
+            communityMap.put(community.getName(), community);
+        }
+        for (String name : removedCommunities) {
+            communityMap.remove(name);
+        }
+    }
+
+    /**
+     * Grava o delta no fluxo informado.
+     *
+     * @param out O fluxo de destino.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public void write(BinaryObjectOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(sequence);
+        out.writeLong(lsn);
+        out.writeBoolean(reset);
+
+        UtilsBinary.writeVarInt(out, users.size());
+        for (UserAccount userAccount : users) {
+            userAccount.writeExternal(out);
+        }
+        UtilsBinary.writeVarInt(out, communities.size());
+        for (Community community : communities) {
+            community.writeExternal(out);
+        }
+        UtilsBinary.writeStrings(out, removedUsers);
+        UtilsBinary.writeStrings(out, removedCommunities);
+        out.flush();
+    }
+
+    /**
+     * Lê um delta gravado por {@link #write(BinaryObjectOutput)}.
+     *
+     * @param in O fluxo de origem.
+     * @return O delta lido.
+     * @throws IOException Se ocorrer um erro de leitura ou o conteúdo não for um delta válido.
+     */
+
+    public static Delta read(BinaryObjectInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new InvalidObjectException("Arquivo não é um delta do Jackut.");
+        }
+
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new InvalidObjectException("Versão de delta não suportada: " + version);
+        }
+
+        long sequence = in.readLong();
+        long lsn = in.readLong();
+        boolean reset = in.readBoolean();
+
+        int userCount = UtilsBinary.readVarInt(in);
+        ArrayList<UserAccount> users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            UserAccount userAccount = new UserAccount();
+            userAccount.readExternal(in);
+            users.add(userAccount);
+        }
+
+        int communityCount = UtilsBinary.readVarInt(in);
+        ArrayList<Community> communities = new ArrayList<>(communityCount);
+        for (int i = 0; i < communityCount; i++) {
+            Community community = new Community();
+            community.readExternal(in);
+            communities.add(community);
+        }
+
+        ArrayList<String> removedUsers = new ArrayList<>();
+        UtilsBinary.readStrings(in, removedUsers);
+        ArrayList<String> removedCommunities = new ArrayList<>();
+        UtilsBinary.readStrings(in, removedCommunities);
+
+        return new Delta(sequence, lsn, reset, users, removedUsers, communities, removedCommunities);
+    }
+}
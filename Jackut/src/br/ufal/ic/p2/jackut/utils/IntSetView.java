@@ -0,0 +1,59 @@
+package br.ufal.ic.p2.jackut.utils;
+
+/**
+ * Cópia imutável de um {@link OrderedIntSet} de identificadores de uma {@link SymbolTable} (logins ou nomes
+ * de comunidades), publicada para leitura sem travas. A cópia é um {@link OrderedIntSet#snapshot()}, criado
+ * em tempo constante. A representação formatada (ver
+ * {@link UtilsString#formatSymbols(OrderedIntSet, SymbolTable)}) é calculada na primeira vez em que é pedida;
+ * se duas threads a calcularem ao mesmo tempo, ambas obtêm o mesmo texto.
+ */
+
+public final class IntSetView {
+    private final OrderedIntSet ids;
+    private final SymbolTable symbols;
+    private String formatted;
+
+    private IntSetView(OrderedIntSet ids, SymbolTable symbols) {
+        this.ids = ids;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Retorna uma cópia do estado atual do conjunto, reaproveitando a cópia anterior se o conjunto não mudou
+     * desde então.
+     *
+     * @param source   O conjunto, lido com a trava do seu dono adquirida.
+     * @param previous A cópia anterior do mesmo conjunto, ou {@code null}.
+     * @param symbols  A tabela dos símbolos identificados pelo conjunto.
+     * @return A cópia.
+     */
+
+    public static IntSetView of(OrderedIntSet source, IntSetView previous, SymbolTable symbols) {
+        if (previous != null && previous.ids.getVersion() == source.getVersion()) {
+            return previous;
+        }
+        return new IntSetView(source.snapshot(), symbols);
+    }
+
+    /**
+     * @param id O identificador procurado.
+     * @return {@code true} se o identificador estiver no conjunto.
+     */
+
+    public boolean contains(int id) {
+        return ids.contains(id);
+    }
+
+    /**
+     * @return Os símbolos do conjunto, formatados na ordem de inserção.
+     */
+
+    public String format() {
+        String result = formatted;
+        if (result == null) {
+            result = UtilsString.formatSymbols(ids, symbols);
+            formatted = result;
+        }
+        return result;
+    }
+}
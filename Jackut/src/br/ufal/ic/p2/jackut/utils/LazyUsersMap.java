@@ -0,0 +1,233 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import br.ufal.ic.p2.jackut.models.UserAccount;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mapa de usuários que carrega as contas sob demanda a partir de um {@link ShardedSnapshot} mapeado em memória.
+ *
+ * <p>Uma conta só é decodificada na primeira vez em que é pedida ao mapa; a partir daí ela fica em memória
+ * e é essa instância que passa a ser usada (e alterada) pelo sistema. Contas novas ficam apenas em memória
+ * e contas removidas são marcadas para não serem mais lidas do snapshot.</p>
+ *
+ * <p>Percorrer o mapa inteiro (por exemplo com {@link #values()}) carrega todas as contas.</p>
+ *
+ * <p>O mapa pode ser consultado por várias threads ao mesmo tempo: as contas carregadas ficam em um
+ * {@link ConcurrentHashMap}, e duas threads que pedem a mesma conta ainda não carregada recebem a mesma
+ * instância, decodificada uma única vez. As alterações ({@link #put}, {@link #remove} e {@link #clear})
+ * são serializadas pelo monitor do mapa; quem as chama continua responsável por não alterar a mesma conta
+ * em paralelo. A remoção marca a conta como removida antes de descarregá-la, e a leitura confere a marca
+ * depois de carregar a conta do snapshot, de modo que uma leitura concorrente com a remoção não recoloca a
+ * conta removida em memória. Ao recriar uma conta removida, a nova conta é colocada em memória antes de a
+ * marca ser retirada, de modo que uma leitura concorrente nunca volta a carregar a versão removida.</p>
+ */
+
+public class LazyUsersMap extends AbstractMap<String, UserAccount> {
+    private volatile ShardedSnapshot base;
+    private final ConcurrentHashMap<String, UserAccount> loaded = new ConcurrentHashMap<>();
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Quantidade de contas em {@link #loaded} que não existem no snapshot base.
+     */
+    private int added = 0;
+
+    /**
+     * Cria o mapa sobre um snapshot.
+     *
+     * @param base O snapshot de onde as contas serão carregadas.
+     */
+
+    public LazyUsersMap(ShardedSnapshot base) {
+        this.base = base;
+    }
+
+    @Override
+    public UserAccount get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        UserAccount userAccount = loaded.get(key);
+        if (userAccount != null || removed.contains(key)) {
+            return userAccount;
+        }
+
+        ShardedSnapshot snapshot = base;
+        userAccount = loaded.computeIfAbsent((String) key, login -> removed.contains(login) ? null : snapshot.readUser(login));
+        if (userAccount != null && removed.contains(key)) {
+            loaded.remove(key, userAccount);
+            return null;
+        }
+        return userAccount;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (!(key instanceof String)) {
+            return false;
+        }
+        if (loaded.containsKey(key)) {
+            return true;
+        }
+        return !removed.contains(key) && base.containsUser((String) key);
+    }
+
+    @Override
+    public synchronized UserAccount put(String key, UserAccount value) {
+        UserAccount previous = get(key);
+
+        loaded.put(key, value);
+        if (previous == null) {
+            if (!removed.remove(key)) {
+                added++;
+            }
+        }
+        return previous;
+    }
+
+    @Override
+    public synchronized UserAccount remove(Object key) {
+        UserAccount previous = get(key);
+        if (previous == null) {
+            return null;
+        }
+
+        if (base.containsUser((String) key)) {
+            removed.add((String) key);
+        } else {
+            added--;
+        }
+        loaded.remove(key);
+        return previous;
+    }
+
+    @Override
+    public synchronized int size() {
+        return base.getUserCount() - removed.size() + added;
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.base = ShardedSnapshot.empty();
+        this.loaded.clear();
+        this.removed.clear();
+        this.added = 0;
+    }
+
+    @Override
+    public Set<Entry<String, UserAccount>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, UserAccount>> iterator() {
+                List<Entry<String, UserAccount>> materialized = new ArrayList<>(loaded.entrySet());
+                Set<String> materializedLogins = new HashSet<>(loaded.keySet());
+                ShardedSnapshot snapshot = base;
+
+                return new Iterator<>() {
+                    private int position = 0;
+                    private int index = 0;
+                    private Entry<String, UserAccount> next = advance();
+
+                    private Entry<String, UserAccount> advance() {
+                        if (position < materialized.size()) {
+                            return materialized.get(position++);
+                        }
+
+                        while (index < snapshot.getUserCount()) {
+                            String login = snapshot.loginAt(index++);
+                            if (!removed.contains(login) && !materializedLogins.contains(login)) {
+                                return new SimpleImmutableEntry<>(login, get(login));
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Entry<String, UserAccount> next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, UserAccount> current = next;
+                        next = advance();
+                        return current;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return LazyUsersMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Retorna a conta sem carregá-la: uma conta que ainda não está em memória é decodificada do snapshot,
+     * mas não é guardada no mapa. A conta retornada nesse caso é uma cópia e não deve ser alterada.
+     *
+     * @param login O login do usuário.
+     * @return A conta, ou {@code null} se ela não existir.
+     */
+
+    public UserAccount peek(String login) {
+        UserAccount userAccount = loaded.get(login);
+        if (userAccount != null || removed.contains(login)) {
+            return userAccount;
+        }
+        return base.readUser(login);
+    }
+
+    /**
+     * Carrega as contas do snapshot que têm recados ou mensagens despejados e retorna todas as contas em
+     * memória nessa situação.
+     *
+     * @return As contas com segmentos despejados em um {@link SpillFile}.
+     */
+
+    public List<UserAccount> loadSpilled() {
+        for (String login : base.getSpilledLogins()) {
+            get(login);
+        }
+
+        ArrayList<UserAccount> spilled = new ArrayList<>();
+        for (UserAccount userAccount : loaded.values()) {
+            if (userAccount.hasSpilledSegments()) {
+                spilled.add(userAccount);
+            }
+        }
+        return spilled;
+    }
+
+    /**
+     * @return O snapshot de onde as contas são carregadas.
+     */
+
+    ShardedSnapshot getBase() {
+        return base;
+    }
+
+    /**
+     * @return As contas já carregadas em memória ou criadas depois do snapshot.
+     */
+
+    Collection<UserAccount> getLoaded() {
+        return loaded.values();
+    }
+
+    /**
+     * Indica se a versão da conta no snapshot base não deve ser usada, porque ela já foi carregada
+     * (e pode ter sido alterada) ou porque foi removida.
+     */
+
+    boolean isShadowed(String login) {
+        return loaded.containsKey(login) || removed.contains(login);
+    }
+}
@@ -0,0 +1,448 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Log sequencial (write-ahead log) das operações que alteram o estado do sistema Jackut.
+ *
+ * <p>Cada operação é gravada como um registro compacto no final do arquivo antes de ser aplicada
+ * em memória. Ao iniciar, o sistema carrega o último snapshot e reaplica os registros do log
+ * cujo número de sequência (LSN) seja maior que o do snapshot.</p>
+ *
+ * <p>A durabilidade usa <i>group commit</i>: enquanto uma thread grava e sincroniza (fsync) um lote,
+ * as demais acumulam seus registros, que são gravados juntos no próximo lote. A espera usa um
+ * {@link ReentrantLock} em vez do monitor do objeto, de modo que threads virtuais esperando pelo fsync
+ * liberam a sua thread de plataforma.</p>
+ *
+ * <p>Se a gravação ou a sincronização de um lote falhar, os registros do lote podem não estar no disco, e o
+ * log passa a um estado de falha permanente: a partir daí, toda gravação ou espera por durabilidade lança
+ * {@link UncheckedIOException}, inclusive para os registros do lote perdido, em vez de confirmar como
+ * duráveis operações que podem ter se perdido.</p>
+ *
+ * <p>Formato de cada registro: {@code [tamanho:int][crc32c:int][lsn:long][tipo:byte][qtdArgs:short]}
+ * seguido de cada argumento como {@code [bytes:int][UTF-8]} ({@code -1} para {@code null}).</p>
+ */
+
+public class OperationLog implements Closeable {
+
+    /**
+     * Tipos de operação registrados no log.
+     */
+
+    public enum Type {
+        CLEAR,
+        CREATE_USER,
+        EDIT_PROFILE,
+        ADD_FRIEND,
+        SEND_NOTE,
+        READ_NOTE,
+        CREATE_COMMUNITY,
+        ADD_COMMUNITY,
+
+        /**
+         * Mensagem enviada a uma comunidade: remetente, comunidade e texto, seguidos dos logins dos membros que
+         * entraram na comunidade entre o envio assíncrono e a entrega e por isso não a recebem.
+         */
+        SEND_MESSAGE,
+        READ_MESSAGE,
+        ADD_IDOL,
+
+        /**
+         * Paquera gravada por versões anteriores, em que os recados de paquera mútua ficavam em registros
+         * {@link #SEND_NOTE} próprios; a reaplicação deste registro não envia recados.
+         */
+        ADD_CRUSH,
+        ADD_ENEMY,
+        REMOVE_USER,
+
+        /**
+         * Paquera cujos recados de paquera mútua são enviados pela própria reaplicação do registro.
+         */
+        ADD_CRUSH_WITH_NOTES
+    }
+
+    /**
+     * Registro lido do log durante a reaplicação.
+     */
+
+    public static class Entry {
+        private final long lsn;
+        private final Type type;
+        private final String[] args;
+
+        /**
+         * @param lsn  Número de sequência do registro.
+         * @param type Tipo da operação.
+         * @param args Argumentos da operação (logins, nomes e textos).
+         */
+
+        public Entry(long lsn, Type type, String[] args) {
+            this.lsn = lsn;
+            this.type = type;
+            this.args = args;
+        }
+
+        /**
+         * @return O número de sequência do registro.
+         */
+
+        public long getLsn() {
+            return lsn;
+        }
+
+        /**
+         * @return O tipo da operação.
+         */
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @param index Posição do argumento.
+         * @return O argumento na posição indicada.
+         */
+
+        public String getArg(int index) {
+            return args[index];
+        }
+
+        /**
+         * @return A quantidade de argumentos do registro.
+         */
+
+        public int getArgCount() {
+            return args.length;
+        }
+    }
+
+    private static final int HEADER_SIZE = 8;
+
+    private final File file;
+    private FileChannel channel;
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingData = new DataOutputStream(pending);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+
+    private long nextLsn = 1;
+    private long durableLsn = 0;
+    private boolean flushing = false;
+    private IOException failure;
+
+    /**
+     * Abre (ou cria) o arquivo de log.
+     *
+     * @param file Arquivo onde os registros serão gravados.
+     */
+
+    public OperationLog(File file) {
+        this.file = file;
+        open();
+    }
+
+    private void open() {
+        try {
+            File directory = file.getParentFile();
+            if (directory != null && !directory.exists()) {
+                directory.mkdirs();
+            }
+
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.channel.position(this.channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Grava uma operação no log e aguarda até que ela esteja durável em disco.
+     *
+     * @param type Tipo da operação.
+     * @param args Argumentos da operação.
+     * @return O LSN atribuído ao registro.
+     */
+
+    public long append(Type type, String... args) {
+        long lsn = appendDeferred(type, args);
+        commit(lsn);
+        return lsn;
+    }
+
+    /**
+     * Grava uma operação no log sem esperar que ela fique durável. O registro é gravado no disco junto com o
+     * próximo lote, e quem o gravou deve chamar {@link #sync(long)} antes de confirmar a operação.
+     *
+     * @param type Tipo da operação.
+     * @param args Argumentos da operação.
+     * @return O LSN atribuído ao registro.
+     */
+
+    public long appendDeferred(Type type, String... args) {
+        lock.lock();
+        try {
+            checkFailure();
+            long lsn = nextLsn++;
+            encode(lsn, type, args);
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Aguarda até que todos os registros até {@code lsn} estejam duráveis em disco, gravando-os se
+     * necessário.
+     *
+     * @param lsn O LSN do último registro que precisa estar durável.
+     */
+
+    public void sync(long lsn) {
+        commit(lsn);
+    }
+
+    private void encode(long lsn, Type type, String[] args) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            DataOutputStream data = new DataOutputStream(payload);
+
+            data.writeLong(lsn);
+            data.writeByte(type.ordinal());
+            data.writeShort(args.length);
+            for (String arg : args) {
+                if (arg == null) {
+                    data.writeInt(-1);
+                } else {
+                    byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                    data.writeInt(bytes.length);
+                    data.write(bytes);
+                }
+            }
+
+            byte[] bytes = payload.toByteArray();
+            CRC32C crc = new CRC32C();
+            crc.update(bytes);
+
+            pendingData.writeInt(bytes.length);
+            pendingData.writeInt((int) crc.getValue());
+            pendingData.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Garante que todos os registros até {@code lsn} estejam gravados e sincronizados.
+     * A primeira thread que encontra registros pendentes grava o lote inteiro; as outras esperam.
+     */
+
+    private void commit(long lsn) {
+        while (true) {
+            byte[] batch;
+            long batchLsn;
+
+            lock.lock();
+            try {
+                while (flushing && durableLsn < lsn) {
+                    flushed.awaitUninterruptibly();
+                }
+
+                if (durableLsn >= lsn) {
+                    return;
+                }
+                checkFailure();
+
+                flushing = true;
+                batch = pending.toByteArray();
+                batchLsn = nextLsn - 1;
+                pending.reset();
+            } finally {
+                lock.unlock();
+            }
+
+            boolean written = false;
+            IOException error = null;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                written = true;
+            } catch (IOException e) {
+                error = e;
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.lock();
+                try {
+                    flushing = false;
+                    if (written) {
+                        durableLsn = batchLsn;
+                    } else {
+                        failure = error != null ? error : new IOException("Gravação do lote interrompida");
+                    }
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Lança a falha de gravação anterior, se houver. Deve ser chamado com {@link #lock} adquirida.
+     */
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Log de operações indisponível após falha de gravação", failure);
+        }
+    }
+
+    /**
+     * Reaplica os registros do log com LSN maior que {@code afterLsn}.
+     * Um registro incompleto ou com checksum inválido no final do arquivo (escrita interrompida)
+     * encerra a leitura e é descartado.
+     *
+     * @param afterLsn LSN do último snapshot; registros anteriores já estão refletidos nele.
+     * @param consumer Função que aplica cada registro.
+     */
+
+    public void replay(long afterLsn, Consumer<Entry> consumer) {
+        lock.lock();
+        try {
+            replayLocked(afterLsn, consumer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void replayLocked(long afterLsn, Consumer<Entry> consumer) {
+        long validLength = 0;
+        long lastLsn = afterLsn;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] bytes;
+
+                try {
+                    length = input.readInt();
+                    checksum = input.readInt();
+                    if (length < 0) {
+                        break;
+                    }
+                    bytes = new byte[length];
+                    input.readFully(bytes);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                CRC32C crc = new CRC32C();
+                crc.update(bytes);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                Entry entry = decode(bytes);
+                validLength += HEADER_SIZE + length;
+                lastLsn = Math.max(lastLsn, entry.getLsn());
+
+                if (entry.getLsn() > afterLsn) {
+                    consumer.accept(entry);
+                }
+            }
+
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        this.nextLsn = lastLsn + 1;
+        this.durableLsn = lastLsn;
+    }
+
+    private Entry decode(byte[] bytes) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        long lsn = data.readLong();
+        Type type = Type.values()[data.readByte()];
+        String[] args = new String[data.readShort()];
+        for (int i = 0; i < args.length; i++) {
+            int length = data.readInt();
+            if (length >= 0) {
+                byte[] arg = new byte[length];
+                data.readFully(arg);
+                args[i] = new String(arg, StandardCharsets.UTF_8);
+            }
+        }
+        return new Entry(lsn, type, args);
+    }
+
+    /**
+     * Retorna o LSN do último registro gravado.
+     *
+     * @return O último LSN atribuído.
+     */
+
+    public long getLastLsn() {
+        lock.lock();
+        try {
+            return nextLsn - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Descarta todos os registros do log. Deve ser chamado após um snapshot que já contenha
+     * todas as operações até {@link #getLastLsn()}.
+     */
+
+    public void reset() {
+        lock.lock();
+        try {
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            pending.reset();
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fecha o arquivo de log.
+     */
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Conjunto de inteiros não negativos que preserva a ordem de inserção, usado para guardar as relações
+ * entre usuários pelos seus identificadores ({@link UserDirectory}).
+ *
+ * <p>Os elementos ficam em um vetor na ordem de inserção e uma tabela de endereçamento aberto (sondagem
+ * linear) guarda a posição de cada elemento nesse vetor. Elementos removidos deixam uma lacuna no vetor
+ * e uma marca na tabela, e ambos são compactados quando as lacunas passam a ocupar metade do vetor.
+ * Cada relação ocupa entre 12 e 24 bytes, sem objetos intermediários.</p>
+ *
+ * <p>Um conjunto pode ser lido sem travas por meio de um {@link #snapshot()}, que compartilha os vetores com
+ * o conjunto. Como um elemento adicionado só ocupa posições livres do vetor e da tabela, o conjunto continua
+ * adicionando nos vetores compartilhados; só a remoção e a limpeza, que alteram posições já ocupadas, copiam
+ * os vetores antes, se houver uma cópia de leitura sobre eles.</p>
+ */
+
+public class OrderedIntSet {
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+    private static final int REMOVED = -1;
+
+    private int[] elements;
+    private int[] table;
+    private int used = 0;
+    private int size = 0;
+    private int deleted = 0;
+    private int version = 0;
+    private boolean shared = false;
+
+    /**
+     * Cria um conjunto vazio.
+     */
+
+    public OrderedIntSet() {
+        this(4);
+    }
+
+    /**
+     * Cria um conjunto vazio com espaço para a quantidade de elementos informada.
+     *
+     * @param capacity A quantidade de elementos esperada.
+     */
+
+    public OrderedIntSet(int capacity) {
+        this.elements = new int[Math.max(4, capacity)];
+        this.table = new int[tableSizeFor(elements.length)];
+    }
+
+    private OrderedIntSet(OrderedIntSet source) {
+        this.elements = source.elements;
+        this.table = source.table;
+        this.used = source.used;
+        this.size = source.size;
+        this.deleted = source.deleted;
+        this.version = source.version;
+    }
+
+    /**
+     * Cria uma cópia de leitura do conjunto, com os mesmos elementos na mesma ordem e a mesma versão, em
+     * tempo constante: a cópia compartilha os vetores do conjunto e enxerga apenas os elementos adicionados
+     * até agora. A cópia nunca deve ser alterada; depois de publicada por uma referência {@code volatile},
+     * pode ser lida por várias threads sem travas enquanto o conjunto continua sendo alterado.
+     *
+     * @return A cópia de leitura.
+     */
+
+    public OrderedIntSet snapshot() {
+        shared = true;
+        return new OrderedIntSet(this);
+    }
+
+    /**
+     * @return A quantidade de elementos do conjunto.
+     */
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return {@code true} se o conjunto estiver vazio.
+     */
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Retorna um contador incrementado a cada alteração do conjunto, usado para invalidar valores derivados
+     * dele (como a sua representação formatada).
+     *
+     * @return A versão atual do conjunto.
+     */
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Verifica se o conjunto contém o valor informado.
+     *
+     * @param value O valor procurado. Valores negativos nunca estão no conjunto.
+     * @return {@code true} se o valor estiver no conjunto.
+     */
+
+    public boolean contains(int value) {
+        return value >= 0 && slotOf(value) >= 0;
+    }
+
+    /**
+     * Adiciona um valor ao final do conjunto, se ele ainda não estiver presente.
+     *
+     * @param value O valor a ser adicionado, não negativo.
+     * @return {@code true} se o valor foi adicionado.
+     */
+
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Valor negativo: " + value);
+        }
+        if (slotOf(value) >= 0) {
+            return false;
+        }
+
+        if (used == elements.length) {
+            if (deleted * 2 >= used) {
+                rebuild(elements.length);
+            } else {
+                rebuild(elements.length * 2);
+            }
+        }
+
+        elements[used] = value;
+        insert(value, used);
+        used++;
+        size++;
+        version++;
+        return true;
+    }
+
+    /**
+     * Remove um valor do conjunto.
+     *
+     * @param value O valor a ser removido.
+     * @return {@code true} se o valor estava no conjunto.
+     */
+
+    public boolean remove(int value) {
+        int slot = value >= 0 ? slotOf(value) : -1;
+        if (slot < 0) {
+            return false;
+        }
+
+        unshare();
+        elements[table[slot] - 1] = REMOVED;
+        table[slot] = DELETED;
+        size--;
+        deleted++;
+        version++;
+        return true;
+    }
+
+    /**
+     * Percorre os elementos na ordem de inserção.
+     *
+     * @param action A ação executada para cada elemento.
+     */
+
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < used; i++) {
+            if (elements[i] != REMOVED) {
+                action.accept(elements[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Os elementos do conjunto na ordem de inserção.
+     */
+
+    public int[] toArray() {
+        int[] array = new int[size];
+        int index = 0;
+        for (int i = 0; i < used; i++) {
+            if (elements[i] != REMOVED) {
+                array[index++] = elements[i];
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Remove todos os elementos do conjunto.
+     */
+
+    public void clear() {
+        if (shared) {
+            elements = new int[elements.length];
+            table = new int[table.length];
+            shared = false;
+        } else {
+            Arrays.fill(table, EMPTY);
+        }
+        used = 0;
+        size = 0;
+        deleted = 0;
+        version++;
+    }
+
+    /**
+     * Retorna a posição da tabela que referencia o valor, ou -1 se ele não estiver no conjunto.
+     */
+
+    private int slotOf(int value) {
+        int mask = table.length - 1;
+        for (int slot = hash(value) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry != DELETED && entry <= used && elements[entry - 1] == value) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Copia os vetores, se houver uma cópia de leitura sobre eles, antes de alterar uma posição já ocupada.
+     */
+
+    private void unshare() {
+        if (shared) {
+            elements = elements.clone();
+            table = table.clone();
+            shared = false;
+        }
+    }
+
+    private void insert(int value, int index) {
+        int mask = table.length - 1;
+        int slot = hash(value) & mask;
+        while (table[slot] != EMPTY && table[slot] != DELETED) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    /**
+     * Compacta o vetor de elementos, descartando as lacunas, e reconstrói a tabela.
+     */
+
+    private void rebuild(int capacity) {
+        int[] compacted = new int[capacity];
+        int count = 0;
+        for (int i = 0; i < used; i++) {
+            if (elements[i] != REMOVED) {
+                compacted[count++] = elements[i];
+            }
+        }
+
+        elements = compacted;
+        table = new int[tableSizeFor(capacity)];
+        used = count;
+        deleted = 0;
+        shared = false;
+        for (int i = 0; i < count; i++) {
+            insert(elements[i], i);
+        }
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    private static int hash(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
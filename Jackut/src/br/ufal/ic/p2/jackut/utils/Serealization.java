@@ -1,71 +1,513 @@
 package br.ufal.ic.p2.jackut.utils;
 
+import br.ufal.ic.p2.jackut.exceptions.serealization.CorruptedFileException;
+import br.ufal.ic.p2.jackut.models.Community;
 import br.ufal.ic.p2.jackut.models.UserAccount;
 
 import java.io.*;
-import java.util.HashMap;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 /**
- * Classe utilitria para serializao e desserializao de objetos.
+ * Classe utilitária para serialização e desserialização de objetos.
  * Essa classe permite armazenar e recuperar objetos do tipo {@link UserAccount}
+ *
+ * <p>Os arquivos lidos em sequência (deltas e mapas serializados) são gravados em um fluxo bufferizado e
+ * comprimido por blocos ({@link BlockDeflaterOutputStream}), com nível de compressão e tamanho de bloco
+ * configuráveis por {@link #setCompression(int, int)}. As estatísticas da última gravação e da última
+ * leitura ficam disponíveis em {@link #getLastWriteStats()} e {@link #getLastReadStats()}. O snapshot
+ * base não é comprimido, pois é mapeado em memória e lido por acesso aleatório.</p>
  */
 
 public class Serealization {
 
     /**
-     * Caminho do diretrio onde os arquivos de serializao sero armazenados.
+     * Nome da propriedade de sistema que define o diretório onde os arquivos de serialização serão
+     * armazenados. A propriedade é lida a cada acesso, então pode ser definida antes de criar o sistema.
      */
 
-    private static String pathFile = "src/br/ufal/ic/p2/jackut/database";
+    public static final String DATA_DIRECTORY_PROPERTY = "jackut.dataDir";
 
     /**
-     * Serializa um objeto do tipo {@link HashMap} contendo contas de usurios.
+     * Caminho do diretório usado quando a propriedade {@value #DATA_DIRECTORY_PROPERTY} não está definida.
+     */
+
+    private static final String DEFAULT_PATH_FILE = "src/br/ufal/ic/p2/jackut/database";
+
+    /**
+     * Nível de compressão do {@link Deflater} usado nas gravações.
+     */
+
+    private static int compressionLevel = Deflater.BEST_SPEED;
+
+    /**
+     * Tamanho, em bytes, dos blocos comprimidos independentemente.
+     */
+
+    private static int compressionBlockSize = 1 << 16;
+
+    private static volatile SerealizationStats lastWriteStats;
+    private static volatile SerealizationStats lastReadStats;
+
+    /**
+     * Executor de no máximo uma thread usado para compactar os deltas em segundo plano. A thread é
+     * encerrada assim que não há mais compactações pendentes e não é daemon, para que a JVM espere
+     * a compactação em andamento terminar antes de sair.
+     */
+
+    private static final ExecutorService compactor = new ThreadPoolExecutor(0, 1, 0, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "jackut-compactor"));
+
+    /**
+     * Retorna o caminho do diretório onde os arquivos de serialização são armazenados.
      *
-     * @param accounts Mapa contendo os usurios a serem serializados.
-     * @param fileName Nome do arquivo onde os dados sero armazenados.
+     * @return O valor da propriedade {@value #DATA_DIRECTORY_PROPERTY}, ou o diretório padrão.
      */
 
-    public static void serealizeObject(HashMap<String, ? extends Serializable> accounts, String fileName) {
+    private static String pathFile() {
+        return System.getProperty(DATA_DIRECTORY_PROPERTY, DEFAULT_PATH_FILE);
+    }
 
-        try {
-            File directory = new File(pathFile);
-            if (!directory.exists()) {
-                directory.mkdirs();
-            }
+    /**
+     * Retorna o diretório de dados do sistema.
+     *
+     * @return O diretório onde os arquivos de serialização são armazenados.
+     */
+
+    public static File getDatabaseDirectory() {
+        return new File(pathFile());
+    }
+
+    /**
+     * Retorna um arquivo dentro do diretório de dados do sistema.
+     *
+     * @param fileName Nome do arquivo, com extensão.
+     * @return O arquivo correspondente no diretório de dados.
+     */
+
+    public static File getDatabaseFile(String fileName) {
+        return new File(pathFile(), fileName);
+    }
+
+    /**
+     * Configura o modo de compressão das gravações. O nível {@link Deflater#NO_COMPRESSION} desativa a
+     * compressão, mantendo apenas o buffer; níveis maiores gastam mais CPU para gravar menos bytes.
+     *
+     * @param level     O nível de compressão, de 0 a 9, ou {@link Deflater#DEFAULT_COMPRESSION}.
+     * @param blockSize O tamanho, em bytes, dos blocos comprimidos.
+     * @throws IllegalArgumentException Se o nível ou o tamanho de bloco forem inválidos.
+     */
+
+    public static void setCompression(int level, int blockSize) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Nível de compressão inválido: " + level);
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Tamanho de bloco inválido: " + blockSize);
+        }
+
+        compressionLevel = level;
+        compressionBlockSize = blockSize;
+    }
+
+    /**
+     * @return As estatísticas da última gravação, ou {@code null} se nenhum arquivo foi gravado.
+     */
+
+    public static SerealizationStats getLastWriteStats() {
+        return lastWriteStats;
+    }
+
+    /**
+     * @return As estatísticas da última leitura de um arquivo comprimido, ou {@code null} se nenhum foi lido.
+     */
+
+    public static SerealizationStats getLastReadStats() {
+        return lastReadStats;
+    }
+
+    /**
+     * Serializa um objeto do tipo {@link HashMap} contendo contas de usuários. O arquivo é gravado em
+     * um arquivo temporário e publicado por {@link #publishFile(File, File)}, mantendo a geração anterior.
+     *
+     * @param accounts Mapa contendo os usuários a serem serializados.
+     * @param fileName Nome do arquivo onde os dados serão armazenados.
+     * @throws IOException Se ocorrer um erro de escrita; nesse caso o arquivo anterior continua intacto.
+     */
 
-            FileOutputStream fileOutputStream = new FileOutputStream(pathFile + File.separator + fileName + ".ser");
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream);
+    public static void serealizeObject(HashMap<String, ? extends Serializable> accounts, String fileName) throws IOException {
+        writeStream(new File(pathFile() + File.separator + fileName + ".ser"), out -> {
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
             objectOutputStream.writeObject(accounts);
-            objectOutputStream.close();
+            objectOutputStream.flush();
+        });
+    }
+
+    /**
+     * Desserializa um objeto do tipo {@code HashMap<String, UserAccount>} a partir de um arquivo.
+     *
+     * <p>O método tenta carregar um arquivo serializado contendo um mapa de usuários. Se o arquivo estiver
+     * ausente ou corrompido, a geração anterior é usada. Um novo {@code HashMap} vazio só é retornado
+     * se nenhuma das duas gerações existir.</p>
+     *
+     * @param fileName O nome do arquivo (sem a extensão) a ser desserializado.
+     * @return Um {@code HashMap<String, UserAccount>} contendo os usuários armazenados no arquivo
+     *         ou um mapa vazio se o arquivo não for encontrado.
+     * @throws IOException            Se nenhuma das gerações puder ser lida.
+     * @throws ClassNotFoundException Se uma classe serializada não for encontrada.
+     */
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Serializable> HashMap<String, T> deserializeObject(String fileName) throws IOException, ClassNotFoundException {
+        File file = new File(pathFile() + File.separator + fileName + ".ser");
+        File previous = getPreviousFile(file);
+        if (!file.exists() && !previous.exists()) {
+            return new HashMap<>();
+        }
+
+        StreamReader<HashMap<String, T>> reader = in -> (HashMap<String, T>) new ObjectInputStream(in).readObject();
+        try {
+            return readStream(file, reader);
         } catch (IOException e) {
+            if (!previous.exists()) {
+                throw e;
+            }
             e.printStackTrace();
+            return readStream(previous, reader);
         }
     }
 
     /**
-     * Desserializa um objeto do tipo {@code HashMap<String, UserAccount>} a partir de um arquivo.
+     * Publica um arquivo gravado em um arquivo temporário: a versão atual do destino, se existir, passa a ser
+     * a geração anterior ({@link #getPreviousFile(File)}) e o temporário é renomeado para o destino. As duas
+     * renomeações são atômicas, de modo que sempre existe ao menos uma geração completa no disco.
+     *
+     * @param temporary O arquivo temporário, já sincronizado com o disco.
+     * @param file      O arquivo de destino.
+     * @throws IOException Se alguma renomeação falhar.
+     */
+
+    public static void publishFile(File temporary, File file) throws IOException {
+        if (file.exists()) {
+            Files.move(file.toPath(), getPreviousFile(file).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        try (FileChannel directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Nem todos os sistemas permitem sincronizar um diretório; as renomeações continuam atômicas.
+        }
+    }
+
+    /**
+     * Retorna o arquivo da geração anterior de um arquivo de dados.
      *
-     * <p>O mtodo tenta carregar um arquivo serializado contendo um mapa de usurios.
-     * Se o arquivo no existir, um novo {@code HashMap} vazio ser retornado.</p>
+     * @param file O arquivo de dados.
+     * @return O arquivo com a geração anterior.
+     */
+
+    public static File getPreviousFile(File file) {
+        return new File(file.getPath() + ".prev");
+    }
+
+    /**
+     * Grava um {@link Delta} com as alterações feitas desde o checkpoint anterior. Antes disso, os arquivos
+     * de despejo das caixas de entrada ({@link SpillFile}) são sincronizados com o disco, já que o delta
+     * referencia os segmentos gravados neles.
+     *
+     * <p>Como cada delta tem um nome único, ele não tem uma geração anterior: em vez disso, é gravada uma
+     * cópia idêntica em {@link #getPreviousFile(File)}, usada por {@link #openSnapshot(String, List, UserDirectory)} se o
+     * arquivo principal estiver danificado. Deltas com sequência maior ou igual à do novo delta, que só podem
+     * ter sobrado de uma execução anterior que não os aplicou, são apagados antes da gravação.</p>
      *
-     * @param fileName O nome do arquivo (sem a extenso) a ser desserializado.
-     * @return Um {@code HashMap<String, UserAccount>} contendo os usurios armazenados no arquivo
-     *         ou um mapa vazio se o arquivo no for encontrado ou ocorrer um erro na desserializao.
+     * @param delta O delta a ser gravado.
+     * @return {@code true} se o delta e a sua cópia foram gravados; {@code false} se ocorreu um erro de escrita.
      */
 
-    public static <T extends Serializable> HashMap<String, T> deserializeObject(String fileName) {
+    public static synchronized boolean serealizeDelta(Delta delta) {
 
         try {
-            File file = new File(pathFile + File.separator + fileName + ".ser");
-            if (!file.exists()) {
-                return new HashMap<>();
+            for (long sequence : listDeltas()) {
+                if (sequence >= delta.getSequence()) {
+                    deleteDelta(sequence);
+                }
             }
 
-            ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(pathFile + File.separator + fileName + ".ser"));
-            return (HashMap<String, T>) objectInputStream.readObject();
-        } catch (Exception e) {
+            SpillFile.forceAll();
+            File file = getDeltaFile(delta.getSequence());
+            writeStream(file, out -> delta.write(new BinaryObjectOutput(out)));
+            copyFile(file, getPreviousFile(file));
+            return true;
+        } catch (IOException e) {
             e.printStackTrace();
         }
-        return new HashMap<>();
+        return false;
+    }
+
+    /**
+     * Copia um arquivo já publicado para outro destino, por meio de um temporário sincronizado com o disco e
+     * renomeado atomicamente.
+     */
+
+    private static void copyFile(File source, File target) throws IOException {
+        File temporary = new File(target.getPath() + ".tmp");
+        Files.copy(source.toPath(), temporary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Abre os shards do {@link ShardedSnapshot}, em paralelo, mapeando os arquivos em memória e lê os deltas
+     * gravados depois dele. As contas só são decodificadas quando forem pedidas ao {@link LazyUsersMap}
+     * criado sobre ele.
+     *
+     * <p>A abertura é feita com exclusão mútua em relação à compactação, para que nenhum delta
+     * seja apagado entre a leitura do snapshot e a leitura dos deltas.</p>
+     *
+     * <p>Os deltas precisam formar uma sequência contínua a partir do snapshot: o log só guarda as operações
+     * posteriores ao último checkpoint, então um delta que falta ou que não pode ser lido (nem a sua cópia)
+     * não pode ser reconstruído, e aplicar os deltas seguintes sobre um estado incompleto poderia ressuscitar
+     * contas ou sobrescrever registros mais novos. Nesse caso a abertura falha, em vez de continuar.</p>
+     *
+     * @param fileName  O prefixo dos arquivos dos shards do snapshot.
+     * @param deltas    Lista onde os deltas ainda não compactados no snapshot serão adicionados, em ordem.
+     * @param directory O diretório usado pelas comunidades e pelas contas lidas do snapshot e dos deltas.
+     * @return O snapshot aberto. Shards inexistentes ou danificados são tratados como vazios.
+     * @throws CorruptedFileException Se faltar um delta da sequência ou se um delta e a sua cópia estiverem
+     *                                danificados.
+     */
+
+    public static synchronized ShardedSnapshot openSnapshot(String fileName, List<Delta> deltas, UserDirectory directory) throws CorruptedFileException {
+
+        ShardedSnapshot snapshot = ShardedSnapshot.open(shard -> getShardFile(fileName, shard), ForkJoinPool.commonPool(), directory);
+
+        long expected = snapshot.getDeltaSequence() + 1;
+        for (long sequence : listDeltas()) {
+            if (sequence <= snapshot.getDeltaSequence()) {
+                continue;
+            }
+            if (sequence != expected) {
+                throw new CorruptedFileException("Delta " + expected + " ausente antes do delta " + sequence
+                        + " em " + pathFile() + "; os dados não podem ser carregados sem ele.");
+            }
+
+            deltas.add(readDelta(sequence, directory));
+            expected++;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Lê um delta, recorrendo à sua cópia se o arquivo principal estiver ausente ou danificado.
+     */
+
+    private static Delta readDelta(long sequence, UserDirectory directory) throws CorruptedFileException {
+        File file = getDeltaFile(sequence);
+        StreamReader<Delta> reader = in -> Delta.read(new BinaryObjectInput(in, directory));
+        try {
+            return readStream(file, reader);
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+
+        try {
+            return readStream(getPreviousFile(file), reader);
+        } catch (IOException | ClassNotFoundException e) {
+            CorruptedFileException error = new CorruptedFileException("Delta " + sequence + " e a sua cópia estão danificados em "
+                    + pathFile() + "; os dados não podem ser carregados sem eles.");
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    /**
+     * Agenda, em uma thread de fundo, a compactação dos deltas pendentes em um novo snapshot.
+     *
+     * <p>A compactação trabalha apenas com os arquivos: abre o snapshot atual, aplica os deltas sobre ele,
+     * copia sem decodificar as contas que nenhum delta alterou e grava os shards em paralelo, com o número
+     * do último delta incorporado. A geração anterior de cada shard é mantida; por isso só são apagados os
+     * deltas que ela também já incorporava, e um shard corrompido pode ser substituído pela geração anterior
+     * reaplicando apenas os deltas mais recentes.</p>
+     *
+     * <p>As contas e comunidades decodificadas pela compactação usam um {@link UserDirectory} próprio,
+     * descartado no final, e não o do sistema em execução.</p>
+     *
+     * @param fileName O prefixo dos arquivos dos shards do snapshot.
+     */
+
+    public static void compactSnapshot(String fileName) {
+        compactor.execute(() -> {
+            try {
+                ArrayList<Delta> deltas = new ArrayList<>();
+                ShardedSnapshot base = openSnapshot(fileName, deltas, new UserDirectory());
+                if (deltas.isEmpty()) {
+                    return;
+                }
+
+                LazyUsersMap usersMap = new LazyUsersMap(base);
+                HashMap<String, Community> communityMap = base.getCommunityMap();
+                for (Delta delta : deltas) {
+                    delta.applyTo(usersMap, communityMap);
+                }
+
+                Delta last = deltas.get(deltas.size() - 1);
+                ShardedSnapshot.write(shard -> getShardFile(fileName, shard), last.getLsn(), last.getSequence(), usersMap, communityMap, ForkJoinPool.commonPool());
+
+                synchronized (Serealization.class) {
+                    for (long sequence : listDeltas()) {
+                        if (sequence <= base.getDeltaSequence()) {
+                            deleteDelta(sequence);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Espera o fim das compactações agendadas por {@link #compactSnapshot(String)} até o momento.
+     *
+     * @throws InterruptedException Se a thread for interrompida durante a espera.
+     */
+
+    public static void awaitCompaction() throws InterruptedException {
+        try {
+            compactor.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Grava um arquivo por meio de um fluxo comprimido por blocos. O conteúdo é escrito em um arquivo
+     * temporário, sincronizado com o disco e então publicado por {@link #publishFile(File, File)}.
+     *
+     * @param file   O arquivo de destino.
+     * @param writer O código que grava o conteúdo no fluxo.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    private static void writeStream(File file, StreamWriter writer) throws IOException {
+        File directory = file.getParentFile();
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        long start = System.nanoTime();
+        File temporary = new File(file.getPath() + ".tmp");
+        BlockDeflaterOutputStream out;
+        long syncNanos;
+
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out = new BlockDeflaterOutputStream(Channels.newOutputStream(channel), compressionLevel, compressionBlockSize);
+            writer.write(out);
+            out.finish();
+
+            long syncStart = System.nanoTime();
+            channel.force(true);
+            syncNanos = System.nanoTime() - syncStart;
+        }
+
+        publishFile(temporary, file);
+
+        long total = System.nanoTime() - start;
+        lastWriteStats = new SerealizationStats(file.getName(), out.getRawBytes(), out.getStoredBytes(),
+                total - out.getCompressNanos() - out.getWriteNanos() - syncNanos, out.getCompressNanos(), out.getWriteNanos(), syncNanos);
+    }
+
+    /**
+     * Lê um arquivo gravado por {@link #writeStream(File, StreamWriter)}. Arquivos gravados antes do modo
+     * comprimido, que não começam com {@link BlockDeflaterOutputStream#MAGIC}, são lidos diretamente.
+     *
+     * @param file   O arquivo de origem.
+     * @param reader O código que lê o conteúdo do fluxo.
+     * @return O valor lido.
+     * @throws IOException            Se ocorrer um erro de leitura.
+     * @throws ClassNotFoundException Se uma classe serializada não for encontrada.
+     */
+
+    private static <T> T readStream(File file, StreamReader<T> reader) throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), compressionBlockSize)) {
+            in.mark(4);
+            int magic = (in.read() << 24) | (in.read() << 16) | (in.read() << 8) | in.read();
+            in.reset();
+            if (magic != BlockDeflaterOutputStream.MAGIC) {
+                return reader.read(in);
+            }
+
+            BlockInflaterInputStream inflater = new BlockInflaterInputStream(in);
+            T value = reader.read(inflater);
+
+            long total = System.nanoTime() - start;
+            lastReadStats = new SerealizationStats(file.getName(), inflater.getRawBytes(), file.length(),
+                    total - inflater.getDecompressNanos() - inflater.getReadNanos(), inflater.getDecompressNanos(), inflater.getReadNanos(), 0);
+            return value;
+        }
+    }
+
+    /**
+     * Código que grava o conteúdo de um arquivo em um fluxo.
+     */
+
+    private interface StreamWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Código que lê o conteúdo de um arquivo a partir de um fluxo.
+     */
+
+    private interface StreamReader<T> {
+        T read(InputStream in) throws IOException, ClassNotFoundException;
+    }
+
+    private static File getShardFile(String fileName, int shard) {
+        return new File(pathFile(), fileName + "-" + shard + ".ser");
+    }
+
+    private static File getDeltaFile(long sequence) {
+        return new File(pathFile(), "delta-" + sequence + ".ser");
+    }
+
+    private static void deleteDelta(long sequence) throws IOException {
+        File file = getDeltaFile(sequence);
+        Files.deleteIfExists(file.toPath());
+        Files.deleteIfExists(getPreviousFile(file).toPath());
+    }
+
+    /**
+     * Lista, em ordem crescente e sem repetições, as sequências dos deltas presentes no diretório de dados,
+     * incluindo os que só têm a cópia.
+     */
+
+    private static long[] listDeltas() {
+        String[] names = new File(pathFile()).list((directory, name) -> name.matches("delta-\\d+\\.ser(\\.prev)?"));
+        if (names == null) {
+            return new long[0];
+        }
+
+        TreeSet<Long> sequences = new TreeSet<>();
+        for (String name : names) {
+            sequences.add(Long.parseLong(name.substring("delta-".length(), name.indexOf(".ser"))));
+        }
+        return sequences.stream().mapToLong(Long::longValue).toArray();
     }
 }
@@ -0,0 +1,102 @@
+package br.ufal.ic.p2.jackut.utils;
+
+/**
+ * Estatísticas da última gravação ou leitura de um arquivo pela {@link Serealization}: quantidade de bytes
+ * antes e depois da compressão e o tempo gasto em cada fase.
+ */
+
+public class SerealizationStats {
+    private final String fileName;
+    private final long rawBytes;
+    private final long diskBytes;
+    private final long codecNanos;
+    private final long compressionNanos;
+    private final long ioNanos;
+    private final long syncNanos;
+
+    /**
+     * Cria as estatísticas de uma operação.
+     *
+     * @param fileName         O nome do arquivo.
+     * @param rawBytes         Bytes antes da compressão (escritos pela serialização ou entregues à desserialização).
+     * @param diskBytes        Bytes ocupados no disco.
+     * @param codecNanos       Tempo de serialização ou desserialização dos objetos.
+     * @param compressionNanos Tempo de compressão ou descompressão.
+     * @param ioNanos          Tempo de escrita ou leitura do arquivo.
+     * @param syncNanos        Tempo de sincronização com o disco ({@code fsync}); zero nas leituras.
+     */
+
+    public SerealizationStats(String fileName, long rawBytes, long diskBytes, long codecNanos,
+                              long compressionNanos, long ioNanos, long syncNanos) {
+        this.fileName = fileName;
+        this.rawBytes = rawBytes;
+        this.diskBytes = diskBytes;
+        this.codecNanos = codecNanos;
+        this.compressionNanos = compressionNanos;
+        this.ioNanos = ioNanos;
+        this.syncNanos = syncNanos;
+    }
+
+    /**
+     * @return O nome do arquivo.
+     */
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return Os bytes antes da compressão.
+     */
+
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * @return Os bytes ocupados no disco.
+     */
+
+    public long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /**
+     * @return O tempo, em nanossegundos, de serialização ou desserialização dos objetos.
+     */
+
+    public long getCodecNanos() {
+        return codecNanos;
+    }
+
+    /**
+     * @return O tempo, em nanossegundos, de compressão ou descompressão.
+     */
+
+    public long getCompressionNanos() {
+        return compressionNanos;
+    }
+
+    /**
+     * @return O tempo, em nanossegundos, de escrita ou leitura do arquivo.
+     */
+
+    public long getIoNanos() {
+        return ioNanos;
+    }
+
+    /**
+     * @return O tempo, em nanossegundos, de sincronização com o disco.
+     */
+
+    public long getSyncNanos() {
+        return syncNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d bytes -> %d bytes em disco (%.1f%%); serialização %.2f ms, compressão %.2f ms, E/S %.2f ms, fsync %.2f ms",
+                fileName, rawBytes, diskBytes, rawBytes == 0 ? 100.0 : 100.0 * diskBytes / rawBytes,
+                codecNanos / 1e6, compressionNanos / 1e6, ioNanos / 1e6, syncNanos / 1e6);
+    }
+}
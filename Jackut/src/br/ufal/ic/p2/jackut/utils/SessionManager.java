@@ -0,0 +1,372 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import br.ufal.ic.p2.jackut.models.UserAccount;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Guarda as sessões abertas, associando cada identificador de sessão à conta do usuário que a abriu.
+ *
+ * <p>Uma sessão expira depois de ficar {@code idleTimeout} milissegundos sem ser usada ou
+ * {@code absoluteTimeout} milissegundos depois de aberta, o que ocorrer primeiro, e a quantidade de sessões
+ * abertas é limitada a {@code maxSessions}: ao abrir uma sessão além do limite, a sessão mais próxima de
+ * expirar é encerrada. Uma sessão expirada é descartada assim que é consultada e, mesmo que nunca mais seja
+ * consultada, por uma roda de temporização ({@code timing wheel}): cada sessão fica na posição da roda
+ * correspondente ao seu prazo, e as threads que abrem sessões varrem as posições cujo prazo já passou.
+ * Usar uma sessão apenas atualiza o seu último acesso; ela só muda de posição quando a varredura a encontra
+ * ainda válida.</p>
+ *
+ * <p>As sessões também são indexadas pela conta que as abriu, de modo que encerrar as sessões de uma conta
+ * ({@link #closeAll(UserAccount)}) percorre apenas as sessões dela.</p>
+ *
+ * <p>Os identificadores são gerados por um conjunto de geradores {@link SecureRandom} independentes,
+ * escolhidos pela thread que abre a sessão, em vez do gerador único compartilhado por
+ * {@link UUID#randomUUID()}. Eles mantêm o formato de um UUID.</p>
+ */
+
+public class SessionManager {
+
+    /**
+     * Tempo padrão, em milissegundos, que uma sessão pode ficar sem uso: 30 minutos.
+     */
+
+    public static final long DEFAULT_IDLE_TIMEOUT = 30 * 60 * 1000L;
+
+    /**
+     * Tempo padrão máximo, em milissegundos, de uma sessão desde a sua abertura: 12 horas.
+     */
+
+    public static final long DEFAULT_ABSOLUTE_TIMEOUT = 12 * 60 * 60 * 1000L;
+
+    /**
+     * Quantidade padrão máxima de sessões abertas.
+     */
+
+    public static final int DEFAULT_MAX_SESSIONS = 1 << 18;
+
+    private static final int WHEEL_SLOTS = 256;
+
+    private static final SecureRandom[] GENERATORS = createGenerators();
+
+    private final long idleTimeout;
+    private final long absoluteTimeout;
+    private final int maxSessions;
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * As sessões de cada conta. Os conjuntos só são alterados dentro das operações atômicas do mapa, e a
+     * entrada de uma conta é removida quando o seu conjunto fica vazio.
+     */
+
+    private final ConcurrentHashMap<UserAccount, HashSet<Session>> sessionsByAccount = new ConcurrentHashMap<>();
+    private final AtomicLong closings = new AtomicLong();
+
+    /**
+     * Posições da roda, cada uma com as sessões cujo prazo cai no seu intervalo de {@link #tick} milissegundos.
+     * Protegidas pelo monitor de {@code wheel}.
+     */
+
+    private final ArrayList<Session>[] wheel;
+    private final long tick;
+    private volatile long sweptTick;
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    /**
+     * Cria o gerenciador com os prazos e o limite padrão.
+     */
+
+    public SessionManager() {
+        this(DEFAULT_IDLE_TIMEOUT, DEFAULT_ABSOLUTE_TIMEOUT, DEFAULT_MAX_SESSIONS, () -> System.nanoTime() / 1_000_000);
+    }
+
+    /**
+     * Cria o gerenciador.
+     *
+     * @param idleTimeout     O tempo, em milissegundos, que uma sessão pode ficar sem uso.
+     * @param absoluteTimeout O tempo máximo, em milissegundos, de uma sessão desde a sua abertura.
+     * @param maxSessions     A quantidade máxima de sessões abertas.
+     * @param clock           O relógio, em milissegundos, usado para calcular os prazos.
+     */
+
+    @SuppressWarnings("unchecked")
+    public SessionManager(long idleTimeout, long absoluteTimeout, int maxSessions, LongSupplier clock) {
+        if (idleTimeout <= 0 || absoluteTimeout <= 0 || maxSessions <= 0) {
+            throw new IllegalArgumentException("Prazos e limite de sessões devem ser positivos");
+        }
+
+        this.idleTimeout = idleTimeout;
+        this.absoluteTimeout = absoluteTimeout;
+        this.maxSessions = maxSessions;
+        this.clock = clock;
+        this.tick = Math.max(1, Math.min(idleTimeout, absoluteTimeout) / (WHEEL_SLOTS / 2));
+        this.wheel = (ArrayList<Session>[]) new ArrayList<?>[WHEEL_SLOTS];
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.sweptTick = clock.getAsLong() / tick;
+    }
+
+    /**
+     * Abre uma sessão para a conta informada, encerrando antes as sessões expiradas e, se o limite tiver
+     * sido atingido, a sessão mais próxima de expirar.
+     *
+     * @param account A conta do usuário autenticado.
+     * @return O identificador da nova sessão.
+     */
+
+    public String open(UserAccount account) {
+        long now = clock.getAsLong();
+        sweep(now);
+        if (sessions.size() >= maxSessions) {
+            evictOne();
+        }
+
+        String token = newToken();
+        Session session = new Session(token, account, now);
+        sessionsByAccount.compute(account, (owner, owned) -> {
+            HashSet<Session> result = owned != null ? owned : new HashSet<>();
+            result.add(session);
+            return result;
+        });
+        sessions.put(token, session);
+        schedule(session, session.deadline(idleTimeout, absoluteTimeout));
+        return token;
+    }
+
+    /**
+     * Retorna a conta da sessão informada e registra o acesso à sessão.
+     *
+     * @param token O identificador da sessão, ou {@code null}.
+     * @return A conta da sessão, ou {@code null} se ela não existir ou tiver expirado.
+     */
+
+    public UserAccount get(String token) {
+        Session session = token == null ? null : sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+
+        long now = clock.getAsLong();
+        if (now >= session.deadline(idleTimeout, absoluteTimeout)) {
+            discard(session);
+            return null;
+        }
+        if (now - session.lastAccess >= tick) {
+            session.lastAccess = now;
+        }
+        return session.account;
+    }
+
+    /**
+     * Encerra todas as sessões abertas pela conta informada.
+     *
+     * @param account A conta do usuário.
+     */
+
+    public void closeAll(UserAccount account) {
+        HashSet<Session> owned = sessionsByAccount.remove(account);
+        if (owned != null) {
+            for (Session session : owned) {
+                sessions.remove(session.token, session);
+            }
+        }
+        closings.incrementAndGet();
+    }
+
+    /**
+     * Encerra todas as sessões abertas.
+     */
+
+    public void closeAll() {
+        for (Session session : sessions.values()) {
+            discard(session);
+        }
+        closings.incrementAndGet();
+    }
+
+    /**
+     * Retorna quantas vezes sessões foram encerradas antes do prazo, por {@link #closeAll(UserAccount)},
+     * {@link #closeAll()} ou pelo limite de sessões. Quem guarda por um tempo a conta de uma sessão pode reutilizá-la enquanto esse
+     * número não mudar.
+     *
+     * @return A quantidade de encerramentos antecipados até agora.
+     */
+
+    public long getClosings() {
+        return closings.get();
+    }
+
+    /**
+     * @return A quantidade de sessões abertas, incluindo as expiradas que ainda não foram varridas.
+     */
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Varre as posições da roda cujo prazo já passou, descartando as sessões expiradas e reposicionando as
+     * que foram usadas desde que entraram na roda. Apenas uma thread varre por vez; as outras seguem sem
+     * esperar.
+     */
+
+    private void sweep(long now) {
+        long nowTick = now / tick;
+        if (nowTick <= sweptTick || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long first = Math.max(sweptTick + 1, nowTick - WHEEL_SLOTS + 1);
+            for (long current = first; current <= nowTick; current++) {
+                ArrayList<Session> due;
+                synchronized (wheel) {
+                    int slot = (int) (current % WHEEL_SLOTS);
+                    due = wheel[slot];
+                    wheel[slot] = new ArrayList<>();
+                    sweptTick = current;
+                }
+                for (Session session : due) {
+                    revisit(session, now);
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private void revisit(Session session, long now) {
+        if (sessions.get(session.token) != session) {
+            return;
+        }
+
+        long deadline = session.deadline(idleTimeout, absoluteTimeout);
+        if (now >= deadline) {
+            discard(session);
+        } else {
+            schedule(session, deadline);
+        }
+    }
+
+    /**
+     * Encerra a sessão ainda aberta mais próxima de expirar, procurando a partir da próxima posição a ser
+     * varrida.
+     */
+
+    private void evictOne() {
+        synchronized (wheel) {
+            for (int i = 1; i <= WHEEL_SLOTS; i++) {
+                ArrayList<Session> slot = wheel[(int) ((sweptTick + i) % WHEEL_SLOTS)];
+                while (!slot.isEmpty()) {
+                    Session session = slot.remove(slot.size() - 1);
+                    if (discard(session)) {
+                        closings.incrementAndGet();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Encerra a sessão, se ela ainda estiver aberta, e a retira do índice da sua conta.
+     *
+     * @return {@code true} se a sessão estava aberta.
+     */
+
+    private boolean discard(Session session) {
+        if (!sessions.remove(session.token, session)) {
+            return false;
+        }
+
+        sessionsByAccount.computeIfPresent(session.account, (owner, owned) -> {
+            owned.remove(session);
+            return owned.isEmpty() ? null : owned;
+        });
+        return true;
+    }
+
+    /**
+     * Coloca a sessão na posição da roda do seu prazo. Prazos além de uma volta completa ficam na última
+     * posição alcançável e são reposicionados quando ela for varrida.
+     */
+
+    private void schedule(Session session, long deadline) {
+        synchronized (wheel) {
+            long deadlineTick = Math.min(deadline / tick, sweptTick + WHEEL_SLOTS - 1);
+            wheel[(int) (Math.max(deadlineTick, sweptTick + 1) % WHEEL_SLOTS)].add(session);
+        }
+    }
+
+    /**
+     * Gera um identificador com 122 bits aleatórios, no formato de um UUID da versão 4.
+     */
+
+    private static String newToken() {
+        int stripe = (int) Thread.currentThread().threadId() & (GENERATORS.length - 1);
+        byte[] bytes = new byte[16];
+        GENERATORS[stripe].nextBytes(bytes);
+        bytes[6] = (byte) ((bytes[6] & 0x0F) | 0x40);
+        bytes[8] = (byte) ((bytes[8] & 0x3F) | 0x80);
+
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (bytes[i] & 0xFF);
+            low = (low << 8) | (bytes[i + 8] & 0xFF);
+        }
+        return new UUID(high, low).toString();
+    }
+
+    /**
+     * Cria um gerador para cada duas threads de CPU (arredondado para uma potência de 2). Cada gerador
+     * tem o seu próprio estado e a sua própria trava, de modo que threads em geradores diferentes não
+     * disputam a mesma trava. Os geradores SHA1PRNG obtêm a sua semente da fonte de entropia do sistema no
+     * primeiro uso e, depois disso, não leem mais o dispositivo de entropia a cada identificador.
+     */
+
+    private static SecureRandom[] createGenerators() {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        SecureRandom[] generators = new SecureRandom[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                generators[i] = SecureRandom.getInstance("SHA1PRNG");
+            } catch (NoSuchAlgorithmException e) {
+                generators[i] = new SecureRandom();
+            }
+        }
+        return generators;
+    }
+
+    /**
+     * Uma sessão aberta.
+     */
+
+    private static final class Session {
+        private final String token;
+        private final UserAccount account;
+        private final long openedAt;
+        private volatile long lastAccess;
+
+        private Session(String token, UserAccount account, long openedAt) {
+            this.token = token;
+            this.account = account;
+            this.openedAt = openedAt;
+            this.lastAccess = openedAt;
+        }
+
+        private long deadline(long idleTimeout, long absoluteTimeout) {
+            return Math.min(lastAccess + idleTimeout, openedAt + absoluteTimeout);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import br.ufal.ic.p2.jackut.models.Community;
+import br.ufal.ic.p2.jackut.models.UserAccount;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Snapshot do sistema Jackut dividido em {@link #SHARD_COUNT} arquivos ({@link Snapshot}), particionados
+ * pelo hash do login. Cada comunidade fica no shard do login do seu dono.
+ *
+ * <p>Os shards são abertos e gravados em paralelo em um {@link ForkJoinPool}. Um shard ausente ou corrompido
+ * é substituído pela sua geração anterior ({@link Serealization#getPreviousFile(File)}); se ela também não
+ * puder ser lida, o shard é tratado como vazio, sem impedir a abertura dos demais.</p>
+ */
+
+public class ShardedSnapshot {
+
+    /**
+     * Quantidade de shards em que os usuários são particionados.
+     */
+
+    public static final int SHARD_COUNT = 8;
+
+    private final Snapshot[] shards;
+    private final boolean[] fromPrevious;
+    private final int[] offsets;
+    private final long lsn;
+    private final long deltaSequence;
+    private final HashMap<String, Community> communityMap;
+
+    private ShardedSnapshot(Snapshot[] shards, boolean[] fromPrevious, long lsn, long deltaSequence, HashMap<String, Community> communityMap) {
+        this.shards = shards;
+        this.fromPrevious = fromPrevious;
+        this.offsets = new int[shards.length + 1];
+        for (int i = 0; i < shards.length; i++) {
+            offsets[i + 1] = offsets[i] + shards[i].getUserCount();
+        }
+        this.lsn = lsn;
+        this.deltaSequence = deltaSequence;
+        this.communityMap = communityMap;
+    }
+
+    /**
+     * Cria um snapshot vazio, usado quando ainda não há dados salvos.
+     *
+     * @return Um snapshot sem usuários nem comunidades.
+     */
+
+    public static ShardedSnapshot empty() {
+        Snapshot[] shards = new Snapshot[SHARD_COUNT];
+        Arrays.fill(shards, Snapshot.empty());
+        return new ShardedSnapshot(shards, new boolean[SHARD_COUNT], 0, 0, new HashMap<>());
+    }
+
+    /**
+     * Retorna o shard onde fica o login informado.
+     *
+     * @param login O login do usuário.
+     * @return O índice do shard, entre 0 e {@link #SHARD_COUNT} - 1.
+     */
+
+    public static int shardOf(String login) {
+        return Math.floorMod(login.hashCode(), SHARD_COUNT);
+    }
+
+    /**
+     * Abre todos os shards em paralelo. Shards inexistentes ou danificados são tratados como vazios.
+     *
+     * <p>O LSN do snapshot é o maior entre os shards e a sequência de delta é a menor, de modo que,
+     * se uma compactação for interrompida entre a troca de dois shards, os deltas ainda não
+     * incorporados por algum deles voltam a ser aplicados (aplicar um delta é idempotente).</p>
+     *
+     * @param files     Função que retorna o arquivo de cada shard.
+     * @param pool      O pool onde os shards serão abertos.
+     * @param directory O diretório usado pelas comunidades e pelas contas lidas do snapshot.
+     * @return O snapshot aberto.
+     */
+
+    public static ShardedSnapshot open(IntFunction<File> files, ForkJoinPool pool, UserDirectory directory) {
+        boolean[] fromPrevious = new boolean[SHARD_COUNT];
+        ArrayList<Callable<Snapshot>> tasks = new ArrayList<>();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            int shard = i;
+            tasks.add(() -> {
+                File file = files.apply(shard);
+                Snapshot snapshot = openShard(file, shard, directory);
+                if (snapshot == null) {
+                    snapshot = openShard(Serealization.getPreviousFile(file), shard, directory);
+                    fromPrevious[shard] = snapshot != null;
+                }
+                return snapshot;
+            });
+        }
+
+        Snapshot[] shards = new Snapshot[SHARD_COUNT];
+        List<Future<Snapshot>> futures = pool.invokeAll(tasks);
+        long lsn = 0;
+        long deltaSequence = Long.MAX_VALUE;
+        int communityCount = 0;
+
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            try {
+                shards[i] = futures.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+
+            if (shards[i] == null) {
+                shards[i] = Snapshot.empty();
+            } else {
+                lsn = Math.max(lsn, shards[i].getLsn());
+                deltaSequence = Math.min(deltaSequence, shards[i].getDeltaSequence());
+                communityCount += shards[i].getCommunityMap().size();
+            }
+        }
+
+        HashMap<String, Community> communityMap = new HashMap<>(Math.max(16, (int) (communityCount / 0.75f) + 1));
+        for (Snapshot shard : shards) {
+            communityMap.putAll(shard.getCommunityMap());
+        }
+
+        return new ShardedSnapshot(shards, fromPrevious, lsn, deltaSequence == Long.MAX_VALUE ? 0 : deltaSequence, communityMap);
+    }
+
+    /**
+     * Abre um shard, retornando {@code null} se o arquivo não existir ou estiver danificado.
+     */
+
+    private static Snapshot openShard(File file, int shard, UserDirectory directory) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            Snapshot snapshot = Snapshot.open(file, directory);
+            if (snapshot.getShardIndex() != shard || snapshot.getShardCount() != SHARD_COUNT) {
+                throw new InvalidObjectException("Shard " + file.getName() + " não corresponde à partição esperada.");
+            }
+            return snapshot;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Grava todos os shards em paralelo. As contas que não foram carregadas do snapshot anterior são
+     * copiadas sem serem decodificadas, cada uma a partir do shard anterior correspondente.
+     *
+     * <p>Se um shard do snapshot anterior foi lido da geração anterior, o arquivo atual (corrompido) é
+     * descartado antes da gravação, para que a geração anterior válida continue preservada.</p>
+     *
+     * @param files         Função que retorna o arquivo de cada shard.
+     * @param lsn           LSN da última operação contida no snapshot.
+     * @param deltaSequence Sequência do último delta compactado no snapshot.
+     * @param usersMap      O mapa de usuários.
+     * @param communityMap  O mapa de comunidades.
+     * @param pool          O pool onde os shards serão gravados.
+     * @throws IOException Se a gravação de algum shard falhar.
+     */
+
+    public static void write(IntFunction<File> files, long lsn, long deltaSequence, LazyUsersMap usersMap,
+                             Map<String, Community> communityMap, ForkJoinPool pool) throws IOException {
+        ArrayList<List<UserAccount>> users = new ArrayList<>();
+        ArrayList<List<Community>> communities = new ArrayList<>();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            users.add(new ArrayList<>());
+            communities.add(new ArrayList<>());
+        }
+        for (UserAccount userAccount : usersMap.getLoaded()) {
+            users.get(shardOf(userAccount.getLogin())).add(userAccount);
+        }
+        for (Community community : communityMap.values()) {
+            communities.get(shardOf(community.getOwner())).add(community);
+        }
+
+        ShardedSnapshot base = usersMap.getBase();
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            int shard = i;
+            tasks.add(() -> {
+                if (base.fromPrevious[shard]) {
+                    Files.deleteIfExists(files.apply(shard).toPath());
+                }
+                Snapshot.write(files.apply(shard), lsn, deltaSequence, shard, SHARD_COUNT, users.get(shard),
+                        base.shards[shard], usersMap::isShadowed, communities.get(shard));
+                return null;
+            });
+        }
+
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw new IOException("Falha ao gravar um shard do snapshot.", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * @return O LSN da última operação contida no snapshot.
+     */
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    /**
+     * @return O número de sequência do último {@link Delta} incorporado por todos os shards.
+     */
+
+    public long getDeltaSequence() {
+        return deltaSequence;
+    }
+
+    /**
+     * @return A quantidade de contas gravadas em todos os shards.
+     */
+
+    public int getUserCount() {
+        return offsets[shards.length];
+    }
+
+    /**
+     * @return O mapa de comunidades de todos os shards.
+     */
+
+    public HashMap<String, Community> getCommunityMap() {
+        return communityMap;
+    }
+
+    /**
+     * Verifica se o snapshot contém a conta informada, sem decodificá-la.
+     *
+     * @param login O login do usuário.
+     * @return {@code true} se a conta estiver no snapshot.
+     */
+
+    public boolean containsUser(String login) {
+        return shards[shardOf(login)].containsUser(login);
+    }
+
+    /**
+     * Decodifica a conta informada a partir do shard correspondente.
+     *
+     * @param login O login do usuário.
+     * @return A conta decodificada, ou {@code null} se ela não estiver no snapshot.
+     */
+
+    public UserAccount readUser(String login) {
+        return shards[shardOf(login)].readUser(login);
+    }
+
+    /**
+     * Retorna os logins das contas com recados ou mensagens despejados em um {@link SpillFile}, sem
+     * decodificá-las.
+     *
+     * @return Os logins de todos os shards.
+     */
+
+    public List<String> getSpilledLogins() {
+        ArrayList<String> logins = new ArrayList<>();
+        for (Snapshot shard : shards) {
+            logins.addAll(shard.getSpilledLogins());
+        }
+        return logins;
+    }
+
+    /**
+     * Retorna o login da conta na posição {@code index}, contando os shards em sequência.
+     */
+
+    String loginAt(int index) {
+        int shard = Arrays.binarySearch(offsets, index);
+        if (shard < 0) {
+            shard = -shard - 2;
+        } else {
+            while (offsets[shard + 1] == index) {
+                shard++;
+            }
+        }
+        return shards[shard].loginAt(index - offsets[shard]);
+    }
+}
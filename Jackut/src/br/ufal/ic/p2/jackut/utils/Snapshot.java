@@ -0,0 +1,563 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import br.ufal.ic.p2.jackut.exceptions.serealization.CorruptedFileException;
+import br.ufal.ic.p2.jackut.models.Community;
+import br.ufal.ic.p2.jackut.models.UserAccount;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+
+/**
+ * Shard do snapshot do sistema Jackut mapeado em memória ({@link FileChannel#map}). Os shards são
+ * agrupados por {@link ShardedSnapshot}.
+ *
+ * <p>As contas de usuário não são decodificadas ao abrir o arquivo: um índice ordenado por login
+ * aponta para o registro binário de cada conta, que só é lido quando solicitado (ver {@link LazyUsersMap}).
+ * Assim, o tempo de abertura não depende da quantidade de usuários. As comunidades, bem menores,
+ * são carregadas imediatamente.</p>
+ *
+ * <p>Layout do arquivo:</p>
+ * <pre>
+ * cabeçalho (68 bytes): MAGIC, FORMAT_VERSION, lsn, último delta compactado, shard, qtdShards, qtdUsuarios, qtdComunidades,
+ *                       posIndice, posComunidades, posChecksums, crc32c do cabeçalho
+ * registros das contas ({@link UserAccount#writeExternal}), começando pelo login
+ * índice: qtdUsuarios entradas [posRegistro:long][tamanho:int], ordenadas pelos bytes UTF-8 do login; o bit
+ *         mais alto do tamanho marca as contas com recados ou mensagens despejados em um {@link SpillFile}
+ * comunidades ({@link Community#writeExternal})
+ * checksums: um CRC32C para cada bloco de {@code CHECKSUM_BLOCK_SIZE} bytes entre o cabeçalho e posChecksums
+ * </pre>
+ *
+ * <p>Todos os checksums são verificados ao abrir o arquivo, de modo que um shard corrompido é detectado
+ * antes de qualquer conta ser lida dele.</p>
+ */
+
+public class Snapshot {
+
+    /**
+     * Identificador gravado no início de todo snapshot.
+     */
+
+    public static final int MAGIC = 0x4A4B5554;
+
+    /**
+     * Versão atual do formato binário do snapshot.
+     */
+
+    public static final int FORMAT_VERSION = 10;
+
+    private static final int HEADER_SIZE = 68;
+    private static final int CHECKSUM_BLOCK_SIZE = 1 << 16;
+    private static final int INDEX_ENTRY_SIZE = 12;
+    private static final int SPILLED_FLAG = Integer.MIN_VALUE;
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final MappedByteBuffer[] segments;
+    private final long lsn;
+    private final long deltaSequence;
+    private final int shardIndex;
+    private final int shardCount;
+    private final int userCount;
+    private final long indexOffset;
+    private final HashMap<String, Community> communityMap;
+    private final UserDirectory directory;
+
+    private Snapshot(MappedByteBuffer[] segments, long lsn, long deltaSequence, int shardIndex, int shardCount, int userCount, long indexOffset, HashMap<String, Community> communityMap,
+                     UserDirectory directory) {
+        this.segments = segments;
+        this.lsn = lsn;
+        this.deltaSequence = deltaSequence;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.userCount = userCount;
+        this.indexOffset = indexOffset;
+        this.communityMap = communityMap;
+        this.directory = directory;
+    }
+
+    /**
+     * Cria um snapshot vazio, usado quando ainda não há dados salvos.
+     *
+     * @return Um snapshot sem usuários nem comunidades.
+     */
+
+    public static Snapshot empty() {
+        return new Snapshot(new MappedByteBuffer[0], 0, 0, 0, 0, 0, 0, new HashMap<>(), null);
+    }
+
+    /**
+     * Abre um snapshot, mapeando o arquivo em memória e carregando apenas o cabeçalho e as comunidades.
+     *
+     * @param file      O arquivo do snapshot.
+     * @param directory O diretório usado pelas comunidades e pelas contas lidas do snapshot.
+     * @return O snapshot aberto.
+     * @throws IOException Se o arquivo não puder ser lido ou não for um snapshot válido.
+     */
+
+    public static Snapshot open(File file, UserDirectory directory) throws IOException {
+        MappedByteBuffer[] segments;
+        long size;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new CorruptedFileException();
+            }
+
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+            }
+        }
+
+        byte[] headerBytes = read(segments, 0, HEADER_SIZE);
+        ByteBuffer header = ByteBuffer.wrap(headerBytes);
+        if (header.getInt() != MAGIC) {
+            throw new InvalidObjectException("Arquivo não é um snapshot do Jackut.");
+        }
+
+        int version = header.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new InvalidObjectException("Versão de snapshot não suportada: " + version);
+        }
+
+        long lsn = header.getLong();
+        long deltaSequence = header.getLong();
+        int shardIndex = header.getInt();
+        int shardCount = header.getInt();
+        int userCount = header.getInt();
+        int communityCount = header.getInt();
+        long indexOffset = header.getLong();
+        long communitiesOffset = header.getLong();
+        long checksumsOffset = header.getLong();
+
+        CRC32C crc = new CRC32C();
+        crc.update(headerBytes, 0, HEADER_SIZE - 4);
+        if ((int) crc.getValue() != header.getInt()) {
+            throw new CorruptedFileException();
+        }
+        verifyChecksums(segments, checksumsOffset, size);
+
+        byte[] communityBytes = read(segments, communitiesOffset, (int) (checksumsOffset - communitiesOffset));
+        BinaryObjectInput in = new BinaryObjectInput(new ByteArrayInputStream(communityBytes), directory);
+
+        HashMap<String, Community> communityMap = new HashMap<>(Math.max(16, (int) (communityCount / 0.75f) + 1));
+        for (int i = 0; i < communityCount; i++) {
+            Community community = new Community();
+            community.readExternal(in);
+            communityMap.put(community.getName(), community);
+        }
+
+        return new Snapshot(segments, lsn, deltaSequence, shardIndex, shardCount, userCount, indexOffset, communityMap, directory);
+    }
+
+    /**
+     * Verifica o CRC32C de todos os blocos entre o cabeçalho e a tabela de checksums.
+     *
+     * @throws CorruptedFileException Se o tamanho do arquivo não corresponder à tabela ou algum bloco estiver corrompido.
+     */
+
+    private static void verifyChecksums(MappedByteBuffer[] segments, long checksumsOffset, long size) throws CorruptedFileException {
+        long blocks = (checksumsOffset - HEADER_SIZE + CHECKSUM_BLOCK_SIZE - 1) / CHECKSUM_BLOCK_SIZE;
+        if (checksumsOffset < HEADER_SIZE || checksumsOffset + blocks * 4 != size) {
+            throw new CorruptedFileException();
+        }
+
+        ByteBuffer checksums = ByteBuffer.wrap(read(segments, checksumsOffset, (int) (blocks * 4)));
+        CRC32C crc = new CRC32C();
+        for (long position = HEADER_SIZE; position < checksumsOffset; position += CHECKSUM_BLOCK_SIZE) {
+            long end = Math.min(position + CHECKSUM_BLOCK_SIZE, checksumsOffset);
+            crc.reset();
+            for (long current = position; current < end; ) {
+                MappedByteBuffer segment = segments[(int) (current / SEGMENT_SIZE)];
+                int offset = (int) (current % SEGMENT_SIZE);
+                int length = (int) Math.min(end - current, segment.capacity() - offset);
+                crc.update(segment.slice(offset, length));
+                current += length;
+            }
+
+            if ((int) crc.getValue() != checksums.getInt()) {
+                throw new CorruptedFileException();
+            }
+        }
+    }
+
+    /**
+     * @return O LSN da última operação contida no snapshot.
+     */
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    /**
+     * @return O número de sequência do último {@link Delta} compactado neste snapshot.
+     */
+
+    public long getDeltaSequence() {
+        return deltaSequence;
+    }
+
+    /**
+     * @return O índice deste shard.
+     */
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    /**
+     * @return A quantidade de shards do snapshot ao qual este shard pertence.
+     */
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return A quantidade de contas gravadas no snapshot.
+     */
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * @return O mapa de comunidades contidas no snapshot.
+     */
+
+    public HashMap<String, Community> getCommunityMap() {
+        return communityMap;
+    }
+
+    /**
+     * Verifica se o snapshot contém a conta informada, sem decodificá-la.
+     *
+     * @param login O login do usuário.
+     * @return {@code true} se a conta estiver no snapshot.
+     */
+
+    public boolean containsUser(String login) {
+        return indexOf(login) >= 0;
+    }
+
+    /**
+     * Decodifica a conta informada a partir do arquivo mapeado.
+     *
+     * @param login O login do usuário.
+     * @return A conta decodificada, ou {@code null} se ela não estiver no snapshot.
+     */
+
+    public UserAccount readUser(String login) {
+        int index = indexOf(login);
+        return index < 0 ? null : readUser(index);
+    }
+
+    /**
+     * Decodifica a conta na posição {@code index} do índice.
+     */
+
+    UserAccount readUser(int index) {
+        try {
+            UserAccount userAccount = new UserAccount();
+            userAccount.readExternal(new BinaryObjectInput(new ByteArrayInputStream(readRecord(index)), directory));
+            return userAccount;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Retorna os bytes do registro da conta na posição {@code index} do índice.
+     */
+
+    byte[] readRecord(int index) {
+        long entry = indexOffset + (long) index * INDEX_ENTRY_SIZE;
+        return read(segments, getLong(entry), getInt(entry + 8) & ~SPILLED_FLAG);
+    }
+
+    /**
+     * Indica se a conta na posição {@code index} do índice tem segmentos despejados.
+     */
+
+    boolean isSpilled(int index) {
+        return (getInt(indexOffset + (long) index * INDEX_ENTRY_SIZE + 8) & SPILLED_FLAG) != 0;
+    }
+
+    /**
+     * Retorna os logins das contas com recados ou mensagens despejados, sem decodificá-las.
+     *
+     * @return Os logins, na ordem do índice.
+     */
+
+    public List<String> getSpilledLogins() {
+        ArrayList<String> logins = new ArrayList<>();
+        for (int i = 0; i < userCount; i++) {
+            if (isSpilled(i)) {
+                logins.add(loginAt(i));
+            }
+        }
+        return logins;
+    }
+
+    /**
+     * Retorna o login da conta na posição {@code index} do índice, sem decodificar o restante do registro.
+     */
+
+    String loginAt(int index) {
+        long position = getLong(indexOffset + (long) index * INDEX_ENTRY_SIZE);
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = get(position++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return new String(read(segments, position, length - 1), StandardCharsets.UTF_8);
+    }
+
+    private int indexOf(String login) {
+        byte[] key = login.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = userCount - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareLogin(middle, key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compara, byte a byte e sem alocar memória, o login gravado na posição {@code index} com {@code key}.
+     */
+
+    private int compareLogin(int index, byte[] key) {
+        long position = getLong(indexOffset + (long) index * INDEX_ENTRY_SIZE);
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = get(position++);
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        length--;
+
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Integer.compare(get(position + i) & 0xFF, key[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private byte get(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+    }
+
+    private int getInt(long position) {
+        return ByteBuffer.wrap(read(segments, position, 4)).getInt();
+    }
+
+    private long getLong(long position) {
+        return ByteBuffer.wrap(read(segments, position, 8)).getLong();
+    }
+
+    private static byte[] read(MappedByteBuffer[] segments, long position, int length) {
+        byte[] bytes = new byte[length];
+        int copied = 0;
+
+        while (copied < length) {
+            MappedByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)];
+            int offset = (int) (position % SEGMENT_SIZE);
+            int chunk = Math.min(length - copied, segment.capacity() - offset);
+            segment.get(offset, bytes, copied, chunk);
+            copied += chunk;
+            position += chunk;
+        }
+        return bytes;
+    }
+
+    /**
+     * Grava um shard. As contas do shard anterior que não foram carregadas em memória são copiadas
+     * byte a byte, sem serem decodificadas. O arquivo é escrito em um arquivo temporário e
+     * depois publicado por {@link Serealization#publishFile(File, File)}, que mantém a geração anterior.
+     *
+     * @param file          O arquivo de destino.
+     * @param lsn           LSN da última operação contida no snapshot.
+     * @param deltaSequence Sequência do último delta compactado no snapshot.
+     * @param shardIndex    O índice do shard.
+     * @param shardCount    A quantidade de shards do snapshot.
+     * @param users         As contas do shard mantidas em memória.
+     * @param base          O shard anterior, de onde as demais contas são copiadas.
+     * @param shadowed      Indica os logins cuja versão no shard anterior não deve ser copiada.
+     * @param communities   As comunidades cujo dono pertence ao shard.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public static void write(File file, long lsn, long deltaSequence, int shardIndex, int shardCount, Collection<UserAccount> users,
+                             Snapshot base, Predicate<String> shadowed, Collection<Community> communities) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        ArrayList<long[]> entries = new ArrayList<>();
+        ArrayList<byte[]> keys = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            buffered.write(new byte[HEADER_SIZE]);
+
+            ChecksumOutputStream output = new ChecksumOutputStream(buffered);
+            ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+            BinaryObjectOutput recordOutput = new BinaryObjectOutput(record);
+            long position = HEADER_SIZE;
+
+            for (UserAccount userAccount : users) {
+                record.reset();
+                userAccount.writeExternal(recordOutput);
+                recordOutput.flush();
+
+                keys.add(userAccount.getLogin().getBytes(StandardCharsets.UTF_8));
+                entries.add(new long[]{position, record.size() | (userAccount.hasSpilledSegments() ? SPILLED_FLAG : 0)});
+                record.writeTo(output);
+                position += record.size();
+            }
+
+            for (int i = 0; i < base.userCount; i++) {
+                String login = base.loginAt(i);
+                if (shadowed.test(login)) {
+                    continue;
+                }
+
+                byte[] bytes = base.readRecord(i);
+                keys.add(login.getBytes(StandardCharsets.UTF_8));
+                entries.add(new long[]{position, bytes.length | (base.isSpilled(i) ? SPILLED_FLAG : 0)});
+                output.write(bytes);
+                position += bytes.length;
+            }
+
+            Integer[] order = new Integer[entries.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys.get(a), keys.get(b)));
+
+            long indexOffset = position;
+            DataOutputStream data = new DataOutputStream(output);
+            for (Integer i : order) {
+                data.writeLong(entries.get(i)[0]);
+                data.writeInt((int) entries.get(i)[1]);
+            }
+            position += (long) order.length * INDEX_ENTRY_SIZE;
+
+            long communitiesOffset = position;
+            BinaryObjectOutput communityOutput = new BinaryObjectOutput(output);
+            for (Community community : communities) {
+                community.writeExternal(communityOutput);
+            }
+            communityOutput.flush();
+
+            long checksumsOffset = HEADER_SIZE + output.getCount();
+            DataOutputStream checksums = new DataOutputStream(buffered);
+            for (int checksum : output.finishBlocks()) {
+                checksums.writeInt(checksum);
+            }
+            checksums.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putLong(lsn);
+            header.putLong(deltaSequence);
+            header.putInt(shardIndex);
+            header.putInt(shardCount);
+            header.putInt(order.length);
+            header.putInt(communities.size());
+            header.putLong(indexOffset);
+            header.putLong(communitiesOffset);
+            header.putLong(checksumsOffset);
+            CRC32C crc = new CRC32C();
+            crc.update(header.array(), 0, HEADER_SIZE - 4);
+            header.putInt((int) crc.getValue());
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+
+        Serealization.publishFile(temporary, file);
+    }
+
+    /**
+     * Fluxo que calcula o CRC32C de cada bloco de {@link #CHECKSUM_BLOCK_SIZE} bytes escritos.
+     */
+
+    private static class ChecksumOutputStream extends FilterOutputStream {
+        private final CRC32C crc = new CRC32C();
+        private final ArrayList<Integer> checksums = new ArrayList<>();
+        private long count = 0;
+
+        ChecksumOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+            if (++count % CHECKSUM_BLOCK_SIZE == 0) {
+                checksums.add((int) crc.getValue());
+                crc.reset();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            while (len > 0) {
+                int chunk = (int) Math.min(len, CHECKSUM_BLOCK_SIZE - count % CHECKSUM_BLOCK_SIZE);
+                crc.update(b, off, chunk);
+                count += chunk;
+                off += chunk;
+                len -= chunk;
+                if (count % CHECKSUM_BLOCK_SIZE == 0) {
+                    checksums.add((int) crc.getValue());
+                    crc.reset();
+                }
+            }
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * Encerra o último bloco, se estiver incompleto, e retorna os checksums de todos os blocos.
+         */
+
+        List<Integer> finishBlocks() {
+            if (count % CHECKSUM_BLOCK_SIZE != 0) {
+                checksums.add((int) crc.getValue());
+                crc.reset();
+            }
+            return checksums;
+        }
+    }
+}
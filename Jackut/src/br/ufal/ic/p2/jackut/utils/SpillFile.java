@@ -0,0 +1,423 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import br.ufal.ic.p2.jackut.exceptions.serealization.CorruptedFileException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Arquivos somente de acréscimo onde as caixas de entrada ({@link br.ufal.ic.p2.jackut.models.Mailbox}) e os
+ * logs de mensagens ({@link br.ufal.ic.p2.jackut.models.MessageLog}) despejam os itens que não cabem em memória.
+ * Cada shard de usuários tem uma ou mais gerações, uma por arquivo, e os segmentos novos são sempre
+ * acrescentados à geração atual.
+ *
+ * <p>Cada segmento é gravado como [tamanho:int][crc32c:int][bytes] e identificado por uma referência que junta o
+ * shard, a geração e a posição do segmento no arquivo. Assim, um segmento pode ser lido sem saber de quem ele é
+ * e pode ser compartilhado, por exemplo entre o log de uma comunidade removida e as filas de mensagens dos seus
+ * membros. Segmentos nunca são alterados.</p>
+ *
+ * <p>Os segmentos já lidos e os de contas removidas são liberados por uma {@link Relocation}, feita pelo
+ * sistema junto com a compactação do snapshot: os segmentos ainda referenciados dos shards com mais espaço
+ * morto do que vivo são copiados para uma geração nova, e as gerações que nada mais referencia são apagadas
+ * depois que o checkpoint com as novas referências é gravado.</p>
+ */
+
+public class SpillFile {
+    private static final int SHARD_SHIFT = 56;
+    private static final int GENERATION_SHIFT = 40;
+    private static final int MAX_GENERATION = (1 << (SHARD_SHIFT - GENERATION_SHIFT)) - 1;
+    private static final long OFFSET_MASK = (1L << GENERATION_SHIFT) - 1;
+    private static final Pattern FILE_NAME = Pattern.compile("mailbox-(\\d+)-(\\d+)\\.spill");
+
+    private static final HashMap<String, SpillFile> openFiles = new HashMap<>();
+
+    private final File directory;
+    private final int shard;
+    private final ConcurrentHashMap<Integer, FileChannel> channels = new ConcurrentHashMap<>();
+    private int generation;
+    private long size = 0;
+    private boolean dirty = false;
+
+    private SpillFile(File directory, int shard) {
+        this.directory = directory;
+        this.shard = shard;
+        this.generation = freeGeneration();
+    }
+
+    /**
+     * Retorna os arquivos de despejo do shard informado, abrindo-os na primeira vez. Todas as instâncias do
+     * sistema na mesma JVM compartilham os mesmos arquivos. Cada abertura começa uma geração nova, de modo
+     * que nada é acrescentado a um arquivo gravado por uma execução anterior.
+     *
+     * @param shard O índice do shard.
+     * @return Os arquivos de despejo do shard.
+     */
+
+    public static SpillFile forShard(int shard) {
+        File directory = Serealization.getDatabaseDirectory();
+
+        synchronized (openFiles) {
+            String key = new File(directory, "mailbox-" + shard).getAbsolutePath();
+            SpillFile spillFile = openFiles.get(key);
+            if (spillFile == null || !spillFile.isValid()) {
+                spillFile = new SpillFile(directory, shard);
+                openFiles.put(key, spillFile);
+            }
+            return spillFile;
+        }
+    }
+
+    /**
+     * Lê o segmento identificado pela referência, verificando o seu checksum.
+     *
+     * @param reference A referência retornada por {@link #append(byte[])}.
+     * @return O conteúdo do segmento.
+     */
+
+    public static byte[] read(long reference) {
+        return forShard(shardOf(reference)).read(generationOf(reference), offsetOf(reference));
+    }
+
+    /**
+     * Sincroniza com o disco todos os arquivos de despejo abertos. Deve ser chamado antes de gravar um
+     * checkpoint que referencie segmentos despejados.
+     *
+     * @throws IOException Se a sincronização falhar.
+     */
+
+    public static void forceAll() throws IOException {
+        synchronized (openFiles) {
+            for (SpillFile spillFile : openFiles.values()) {
+                spillFile.force();
+            }
+        }
+    }
+
+    /**
+     * Apaga todos os arquivos de despejo do diretório de dados. Só pode ser chamado quando nada em memória
+     * nem no disco referencia mais os segmentos gravados, isto é, depois de zerar o sistema e de gravar o
+     * checkpoint que descarta os dados anteriores.
+     *
+     * @throws IOException Se algum arquivo não puder ser apagado.
+     */
+
+    public static void truncateAll() throws IOException {
+        synchronized (openFiles) {
+            for (int shard = 0; shard < ShardedSnapshot.SHARD_COUNT; shard++) {
+                forShard(shard).deleteGenerations(Set.of());
+            }
+        }
+    }
+
+    /**
+     * Acrescenta um segmento ao final da geração atual.
+     *
+     * @param bytes O conteúdo do segmento.
+     * @return A referência do segmento.
+     */
+
+    public synchronized long append(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(bytes);
+        buffer.flip();
+
+        long offset = size;
+        try {
+            FileChannel channel = channel(generation, true);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, size + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        size += 8 + bytes.length;
+        dirty = true;
+        return ((long) shard << SHARD_SHIFT) | ((long) generation << GENERATION_SHIFT) | offset;
+    }
+
+    private byte[] read(int generation, long offset) {
+        try {
+            FileChannel channel = channel(generation, false);
+            ByteBuffer header = ByteBuffer.allocate(8);
+            readFully(channel, header, offset);
+            header.flip();
+
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || offset + 8 + length > channel.size()) {
+                throw new CorruptedFileException();
+            }
+
+            ByteBuffer bytes = ByteBuffer.allocate(length);
+            readFully(channel, bytes, offset + 8);
+
+            CRC32C crc = new CRC32C();
+            crc.update(bytes.array());
+            if ((int) crc.getValue() != checksum) {
+                throw new CorruptedFileException();
+            }
+            return bytes.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Retorna quantos bytes o segmento ocupa no arquivo, contando o cabeçalho.
+     */
+
+    private long segmentSize(int generation, long offset) {
+        try {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            readFully(channel(generation, false), header, offset);
+            return 8 + header.getInt(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new CorruptedFileException();
+            }
+        }
+    }
+
+    /**
+     * Retorna o canal da geração informada, abrindo o arquivo se necessário. Só a geração atual é criada
+     * quando não existe.
+     */
+
+    private FileChannel channel(int generation, boolean create) throws IOException {
+        FileChannel channel = channels.get(generation);
+        if (channel != null) {
+            return channel;
+        }
+
+        synchronized (this) {
+            channel = channels.get(generation);
+            if (channel == null) {
+                if (create && !directory.exists()) {
+                    directory.mkdirs();
+                }
+                channel = create
+                        ? FileChannel.open(file(generation).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                        : FileChannel.open(file(generation).toPath(), StandardOpenOption.READ);
+                channels.put(generation, channel);
+            }
+            return channel;
+        }
+    }
+
+    private File file(int generation) {
+        return new File(directory, "mailbox-" + shard + "-" + generation + ".spill");
+    }
+
+    /**
+     * Retorna o tamanho de cada geração gravada no disco para este shard.
+     */
+
+    private TreeMap<Integer, Long> listGenerations() {
+        TreeMap<Integer, Long> generations = new TreeMap<>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                Matcher matcher = FILE_NAME.matcher(name);
+                if (matcher.matches() && Integer.parseInt(matcher.group(1)) == shard) {
+                    generations.put(Integer.parseInt(matcher.group(2)), new File(directory, name).length());
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * Retorna a menor geração que não existe no disco nem está aberta.
+     */
+
+    private int freeGeneration() {
+        Set<Integer> used = listGenerations().keySet();
+        for (int candidate = 1; candidate <= MAX_GENERATION; candidate++) {
+            if (!used.contains(candidate) && !channels.containsKey(candidate)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("Não há gerações livres para os arquivos de despejo do shard " + shard);
+    }
+
+    private boolean isValid() {
+        return directory.exists() && (!channels.containsKey(generation) || file(generation).exists());
+    }
+
+    /**
+     * Passa a acrescentar os segmentos em uma geração nova, sincronizando a atual com o disco.
+     */
+
+    private synchronized void startGeneration() throws IOException {
+        force();
+        generation = freeGeneration();
+        size = 0;
+    }
+
+    /**
+     * Fecha e apaga as gerações deste shard que não estão em {@code kept}. Se a geração atual também for
+     * apagada, os próximos segmentos vão para uma geração nova.
+     */
+
+    private synchronized void deleteGenerations(Set<Integer> kept) throws IOException {
+        boolean keepCurrent = kept.contains(generation);
+        for (int existing : listGenerations().keySet()) {
+            if (!kept.contains(existing)) {
+                FileChannel channel = channels.remove(existing);
+                if (channel != null) {
+                    channel.close();
+                }
+                Files.deleteIfExists(file(existing).toPath());
+            }
+        }
+        if (!keepCurrent) {
+            generation = freeGeneration();
+            size = 0;
+            dirty = false;
+        }
+    }
+
+    private synchronized void force() throws IOException {
+        if (dirty) {
+            channel(generation, true).force(false);
+            dirty = false;
+        }
+    }
+
+    private static int shardOf(long reference) {
+        return (int) (reference >>> SHARD_SHIFT);
+    }
+
+    private static int generationOf(long reference) {
+        return (int) (reference >>> GENERATION_SHIFT) & MAX_GENERATION;
+    }
+
+    private static long offsetOf(long reference) {
+        return reference & OFFSET_MASK;
+    }
+
+    /**
+     * Libera o espaço dos segmentos que não são mais referenciados. Deve ser usada com o sistema inteiro
+     * travado, em três etapas:
+     * <ol>
+     *     <li>{@link #mark(long)} recebe todas as referências ainda usadas em memória;</li>
+     *     <li>{@link #start()} escolhe os shards em que o espaço morto é maior que o vivo e abre neles uma
+     *     geração nova, e {@link #move(long)} copia para ela cada segmento desses shards, uma única vez, e
+     *     retorna a nova referência, que deve substituir a antiga;</li>
+     *     <li>depois que um checkpoint com as novas referências é gravado, {@link #finish()} apaga as
+     *     gerações que não têm mais segmentos referenciados.</li>
+     * </ol>
+     * Se o checkpoint falhar, basta não chamar {@link #finish()}: as gerações antigas continuam no disco
+     * e são apagadas na próxima realocação concluída.
+     */
+
+    public static class Relocation {
+        private final HashMap<Long, Long> references = new HashMap<>();
+        private final long[] liveBytes = new long[ShardedSnapshot.SHARD_COUNT];
+        private final boolean[] compacting = new boolean[ShardedSnapshot.SHARD_COUNT];
+
+        /**
+         * Registra um segmento ainda referenciado.
+         *
+         * @param reference A referência do segmento.
+         */
+
+        public void mark(long reference) {
+            if (references.putIfAbsent(reference, reference) == null) {
+                int shard = shardOf(reference);
+                liveBytes[shard] += forShard(shard).segmentSize(generationOf(reference), offsetOf(reference));
+            }
+        }
+
+        /**
+         * Abre uma geração nova em cada shard cujos arquivos têm mais bytes mortos do que vivos.
+         *
+         * @throws IOException Se a geração atual não puder ser sincronizada com o disco.
+         */
+
+        public void start() throws IOException {
+            for (int shard = 0; shard < ShardedSnapshot.SHARD_COUNT; shard++) {
+                SpillFile spillFile = forShard(shard);
+                long total = 0;
+                for (long length : spillFile.listGenerations().values()) {
+                    total += length;
+                }
+                if (total - liveBytes[shard] > liveBytes[shard]) {
+                    spillFile.startGeneration();
+                    compacting[shard] = true;
+                }
+            }
+        }
+
+        /**
+         * Retorna a referência que deve substituir a informada, copiando o segmento para a geração nova se o
+         * seu shard estiver sendo compactado.
+         *
+         * @param reference A referência atual do segmento.
+         * @return A nova referência do segmento.
+         */
+
+        public long move(long reference) {
+            int shard = shardOf(reference);
+            if (!compacting[shard]) {
+                return reference;
+            }
+
+            Long moved = references.get(reference);
+            if (moved == null || moved == reference) {
+                moved = forShard(shard).append(SpillFile.read(reference));
+                references.put(reference, moved);
+            }
+            return moved;
+        }
+
+        /**
+         * Sincroniza as gerações novas com o disco e apaga as gerações sem segmentos referenciados. Só pode
+         * ser chamado depois que o checkpoint com as novas referências foi gravado.
+         *
+         * @throws IOException Se algum arquivo não puder ser sincronizado ou apagado.
+         */
+
+        public void finish() throws IOException {
+            forceAll();
+
+            ArrayList<Set<Integer>> kept = new ArrayList<>();
+            for (int shard = 0; shard < ShardedSnapshot.SHARD_COUNT; shard++) {
+                kept.add(new HashSet<>());
+                kept.get(shard).add(forShard(shard).generation);
+            }
+            for (long reference : references.values()) {
+                kept.get(shardOf(reference)).add(generationOf(reference));
+            }
+            for (int shard = 0; shard < ShardedSnapshot.SHARD_COUNT; shard++) {
+                forShard(shard).deleteGenerations(kept.get(shard));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conjunto fixo de travas (listras) indexadas por um identificador inteiro, usado para serializar as
+ * operações sobre a mesma conta ou comunidade sem impedir que operações sobre contas diferentes rodem em
+ * paralelo.
+ *
+ * <p>Cada identificador corresponde sempre à mesma listra ({@code id & (quantidade - 1)}). Quando uma operação
+ * precisa de mais de uma listra, elas são adquiridas em ordem crescente de índice, e {@link #lockAll()}
+ * adquire todas nessa mesma ordem; como nenhuma thread espera por uma listra de índice menor do que uma que
+ * já possui, não há como formar um ciclo de espera. As travas são reentrantes, de modo que uma operação pode
+ * chamar outra que peça as mesmas listras.</p>
+ */
+
+public class StripedLocks {
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Cria o conjunto de travas.
+     *
+     * @param count A quantidade de listras, uma potência de 2.
+     */
+
+    public StripedLocks(int count) {
+        if (count <= 0 || Integer.bitCount(count) != 1) {
+            throw new IllegalArgumentException("A quantidade de listras deve ser uma potência de 2: " + count);
+        }
+
+        this.stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Adquire a listra de um identificador.
+     *
+     * @param id O identificador da conta ou comunidade.
+     * @return As travas adquiridas, que devem ser liberadas com {@link Guard#close()}.
+     */
+
+    public Guard lock(int id) {
+        ReentrantLock stripe = stripeOf(id);
+        stripe.lock();
+        return new Guard(new ReentrantLock[]{stripe}, 1);
+    }
+
+    /**
+     * Adquire as listras de dois identificadores, em ordem crescente de índice. Se os dois caírem na mesma
+     * listra, ela é adquirida uma única vez.
+     *
+     * @param first  O primeiro identificador.
+     * @param second O segundo identificador.
+     * @return As travas adquiridas, que devem ser liberadas com {@link Guard#close()}.
+     */
+
+    public Guard lock(int first, int second) {
+        int low = Math.min(first & mask(), second & mask());
+        int high = Math.max(first & mask(), second & mask());
+        if (low == high) {
+            return lock(low);
+        }
+
+        stripes[low].lock();
+        stripes[high].lock();
+        return new Guard(new ReentrantLock[]{stripes[low], stripes[high]}, 2);
+    }
+
+    /**
+     * Adquire todas as listras, em ordem crescente de índice, impedindo qualquer outra operação enquanto
+     * elas estiverem em uso.
+     *
+     * @return As travas adquiridas, que devem ser liberadas com {@link Guard#close()}.
+     */
+
+    public Guard lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        return new Guard(stripes, stripes.length);
+    }
+
+    private int mask() {
+        return stripes.length - 1;
+    }
+
+    private ReentrantLock stripeOf(int id) {
+        return stripes[id & mask()];
+    }
+
+    /**
+     * Travas adquiridas por uma chamada de {@link StripedLocks}, liberadas na ordem inversa da aquisição.
+     * Feito para ser usado em um bloco {@code try}-com-recursos logo após a aquisição
+     * ({@code Guard guard = locks.lock(id); try (guard) { ... }}).
+     */
+
+    public static final class Guard implements AutoCloseable {
+        private final ReentrantLock[] held;
+        private final int count;
+
+        private Guard(ReentrantLock[] held, int count) {
+            this.held = held;
+            this.count = count;
+        }
+
+        @Override
+        public void close() {
+            for (int i = count - 1; i >= 0; i--) {
+                held[i].unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tabela de símbolos que guarda uma única instância de cada string e atribui a ela um identificador
+ * inteiro denso (0, 1, 2, ...).
+ *
+ * <p>Os logins e os nomes de comunidades são canonicalizados na criação e na leitura dos modelos, de modo
+ * que todas as listas, recados e mapas que citam o mesmo login ou a mesma comunidade compartilham a mesma
+ * instância de {@link String}, em vez de cada leitura criar a sua cópia. Os símbolos ficam em um vetor
+ * indexado pelo identificador e um {@link ConcurrentHashMap} faz o caminho inverso; um símbolo nunca é
+ * removido.</p>
+ *
+ * <p>A tabela pode ser usada por várias threads. As consultas ({@link #find(String)}, {@link #symbolOf(int)}
+ * e {@link #idOf(String)} ou {@link #intern(String)} de um símbolo já conhecido) não usam trava alguma; só a
+ * atribuição de um identificador novo usa o monitor da tabela. O símbolo é gravado no vetor e {@code count} é
+ * incrementado antes de o identificador ser publicado no mapa, de modo que quem encontra o identificador no
+ * mapa também enxerga o símbolo.</p>
+ *
+ * <p>Cada instância do sistema tem as suas tabelas, guardadas em um {@link UserDirectory} e substituídas
+ * quando os dados do sistema são apagados, de modo que os símbolos de dados descartados não ficam retidos.
+ * Só são adicionados símbolos de contas e comunidades que existem ou existiram; as consultas sobre entradas
+ * ainda não validadas usam {@link #find(String)} e {@link #lookup(String)}, que não alteram a tabela.</p>
+ */
+
+public class SymbolTable {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] symbols = new String[1024];
+    private volatile int count = 0;
+
+    /**
+     * Retorna o identificador do símbolo, atribuindo um novo se ele ainda não estiver na tabela.
+     *
+     * @param symbol O símbolo.
+     * @return O identificador do símbolo.
+     */
+
+    public int idOf(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : assign(symbol);
+    }
+
+    /**
+     * Retorna o identificador do símbolo sem atribuir um novo.
+     *
+     * @param symbol O símbolo, ou {@code null}.
+     * @return O identificador do símbolo, ou -1 se ele não estiver na tabela.
+     */
+
+    public int find(String symbol) {
+        if (symbol == null) {
+            return -1;
+        }
+        Integer id = ids.get(symbol);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Retorna a instância canônica do símbolo sem adicioná-lo à tabela.
+     *
+     * @param symbol O símbolo, ou {@code null}.
+     * @return A instância guardada na tabela, ou {@code null} se o símbolo não estiver na tabela.
+     */
+
+    public String lookup(String symbol) {
+        int id = find(symbol);
+        return id < 0 ? null : symbolOf(id);
+    }
+
+    /**
+     * Retorna o símbolo correspondente a um identificador.
+     *
+     * @param id O identificador atribuído por {@link #idOf(String)}.
+     * @return O símbolo.
+     */
+
+    public String symbolOf(int id) {
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("Identificador de símbolo desconhecido: " + id);
+        }
+        return symbols[id];
+    }
+
+    /**
+     * Retorna a instância canônica do símbolo, adicionando-o à tabela se necessário.
+     *
+     * @param symbol O símbolo, ou {@code null}.
+     * @return A instância guardada na tabela, ou {@code null}.
+     */
+
+    public String intern(String symbol) {
+        if (symbol == null) {
+            return null;
+        }
+        return symbolOf(idOf(symbol));
+    }
+
+    /**
+     * @return A quantidade de símbolos na tabela.
+     */
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Atribui o próximo identificador ao símbolo, se outra thread não o tiver atribuído antes.
+     */
+
+    private synchronized int assign(String symbol) {
+        Integer existing = ids.get(symbol);
+        if (existing != null) {
+            return existing;
+        }
+
+        int id = count;
+        String[] current = symbols;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = symbol;
+        symbols = current;
+        count = id + 1;
+
+        ids.put(symbol, id);
+        return id;
+    }
+}
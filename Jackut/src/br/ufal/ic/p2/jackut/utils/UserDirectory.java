@@ -0,0 +1,119 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+
+/**
+ * Diretório que atribui a cada login um identificador inteiro denso (0, 1, 2, ...), usado pelas contas
+ * para guardar as suas relações em {@link OrderedIntSet}s em vez de listas de strings.
+ *
+ * <p>Os identificadores valem apenas dentro de uma instância do sistema: nos arquivos, as relações continuam
+ * gravadas pelos logins, e cada login recebe o seu identificador na primeira vez em que é lido ou cadastrado.
+ * Um identificador nunca é reaproveitado, de modo que um login removido e cadastrado novamente recebe o mesmo
+ * identificador. Os logins ficam em uma {@link SymbolTable}, que também fornece a instância canônica de cada
+ * login, e os nomes das comunidades em outra ({@link #getCommunityNames()}).</p>
+ *
+ * <p>Cada instância do sistema cria o seu diretório e o substitui por um novo quando todos os dados são
+ * apagados. As contas e comunidades guardam o diretório em que foram criadas ou lidas; para as que são lidas
+ * de um arquivo, o diretório é informado ao {@link BinaryObjectInput} que as decodifica.</p>
+ */
+
+public class UserDirectory {
+    private final SymbolTable logins = new SymbolTable();
+    private final SymbolTable communityNames = new SymbolTable();
+
+    /**
+     * Retorna o diretório informado ao fluxo de onde um modelo está sendo lido.
+     *
+     * @param in O fluxo de origem.
+     * @return O diretório do fluxo.
+     * @throws InvalidObjectException Se o fluxo não for um {@link BinaryObjectInput} criado com um diretório.
+     */
+
+    public static UserDirectory of(ObjectInput in) throws InvalidObjectException {
+        UserDirectory directory = in instanceof BinaryObjectInput ? ((BinaryObjectInput) in).getDirectory() : null;
+        if (directory == null) {
+            throw new InvalidObjectException("O fluxo não informa o diretório de usuários do sistema.");
+        }
+        return directory;
+    }
+
+    /**
+     * Retorna o identificador do login, atribuindo um novo se ele ainda não tiver um.
+     *
+     * @param login O login do usuário.
+     * @return O identificador do login.
+     */
+
+    public int idOf(String login) {
+        return logins.idOf(login);
+    }
+
+    /**
+     * Retorna o identificador do login sem atribuir um novo.
+     *
+     * @param login O login do usuário.
+     * @return O identificador do login, ou -1 se ele nunca foi cadastrado nem lido.
+     */
+
+    public int find(String login) {
+        return logins.find(login);
+    }
+
+    /**
+     * Retorna a instância canônica do login sem atribuir a ele um identificador.
+     *
+     * @param login O login do usuário, ou {@code null}.
+     * @return A instância compartilhada do login, ou {@code null} se ele nunca foi cadastrado nem lido.
+     */
+
+    public String lookup(String login) {
+        return logins.lookup(login);
+    }
+
+    /**
+     * Retorna o login correspondente a um identificador.
+     *
+     * @param id O identificador atribuído por {@link #idOf(String)}.
+     * @return O login do usuário.
+     */
+
+    public String loginOf(int id) {
+        return logins.symbolOf(id);
+    }
+
+    /**
+     * Retorna a instância canônica do login, atribuindo a ele um identificador se necessário.
+     *
+     * @param login O login do usuário, ou {@code null}.
+     * @return A instância compartilhada do login, ou {@code null}.
+     */
+
+    public String intern(String login) {
+        return logins.intern(login);
+    }
+
+    /**
+     * @return A quantidade de identificadores já atribuídos.
+     */
+
+    public int size() {
+        return logins.size();
+    }
+
+    /**
+     * @return A tabela de símbolos dos logins.
+     */
+
+    public SymbolTable getLogins() {
+        return logins;
+    }
+
+    /**
+     * @return A tabela de símbolos dos nomes das comunidades.
+     */
+
+    public SymbolTable getCommunityNames() {
+        return communityNames;
+    }
+}
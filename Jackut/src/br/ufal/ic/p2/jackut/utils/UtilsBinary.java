@@ -0,0 +1,207 @@
+package br.ufal.ic.p2.jackut.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Classe utilitária para a codificação binária compacta usada na serialização dos modelos.
+ *
+ * <p>Inteiros são gravados como <i>varint</i> (7 bits por byte) e strings como o tamanho em varint
+ * seguido dos bytes em UTF-8.</p>
+ */
+
+public class UtilsBinary {
+
+    /**
+     * Grava um inteiro não negativo como varint.
+     *
+     * @param out   O destino dos bytes.
+     * @param value O valor a ser gravado.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Lê um inteiro gravado como varint.
+     *
+     * @param in A origem dos bytes.
+     * @return O valor lido.
+     * @throws IOException Se ocorrer um erro de leitura ou o varint for inválido.
+     */
+
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint inválido.");
+    }
+
+    /**
+     * Grava uma string em UTF-8 precedida do seu tamanho. O valor {@code null} é gravado como tamanho zero
+     * e as demais strings com o tamanho somado de um.
+     *
+     * @param out   O destino dos bytes.
+     * @param value A string a ser gravada.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /**
+     * Lê uma string gravada por {@link #writeString(DataOutput, String)}.
+     *
+     * @param in A origem dos bytes.
+     * @return A string lida, ou {@code null}.
+     * @throws IOException Se ocorrer um erro de leitura.
+     */
+
+    public static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Grava uma coleção de strings precedida da sua quantidade de elementos.
+     *
+     * @param out    O destino dos bytes.
+     * @param values As strings a serem gravadas.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public static void writeStrings(DataOutput out, Collection<String> values) throws IOException {
+        writeVarInt(out, values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    /**
+     * Lê uma coleção de strings gravada por {@link #writeStrings(DataOutput, Collection)}.
+     *
+     * @param in     A origem dos bytes.
+     * @param values A coleção onde as strings lidas serão adicionadas.
+     * @throws IOException Se ocorrer um erro de leitura.
+     */
+
+    public static void readStrings(DataInput in, Collection<String> values) throws IOException {
+        int size = readVarInt(in);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+    }
+
+    /**
+     * Lê uma coleção de strings gravada por {@link #writeStrings(DataOutput, Collection)}, substituindo cada
+     * string pela sua instância canônica na tabela de símbolos informada.
+     *
+     * @param in      A origem dos bytes.
+     * @param values  A coleção onde as strings lidas serão adicionadas.
+     * @param symbols A tabela de símbolos usada para canonicalizar as strings.
+     * @throws IOException Se ocorrer um erro de leitura.
+     */
+
+    public static void readStrings(DataInput in, Collection<String> values, SymbolTable symbols) throws IOException {
+        int size = readVarInt(in);
+        for (int i = 0; i < size; i++) {
+            values.add(symbols.intern(readString(in)));
+        }
+    }
+
+    /**
+     * Grava um conjunto de identificadores de usuário como os logins correspondentes, para que o arquivo
+     * não dependa dos identificadores atribuídos por {@link UserDirectory} durante a execução.
+     *
+     * @param out       O destino dos bytes.
+     * @param ids       Os identificadores a serem gravados.
+     * @param directory O diretório que atribuiu os identificadores.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public static void writeUserIds(DataOutput out, OrderedIntSet ids, UserDirectory directory) throws IOException {
+        writeVarInt(out, ids.size());
+        for (int id : ids.toArray()) {
+            writeString(out, directory.loginOf(id));
+        }
+    }
+
+    /**
+     * Lê um conjunto gravado por {@link #writeUserIds(DataOutput, OrderedIntSet, UserDirectory)}, convertendo
+     * cada login no seu identificador.
+     *
+     * @param in        A origem dos bytes.
+     * @param ids       O conjunto onde os identificadores lidos serão adicionados.
+     * @param directory O diretório que atribui os identificadores.
+     * @throws IOException Se ocorrer um erro de leitura.
+     */
+
+    public static void readUserIds(DataInput in, OrderedIntSet ids, UserDirectory directory) throws IOException {
+        int size = readVarInt(in);
+        for (int i = 0; i < size; i++) {
+            ids.add(directory.idOf(readString(in)));
+        }
+    }
+
+    /**
+     * Grava uma contagem por usuário, com cada identificador convertido no login correspondente.
+     *
+     * @param out       O destino dos bytes.
+     * @param counts    As contagens, indexadas pelo identificador do usuário.
+     * @param directory O diretório que atribuiu os identificadores.
+     * @throws IOException Se ocorrer um erro de escrita.
+     */
+
+    public static void writeUserCounts(DataOutput out, Map<Integer, Integer> counts, UserDirectory directory) throws IOException {
+        writeVarInt(out, counts.size());
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            writeString(out, directory.loginOf(entry.getKey()));
+            writeVarInt(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Lê as contagens gravadas por {@link #writeUserCounts(DataOutput, Map, UserDirectory)}.
+     *
+     * @param in        A origem dos bytes.
+     * @param counts    O mapa onde as contagens lidas serão adicionadas.
+     * @param directory O diretório que atribui os identificadores.
+     * @throws IOException Se ocorrer um erro de leitura.
+     */
+
+    public static void readUserCounts(DataInput in, Map<Integer, Integer> counts, UserDirectory directory) throws IOException {
+        int size = readVarInt(in);
+        for (int i = 0; i < size; i++) {
+            counts.put(directory.idOf(readString(in)), readVarInt(in));
+        }
+    }
+}
@@ -2,34 +2,71 @@ package br.ufal.ic.p2.jackut.utils;
 
 import br.ufal.ic.p2.jackut.models.UserAccount;
 
-import java.util.List;
+import java.util.Collection;
+import java.util.Iterator;
 
 /**
- * Classe utilitria para manipulao de strings relacionadas a listas de objetos.
+ * Classe utilitária para manipulação de strings relacionadas a listas de objetos.
  */
 
 public class UtilsString {
 
     /**
-     * Converte uma lista de objetos {@link UserAccount} em uma string formatada.
+     * Converte uma coleção de objetos {@link UserAccount} em uma string formatada, na ordem de iteração da coleção.
      *
-     * @param arrayList a lista de {@link UserAccount} a ser formatada
-     * @return uma representao em string da lista no formato {obj1,obj2,...,objN}, ou "{}" se a lista estiver vazia.
+     * @param arrayList a coleção de {@link UserAccount} a ser formatada
+     * @return uma representação em string da lista no formato {obj1,obj2,...,objN}, ou "{}" se a lista estiver vazia.
      */
 
-    public static <T> String formatArrayList(List<T> arrayList) {
+    public static <T> String formatArrayList(Collection<T> arrayList) {
         if (arrayList.isEmpty()) {
             return "{}";
         }
 
         StringBuilder formattedString = new StringBuilder("{");
-        for (int i = 0; i < arrayList.size(); i++) {
-            formattedString.append(arrayList.get(i).toString());
-            if (i != arrayList.size() - 1) {
+        Iterator<T> iterator = arrayList.iterator();
+        while (iterator.hasNext()) {
+            formattedString.append(iterator.next().toString());
+            if (iterator.hasNext()) {
                 formattedString.append(",");
             }
         }
         formattedString.append("}");
         return formattedString.toString();
     }
+
+    /**
+     * Converte um conjunto de identificadores de usuário na lista formatada dos logins correspondentes.
+     *
+     * @param ids       os identificadores atribuídos pelo diretório
+     * @param directory o {@link UserDirectory} que atribuiu os identificadores
+     * @return uma representação em string dos logins no formato {login1,login2,...,loginN}, ou "{}" se o conjunto estiver vazio.
+     */
+
+    public static String formatLogins(OrderedIntSet ids, UserDirectory directory) {
+        return formatSymbols(ids, directory.getLogins());
+    }
+
+    /**
+     * Converte um conjunto de identificadores de uma {@link SymbolTable} na lista formatada dos símbolos
+     * correspondentes.
+     *
+     * @param ids     os identificadores atribuídos pela tabela
+     * @param symbols a tabela de símbolos
+     * @return uma representação em string dos símbolos no formato {simbolo1,simbolo2,...,simboloN}, ou "{}" se o conjunto estiver vazio.
+     */
+
+    public static String formatSymbols(OrderedIntSet ids, SymbolTable symbols) {
+        StringBuilder formattedString = new StringBuilder("{");
+        boolean first = true;
+        for (int id : ids.toArray()) {
+            if (!first) {
+                formattedString.append(",");
+            }
+            formattedString.append(symbols.symbolOf(id));
+            first = false;
+        }
+        formattedString.append("}");
+        return formattedString.toString();
+    }
 }